@@ -18,11 +18,24 @@ package android.support.v4.util;
 
 import android.util.Log;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
 
 /**
  * Static library support version of the framework's {@link android.util.AtomicFile},
@@ -38,6 +51,10 @@ import java.io.IOException;
  * Do not use this class when the file may be accessed or modified concurrently
  * by multiple threads or processes.  The caller is responsible for ensuring
  * appropriate mutual exclusion invariants whenever it accesses the file.
+ * </p><p>
+ * Files which change by small updates can instead be opened with
+ * {@link #openJournal(Compactor)}, which appends each update as a record to a journal next
+ * to the base file and folds the journal into a new base file from time to time.
  * </p>
  */
 public class AtomicFile {
@@ -67,6 +84,9 @@ public class AtomicFile {
     public void delete() {
         mBaseName.delete();
         mBackupName.delete();
+        for (File journal : listJournals()) {
+            journal.delete();
+        }
     }
 
     /**
@@ -200,6 +220,548 @@ public class AtomicFile {
         }
     }
 
+    /**
+     * Open the file in journal mode, in which updates are appended as records instead of
+     * rewriting the whole file.  The base file then holds a snapshot written by
+     * <var>compactor</var>, and the records appended since are kept in a journal file next
+     * to it.  A torn record at the end of the journal, left by a crash during an append, is
+     * dropped.  A file written by {@link #startWrite()} can be opened this way and becomes
+     * the first snapshot.
+     *
+     * <p>Only one Journal may be open for a file at a time, and the file must not be
+     * written with {@link #startWrite()} while it is open.</p>
+     *
+     * @param compactor Folds records into a new snapshot when the journal is compacted.
+     */
+    public Journal openJournal(Compactor compactor) throws IOException {
+        return new Journal(this, compactor);
+    }
+
+    File[] listJournals() {
+        final File dir = mBaseName.getAbsoluteFile().getParentFile();
+        final String prefix = mBaseName.getName() + JOURNAL_SUFFIX;
+        final File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith(prefix) && parseGeneration(name, prefix) >= 0;
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+
+    File journalFile(long generation) {
+        return new File(mBaseName.getPath() + JOURNAL_SUFFIX + generation);
+    }
+
+    static long parseGeneration(String name, String prefix) {
+        try {
+            return Long.parseLong(name.substring(prefix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static final String JOURNAL_SUFFIX = ".journal.";
+
+    /**
+     * Folds journal records into a snapshot, see {@link #openJournal(Compactor)}.
+     */
+    public interface Compactor {
+        /**
+         * Write a new snapshot which is <var>base</var> with <var>records</var> applied in
+         * order.  Called from {@link Journal#compact()}, on the thread which compacts.
+         *
+         * @param base The previous snapshot, empty if there is none yet.
+         * @param records The records appended since the previous snapshot.
+         * @param out The stream to write the new snapshot to.  Do not close it.
+         */
+        void compact(InputStream base, List<byte[]> records, OutputStream out)
+                throws IOException;
+    }
+
+    /**
+     * An {@link AtomicFile} opened in journal mode with {@link #openJournal(Compactor)}.
+     *
+     * <p>{@link #append(byte[])} writes a record without waiting for the disk, and
+     * {@link #sync(long)} waits until a record is on disk.  Threads which sync at the same
+     * time share one fsync: a thread which finds a sync in progress waits for it and only
+     * syncs again if its record was written after that sync started.  Appends from any
+     * number of threads are safe.</p>
+     *
+     * <p>Journal files are numbered by generation.  Compacting starts a new journal for
+     * further appends, folds the snapshot and the older journals into a new snapshot which
+     * is written atomically and records the new generation, and then deletes the older
+     * journals.  Journals older than the generation of the snapshot are ignored when the
+     * file is opened, so a crash at any point neither loses records nor applies them
+     * twice.</p>
+     */
+    public static final class Journal {
+        private static final String TAG = "AtomicFile";
+
+        private static final int BASE_MAGIC = 0x41464231; // AFB1
+        private static final int JOURNAL_MAGIC = 0x41464a31; // AFJ1
+        private static final int BASE_HEADER_SIZE = 12;
+        private static final int JOURNAL_HEADER_SIZE = 12;
+        private static final int RECORD_HEADER_SIZE = 8;
+
+        private final AtomicFile mFile;
+        private final Compactor mCompactor;
+
+        /**
+         * Guards the current journal stream and the append counters.
+         */
+        private final Object mLock = new Object();
+        private FileOutputStream mOut;
+        private long mGeneration;
+        private long mLength;
+        private long mWrittenSeq;
+        private boolean mClosed;
+
+        /**
+         * Guards the group commit state.  Never held while waiting for mLock.
+         */
+        private final Object mSyncLock = new Object();
+        private long mSyncedSeq;
+        private boolean mSyncing;
+
+        /**
+         * Serializes compactions with each other and with reads of the snapshot, since
+         * {@link AtomicFile#openRead()} rolls back a base file which is being written.
+         */
+        private final Object mCompactLock = new Object();
+        private long mBaseGeneration;
+
+        private long mAutoCompactLength = Long.MAX_VALUE;
+        private Executor mAutoCompactExecutor;
+        private boolean mCompactionPending;
+
+        Journal(AtomicFile file, Compactor compactor) throws IOException {
+            mFile = file;
+            mCompactor = compactor;
+            mBaseGeneration = readBaseGeneration();
+
+            long newest = -1;
+            for (File journal : file.listJournals()) {
+                final long generation = parseGeneration(journal.getName(),
+                        file.mBaseName.getName() + JOURNAL_SUFFIX);
+                if (generation < mBaseGeneration) {
+                    // Already folded into the snapshot by a compaction which did not get to
+                    // delete it.
+                    journal.delete();
+                } else {
+                    newest = Math.max(newest, generation);
+                }
+            }
+            if (newest < 0) {
+                newest = mBaseGeneration;
+            }
+            mGeneration = newest;
+            final File current = file.journalFile(newest);
+            final long validLength = current.exists() ? readJournal(current, null) : -1;
+            if (validLength < 0) {
+                mOut = createJournal(newest);
+                mLength = JOURNAL_HEADER_SIZE;
+            } else {
+                if (validLength < current.length()) {
+                    Log.w(TAG, "Dropping torn record at the end of " + current);
+                    truncate(current, validLength);
+                }
+                mOut = new FileOutputStream(current, true);
+                mLength = validLength;
+            }
+        }
+
+        /**
+         * Append a record to the journal.  The record is not necessarily on disk when this
+         * returns; call {@link #sync(long)} with the returned sequence number to wait for it.
+         *
+         * @return The sequence number of the record.
+         */
+        public long append(byte[] record) throws IOException {
+            return append(record, 0, record.length);
+        }
+
+        /**
+         * Append <var>length</var> bytes of <var>record</var> starting at <var>offset</var>
+         * as a record, see {@link #append(byte[])}.
+         */
+        public long append(byte[] record, int offset, int length) throws IOException {
+            final CRC32 crc = new CRC32();
+            crc.update(record, offset, length);
+            final byte[] buffer = new byte[RECORD_HEADER_SIZE + length];
+            putInt(buffer, 0, length);
+            putInt(buffer, 4, (int) crc.getValue());
+            System.arraycopy(record, offset, buffer, RECORD_HEADER_SIZE, length);
+
+            final long seq;
+            final boolean compact;
+            synchronized (mLock) {
+                if (mClosed) {
+                    throw new IOException("Journal is closed");
+                }
+                // One write call per record, so a crash can only tear the last one.
+                try {
+                    mOut.write(buffer);
+                } catch (IOException e) {
+                    // Records after a torn one would be dropped when reading the journal.
+                    mClosed = true;
+                    closeQuietly(mOut);
+                    throw e;
+                }
+                mLength += buffer.length;
+                seq = ++mWrittenSeq;
+                compact = mLength > mAutoCompactLength && !mCompactionPending;
+                if (compact) {
+                    mCompactionPending = true;
+                }
+            }
+            if (compact) {
+                mAutoCompactExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            compact();
+                        } catch (IOException e) {
+                            Log.w(TAG, "Compacting " + mFile.mBaseName + " failed", e);
+                        }
+                    }
+                });
+            }
+            return seq;
+        }
+
+        /**
+         * Append a record and wait until it is on disk.
+         */
+        public void appendAndSync(byte[] record) throws IOException {
+            sync(append(record));
+        }
+
+        /**
+         * Wait until the record with the given sequence number, and all records before it,
+         * are on disk.  Concurrent calls are coalesced into as few fsyncs as possible.
+         *
+         * @param seq A sequence number returned by {@link #append(byte[])}.
+         */
+        public void sync(long seq) throws IOException {
+            synchronized (mSyncLock) {
+                while (mSyncedSeq < seq && mSyncing) {
+                    try {
+                        mSyncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (mSyncedSeq >= seq) {
+                    return;
+                }
+                mSyncing = true;
+            }
+
+            final FileOutputStream out;
+            final long target;
+            synchronized (mLock) {
+                out = mOut;
+                target = mWrittenSeq;
+            }
+            // Sync outside of mLock so that other threads can append meanwhile.
+            final boolean synced = AtomicFile.sync(out);
+
+            synchronized (mSyncLock) {
+                mSyncing = false;
+                if (synced) {
+                    mSyncedSeq = Math.max(mSyncedSeq, target);
+                }
+                mSyncLock.notifyAll();
+                // A compaction may have synced and closed the stream under us.
+                if (mSyncedSeq < seq) {
+                    throw new IOException("Couldn't sync " + mFile.journalFile(mGeneration));
+                }
+            }
+        }
+
+        /**
+         * Compact the journal in the background with <var>executor</var> whenever it grows
+         * beyond <var>maxJournalLength</var> bytes.
+         */
+        public void setAutoCompact(long maxJournalLength, Executor executor) {
+            synchronized (mLock) {
+                mAutoCompactLength = maxJournalLength;
+                mAutoCompactExecutor = executor;
+            }
+        }
+
+        /**
+         * Fold the journal into a new snapshot using the {@link Compactor}.  Appends may
+         * continue on other threads while this runs; they go to a new journal.
+         *
+         * @throws IOException If the journal could not be synced or the snapshot could not
+         *         be written.  The journal stays usable and nothing is lost.
+         */
+        public void compact() throws IOException {
+            synchronized (mCompactLock) {
+                final long newGeneration;
+                synchronized (mLock) {
+                    mCompactionPending = false;
+                    if (mClosed) {
+                        return;
+                    }
+                    // Finish the current journal and start a new one for further appends.
+                    if (!AtomicFile.sync(mOut)) {
+                        throw new IOException("Couldn't sync " + mFile.journalFile(mGeneration));
+                    }
+                    // Before closing, so a sync() of the old stream which fails because of
+                    // the close finds its records synced.
+                    markSynced(mWrittenSeq);
+                    newGeneration = mGeneration + 1;
+                    final FileOutputStream out = createJournal(newGeneration);
+                    closeQuietly(mOut);
+                    mOut = out;
+                    mGeneration = newGeneration;
+                    mLength = JOURNAL_HEADER_SIZE;
+                }
+
+                final List<byte[]> records = new ArrayList<byte[]>();
+                for (long g = mBaseGeneration; g < newGeneration; g++) {
+                    final File journal = mFile.journalFile(g);
+                    if (journal.exists()) {
+                        readJournal(journal, records);
+                    }
+                }
+
+                final byte[] base = readBaseLocked();
+                final FileOutputStream str = mFile.startWrite();
+                try {
+                    final byte[] header = new byte[BASE_HEADER_SIZE];
+                    putInt(header, 0, BASE_MAGIC);
+                    putLong(header, 4, newGeneration);
+                    str.write(header);
+                    mCompactor.compact(new ByteArrayInputStream(base), records, str);
+                } catch (IOException e) {
+                    mFile.failWrite(str);
+                    throw e;
+                } catch (RuntimeException e) {
+                    mFile.failWrite(str);
+                    throw e;
+                }
+                // Unlike finishWrite(), a snapshot which may not be on disk must not replace
+                // the journals it was made from.
+                if (!AtomicFile.sync(str)) {
+                    mFile.failWrite(str);
+                    throw new IOException("Couldn't sync " + mFile.mBaseName);
+                }
+                try {
+                    str.close();
+                } catch (IOException e) {
+                    mFile.failWrite(str);
+                    throw e;
+                }
+                mFile.mBackupName.delete();
+                mBaseGeneration = newGeneration;
+
+                for (long g = newGeneration - 1; g >= 0; g--) {
+                    final File journal = mFile.journalFile(g);
+                    if (!journal.exists()) {
+                        break;
+                    }
+                    journal.delete();
+                }
+            }
+        }
+
+        /**
+         * Read the current snapshot, without the records appended since.
+         *
+         * @return The snapshot, empty if nothing has been compacted yet.
+         */
+        public byte[] readBase() throws IOException {
+            synchronized (mCompactLock) {
+                return readBaseLocked();
+            }
+        }
+
+        /**
+         * Read the records appended since the current snapshot, in order.  Replaying them
+         * onto {@link #readBase()} gives the current contents.
+         */
+        public List<byte[]> readRecords() throws IOException {
+            synchronized (mCompactLock) {
+                final List<byte[]> records = new ArrayList<byte[]>();
+                synchronized (mLock) {
+                    for (long g = mBaseGeneration; g <= mGeneration; g++) {
+                        final File journal = mFile.journalFile(g);
+                        if (journal.exists()) {
+                            readJournal(journal, records);
+                        }
+                    }
+                }
+                return records;
+            }
+        }
+
+        /**
+         * Sync and close the journal.  Further appends fail.
+         */
+        public void close() {
+            synchronized (mLock) {
+                if (mClosed) {
+                    return;
+                }
+                mClosed = true;
+                if (AtomicFile.sync(mOut)) {
+                    markSynced(mWrittenSeq);
+                }
+                closeQuietly(mOut);
+            }
+        }
+
+        private void markSynced(long seq) {
+            synchronized (mSyncLock) {
+                mSyncedSeq = Math.max(mSyncedSeq, seq);
+                mSyncLock.notifyAll();
+            }
+        }
+
+        private byte[] readBaseLocked() throws IOException {
+            if (!mFile.mBaseName.exists() && !mFile.mBackupName.exists()) {
+                return new byte[0];
+            }
+            final byte[] data = mFile.readFully();
+            if (data.length >= BASE_HEADER_SIZE && getInt(data, 0) == BASE_MAGIC) {
+                final byte[] base = new byte[data.length - BASE_HEADER_SIZE];
+                System.arraycopy(data, BASE_HEADER_SIZE, base, 0, base.length);
+                return base;
+            }
+            // Written by startWrite() before the file was opened as a journal.
+            return data;
+        }
+
+        private long readBaseGeneration() throws IOException {
+            if (!mFile.mBaseName.exists() && !mFile.mBackupName.exists()) {
+                return 0;
+            }
+            final FileInputStream in = mFile.openRead();
+            try {
+                final byte[] header = new byte[BASE_HEADER_SIZE];
+                int pos = 0;
+                int amt;
+                while (pos < header.length
+                        && (amt = in.read(header, pos, header.length - pos)) > 0) {
+                    pos += amt;
+                }
+                if (pos == header.length && getInt(header, 0) == BASE_MAGIC) {
+                    return getLong(header, 4);
+                }
+                return 0;
+            } finally {
+                in.close();
+            }
+        }
+
+        private FileOutputStream createJournal(long generation) throws IOException {
+            final FileOutputStream out = new FileOutputStream(mFile.journalFile(generation));
+            final byte[] header = new byte[JOURNAL_HEADER_SIZE];
+            putInt(header, 0, JOURNAL_MAGIC);
+            putLong(header, 4, generation);
+            try {
+                out.write(header);
+            } catch (IOException e) {
+                closeQuietly(out);
+                throw e;
+            }
+            return out;
+        }
+
+        /**
+         * Read the valid records of <var>journal</var> into <var>records</var>, if not null.
+         *
+         * @return The length of the valid part of the journal, or -1 if even its header is
+         *         not valid.
+         */
+        private static long readJournal(File journal, List<byte[]> records) throws IOException {
+            final DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(journal)));
+            try {
+                try {
+                    if (in.readInt() != JOURNAL_MAGIC) {
+                        return -1;
+                    }
+                    in.readLong();
+                } catch (EOFException e) {
+                    return -1;
+                }
+                long valid = JOURNAL_HEADER_SIZE;
+                final long fileLength = journal.length();
+                final CRC32 crc = new CRC32();
+                while (true) {
+                    final byte[] record;
+                    try {
+                        final int length = in.readInt();
+                        final int checksum = in.readInt();
+                        if (length < 0 || length > fileLength - valid - RECORD_HEADER_SIZE) {
+                            return valid;
+                        }
+                        record = new byte[length];
+                        in.readFully(record);
+                        crc.reset();
+                        crc.update(record, 0, length);
+                        if ((int) crc.getValue() != checksum) {
+                            return valid;
+                        }
+                    } catch (EOFException e) {
+                        return valid;
+                    }
+                    if (records != null) {
+                        records.add(record);
+                    }
+                    valid += RECORD_HEADER_SIZE + record.length;
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        private static void truncate(File file, long length) throws IOException {
+            final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                raf.setLength(length);
+            } finally {
+                raf.close();
+            }
+        }
+
+        private static void closeQuietly(FileOutputStream out) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Couldn't close journal", e);
+            }
+        }
+
+        private static void putInt(byte[] buffer, int offset, int value) {
+            buffer[offset] = (byte) (value >>> 24);
+            buffer[offset + 1] = (byte) (value >>> 16);
+            buffer[offset + 2] = (byte) (value >>> 8);
+            buffer[offset + 3] = (byte) value;
+        }
+
+        private static void putLong(byte[] buffer, int offset, long value) {
+            putInt(buffer, offset, (int) (value >>> 32));
+            putInt(buffer, offset + 4, (int) value);
+        }
+
+        private static int getInt(byte[] buffer, int offset) {
+            return ((buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16)
+                    | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+        }
+
+        private static long getLong(byte[] buffer, int offset) {
+            return ((long) getInt(buffer, offset) << 32)
+                    | (getInt(buffer, offset + 4) & 0xffffffffL);
+        }
+    }
+
     static boolean sync(FileOutputStream stream) {
         try {
             if (stream != null) {
@@ -0,0 +1,615 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A variant of {@link LruCache} for caches which are accessed by many threads at once.
+ * <p>
+ * The keys are split into segments which are locked independently. Cache hits do not take any
+ * lock: the access is recorded in a small per segment buffer and the recency order is updated
+ * later, in batches, by whichever thread holds or can acquire the segment lock. The order of
+ * entries is therefore approximate; recent accesses may be dropped when a buffer is full, in
+ * which case an entry can be evicted slightly earlier than it would by {@link LruCache}. When
+ * the cache is over its maximum size, the least recently used entry among all segments is
+ * evicted first.
+ * <p>
+ * {@link #sizeOf}, {@link #entryRemoved} and {@link #create} have the same contract as in
+ * {@link LruCache}. The statistics are kept in striped counters and reading them never blocks
+ * the threads using the cache; a value read while the cache is in use may miss the most recent
+ * updates.
+ */
+public class ConcurrentLruCache<K, V> {
+
+    private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private final Segment<K, V>[] mSegments;
+    private final int mSegmentShift;
+    private final int mSegmentMask;
+
+    /** Size of this cache in units. Not necessarily the number of elements. */
+    private final AtomicInteger mSize = new AtomicInteger();
+    private volatile int mMaxSize;
+
+    /** Source of the recency order, shared by all segments. */
+    private final AtomicLong mClock = new AtomicLong();
+
+    private final StripedCounter mPutCount;
+    private final StripedCounter mCreateCount;
+    private final StripedCounter mEvictionCount;
+    private final StripedCounter mHitCount;
+    private final StripedCounter mMissCount;
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public ConcurrentLruCache(int maxSize) {
+        this(maxSize, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxSize          for caches that do not override {@link #sizeOf}, this is
+     *                         the maximum number of entries in the cache. For all other caches,
+     *                         this is the maximum sum of the sizes of the entries in this cache.
+     * @param concurrencyLevel The estimated number of threads using the cache at the same time.
+     *                         The keys are split into at least this many segments.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLruCache(int maxSize, int concurrencyLevel) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        if (concurrencyLevel <= 0) {
+            throw new IllegalArgumentException("concurrencyLevel <= 0");
+        }
+        mMaxSize = maxSize;
+        int shift = 0;
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel && segmentCount < MAX_SEGMENTS) {
+            shift++;
+            segmentCount <<= 1;
+        }
+        mSegmentShift = 32 - shift;
+        mSegmentMask = segmentCount - 1;
+        mSegments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            mSegments[i] = new Segment<K, V>(mClock);
+        }
+        mPutCount = new StripedCounter(segmentCount);
+        mCreateCount = new StripedCounter(segmentCount);
+        mEvictionCount = new StripedCounter(segmentCount);
+        mHitCount = new StripedCounter(segmentCount);
+        mMissCount = new StripedCounter(segmentCount);
+    }
+
+    private Segment<K, V> segmentFor(Object key) {
+        int h = key.hashCode();
+        // spread the bits so that the upper bits used to pick the segment are well mixed
+        h += (h << 15) ^ 0xffffcd7d;
+        h ^= (h >>> 10);
+        h += (h << 3);
+        h ^= (h >>> 6);
+        h += (h << 2) + (h << 14);
+        h ^= (h >>> 16);
+        return mSegments[(h >>> mSegmentShift) & mSegmentMask];
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize <= 0");
+        }
+        mMaxSize = maxSize;
+        trimToSize(maxSize);
+    }
+
+    /**
+     * Returns the value for {@code key} if it exists in the cache or can be
+     * created by {@code #create}. If a value was returned, it is moved to the
+     * head of the queue. This returns null if a value is not cached and cannot
+     * be created.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        final Node<K, V> node = segment.mMap.get(key);
+        if (node != null) {
+            segment.recordAccess(node);
+            mHitCount.increment();
+            return node.mValue;
+        }
+        mMissCount.increment();
+
+        /*
+         * Attempt to create a value. This may take a long time, and the map
+         * may be different when create() returns. If a conflicting value was
+         * added to the map while create() was working, we leave that value in
+         * the map and release the created value.
+         */
+
+        final V createdValue = create(key);
+        if (createdValue == null) {
+            return null;
+        }
+        final int size = safeSizeOf(key, createdValue);
+
+        Node<K, V> existing;
+        segment.lock();
+        try {
+            mCreateCount.increment();
+            segment.drainReadBuffer();
+            existing = segment.mMap.get(key);
+            if (existing != null) {
+                // There was a conflict, keep the value which is in the cache
+                segment.moveToFront(existing);
+            } else {
+                segment.add(new Node<K, V>(key, createdValue, size));
+                mSize.addAndGet(size);
+            }
+        } finally {
+            segment.unlock();
+        }
+
+        if (existing != null) {
+            entryRemoved(false, key, createdValue, existing.mValue);
+            return existing.mValue;
+        } else {
+            trimToSize(mMaxSize);
+            return createdValue;
+        }
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of
+     * the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+
+        final int size = safeSizeOf(key, value);
+        final Segment<K, V> segment = segmentFor(key);
+        Node<K, V> previous;
+        segment.lock();
+        try {
+            mPutCount.increment();
+            segment.drainReadBuffer();
+            previous = segment.mMap.get(key);
+            if (previous != null) {
+                mSize.addAndGet(-previous.mSize);
+                segment.remove(previous);
+            }
+            segment.add(new Node<K, V>(key, value, size));
+            mSize.addAndGet(size);
+        } finally {
+            segment.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.mValue, value);
+        }
+
+        trimToSize(mMaxSize);
+        return previous == null ? null : previous.mValue;
+    }
+
+    /**
+     * Remove the eldest entries until the total of remaining entries is at or
+     * below the requested size.
+     *
+     * @param maxSize the maximum size of the cache before returning. May be -1
+     *            to evict even 0-sized elements.
+     */
+    public void trimToSize(int maxSize) {
+        while (true) {
+            final int size = mSize.get();
+            if (size < 0) {
+                throw new IllegalStateException(getClass().getName()
+                        + ".sizeOf() is reporting inconsistent results!");
+            }
+            if (size <= maxSize) {
+                break;
+            }
+
+            Segment<K, V> victim = null;
+            long eldest = Long.MAX_VALUE;
+            for (Segment<K, V> segment : mSegments) {
+                final long sequence = segment.mEldestSequence;
+                if (sequence < eldest) {
+                    eldest = sequence;
+                    victim = segment;
+                }
+            }
+            if (victim == null) {
+                // every segment is empty
+                break;
+            }
+
+            Node<K, V> evicted;
+            victim.lock();
+            try {
+                victim.drainReadBuffer();
+                // buffered reads may have made another segment hold the eldest entry
+                evicted = mSize.get() > maxSize && victim.mEldestSequence == eldest
+                        ? victim.mTail : null;
+                if (evicted != null) {
+                    mSize.addAndGet(-evicted.mSize);
+                    victim.remove(evicted);
+                    mEvictionCount.increment();
+                }
+            } finally {
+                victim.unlock();
+            }
+
+            if (evicted != null) {
+                entryRemoved(true, evicted.mKey, evicted.mValue, null);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final Segment<K, V> segment = segmentFor(key);
+        Node<K, V> previous;
+        segment.lock();
+        try {
+            previous = segment.mMap.get(key);
+            if (previous != null) {
+                mSize.addAndGet(-previous.mSize);
+                segment.remove(previous);
+            }
+        } finally {
+            segment.unlock();
+        }
+
+        if (previous != null) {
+            entryRemoved(false, key, previous.mValue, null);
+            return previous.mValue;
+        }
+        return null;
+    }
+
+    /**
+     * Called for entries that have been evicted or removed. This method is
+     * invoked when a value is evicted to make space, removed by a call to
+     * {@link #remove}, or replaced by a call to {@link #put}. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space, false
+     *     if the removal was caused by a {@link #put} or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put}. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Called after a cache miss to compute a value for the corresponding key.
+     * Returns the computed value or null if no value can be computed. The
+     * default implementation returns null.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * <p>If a value for {@code key} exists in the cache when this method
+     * returns, the created value will be released with {@link #entryRemoved}
+     * and discarded. This can occur when multiple threads request the same key
+     * at the same time (causing multiple values to be created), or when one
+     * thread calls {@link #put} while another is creating a value for the same
+     * key.
+     */
+    protected V create(K key) {
+        return null;
+    }
+
+    private int safeSizeOf(K key, V value) {
+        int result = sizeOf(key, value);
+        if (result < 0) {
+            throw new IllegalStateException("Negative size: " + key + "=" + value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        trimToSize(-1); // -1 will evict 0-sized elements
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache.
+     */
+    public final int size() {
+        return mSize.get();
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null or required a new
+     * value to be created.
+     */
+    public final int missCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #create(Object)} returned a value.
+     */
+    public final int createCount() {
+        return mCreateCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #put} was called.
+     */
+    public final int putCount() {
+        return mPutCount.get();
+    }
+
+    /**
+     * Returns the number of values that have been evicted.
+     */
+    public final int evictionCount() {
+        return mEvictionCount.get();
+    }
+
+    /**
+     * Returns a copy of the current contents of the cache, ordered from least
+     * recently accessed to most recently accessed. Segments are copied one at a time, so the
+     * copy may not reflect a single point in time if the cache is being modified.
+     */
+    public final Map<K, V> snapshot() {
+        final ArrayList<Node<K, V>> nodes = new ArrayList<Node<K, V>>();
+        final ArrayList<Long> sequences = new ArrayList<Long>();
+        for (Segment<K, V> segment : mSegments) {
+            segment.lock();
+            try {
+                segment.drainReadBuffer();
+                for (Node<K, V> node = segment.mTail; node != null; node = node.mPrev) {
+                    nodes.add(node);
+                    sequences.add(node.mSequence);
+                }
+            } finally {
+                segment.unlock();
+            }
+        }
+        final Integer[] order = new Integer[nodes.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return sequences.get(lhs).compareTo(sequences.get(rhs));
+            }
+        });
+        final LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>(order.length);
+        for (Integer index : order) {
+            final Node<K, V> node = nodes.get(index);
+            snapshot.put(node.mKey, node.mValue);
+        }
+        return snapshot;
+    }
+
+    @Override public final String toString() {
+        int hitCount = hitCount();
+        int accesses = hitCount + missCount();
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("ConcurrentLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%]",
+                mMaxSize, hitCount, accesses - hitCount, hitPercent);
+    }
+
+    private static final class Node<K, V> {
+        final K mKey;
+        final V mValue;
+        final int mSize;
+
+        // guarded by the segment lock
+        Node<K, V> mPrev;
+        Node<K, V> mNext;
+        long mSequence;
+        boolean mLinked;
+
+        Node(K key, V value, int size) {
+            mKey = key;
+            mValue = value;
+            mSize = size;
+        }
+    }
+
+    /**
+     * A part of the cache with its own lock, hash map and recency list. The map may be read
+     * without the lock; it and the list are only modified with the lock held.
+     */
+    @SuppressWarnings("serial")
+    private static final class Segment<K, V> extends ReentrantLock {
+        private static final int READ_BUFFER_SIZE = 32;
+        private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+        // try to apply the buffered accesses every this many reads
+        private static final int DRAIN_INTERVAL_MASK = 16 - 1;
+
+        final ConcurrentHashMap<K, Node<K, V>> mMap =
+                new ConcurrentHashMap<K, Node<K, V>>(16, 0.75f, 1);
+
+        private final AtomicLong mClock;
+
+        // most recently used node, followed by older ones
+        Node<K, V> mHead;
+        Node<K, V> mTail;
+
+        /** Recency of the least recently used node, {@link Long#MAX_VALUE} if empty. */
+        volatile long mEldestSequence = Long.MAX_VALUE;
+
+        private final AtomicReferenceArray<Node<K, V>> mReadBuffer =
+                new AtomicReferenceArray<Node<K, V>>(READ_BUFFER_SIZE);
+        private final AtomicInteger mReadCount = new AtomicInteger();
+
+        Segment(AtomicLong clock) {
+            mClock = clock;
+        }
+
+        /**
+         * Records a read of the node without blocking. The entry is moved to the front of the
+         * list the next time the buffer is drained; an access is lost if its slot is reused
+         * first.
+         */
+        void recordAccess(Node<K, V> node) {
+            final int count = mReadCount.getAndIncrement();
+            mReadBuffer.lazySet(count & READ_BUFFER_MASK, node);
+            if ((count & DRAIN_INTERVAL_MASK) == DRAIN_INTERVAL_MASK && tryLock()) {
+                try {
+                    drainReadBuffer();
+                } finally {
+                    unlock();
+                }
+            }
+        }
+
+        void drainReadBuffer() {
+            for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+                final Node<K, V> node = mReadBuffer.get(i);
+                if (node != null) {
+                    mReadBuffer.lazySet(i, null);
+                    if (node.mLinked) {
+                        moveToFront(node);
+                    }
+                }
+            }
+        }
+
+        void add(Node<K, V> node) {
+            mMap.put(node.mKey, node);
+            node.mLinked = true;
+            linkFirst(node);
+        }
+
+        void remove(Node<K, V> node) {
+            mMap.remove(node.mKey);
+            node.mLinked = false;
+            unlink(node);
+            updateEldest();
+        }
+
+        void moveToFront(Node<K, V> node) {
+            if (mHead != node) {
+                unlink(node);
+                linkFirst(node);
+            } else {
+                node.mSequence = mClock.incrementAndGet();
+                updateEldest();
+            }
+        }
+
+        private void linkFirst(Node<K, V> node) {
+            node.mSequence = mClock.incrementAndGet();
+            node.mPrev = null;
+            node.mNext = mHead;
+            if (mHead != null) {
+                mHead.mPrev = node;
+            }
+            mHead = node;
+            if (mTail == null) {
+                mTail = node;
+            }
+            updateEldest();
+        }
+
+        private void unlink(Node<K, V> node) {
+            if (node.mPrev != null) {
+                node.mPrev.mNext = node.mNext;
+            } else {
+                mHead = node.mNext;
+            }
+            if (node.mNext != null) {
+                node.mNext.mPrev = node.mPrev;
+            } else {
+                mTail = node.mPrev;
+            }
+            node.mPrev = null;
+            node.mNext = null;
+        }
+
+        private void updateEldest() {
+            mEldestSequence = mTail == null ? Long.MAX_VALUE : mTail.mSequence;
+        }
+    }
+}
@@ -19,6 +19,7 @@ package android.support.v4.util;
 class ContainerHelpers {
     static final int[] EMPTY_INTS = new int[0];
     static final long[] EMPTY_LONGS = new long[0];
+    static final boolean[] EMPTY_BOOLEANS = new boolean[0];
     static final Object[] EMPTY_OBJECTS = new Object[0];
 
     public static int idealIntArraySize(int need) {
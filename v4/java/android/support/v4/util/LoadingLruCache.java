@@ -0,0 +1,577 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.os.SystemClock;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A cache built on {@link LruCache} which loads missing values through {@link #load(Object)}.
+ * <p>
+ * Unlike {@link LruCache#create(Object)}, at most one load runs for a key at any time. Threads
+ * which miss on a key that is already being loaded wait for that load and receive its value,
+ * or the exception it threw.
+ * <p>
+ * Entries can optionally expire a fixed time after they were stored ({@link #setTimeToLive})
+ * or after they were last read ({@link #setTimeToIdle}). Expired entries are never returned;
+ * they are removed when they are accessed, by {@link #evictExpired()}, or when they become the
+ * least recently used entries. With {@link #setRefreshAfterWrite}, an entry older than the
+ * refresh interval is reloaded in the background while {@link #get(Object)} keeps returning the
+ * current value.
+ */
+public abstract class LoadingLruCache<K, V> {
+
+    private final EntryCache mCache;
+
+    /** Guards the check-then-store sequences on {@link #mCache}. */
+    private final Object mLock = new Object();
+
+    /** Loads in flight, guarded by itself. */
+    private final HashMap<K, FutureTask<V>> mLoads = new HashMap<K, FutureTask<V>>();
+
+    /**
+     * {@link #entryRemoved} calls triggered while holding {@link #mLock}, dispatched once it is
+     * released.
+     */
+    private final ConcurrentLinkedQueue<Removal<K, V>> mPendingRemovals =
+            new ConcurrentLinkedQueue<Removal<K, V>>();
+
+    private volatile long mTimeToLiveMillis = 0;
+    private volatile long mTimeToIdleMillis = 0;
+    private volatile long mRefreshAfterWriteMillis = 0;
+    private volatile Executor mRefreshExecutor;
+
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+    private final AtomicInteger mLoadCount = new AtomicInteger();
+    private final AtomicInteger mLoadFailureCount = new AtomicInteger();
+    private final AtomicInteger mRefreshCount = new AtomicInteger();
+
+    /**
+     * @param maxSize for caches that do not override {@link #sizeOf}, this is
+     *     the maximum number of entries in the cache. For all other caches,
+     *     this is the maximum sum of the sizes of the entries in this cache.
+     */
+    public LoadingLruCache(int maxSize) {
+        mCache = new EntryCache(maxSize);
+    }
+
+    /**
+     * Sets how long an entry stays valid after it was stored. A duration of 0, the default,
+     * disables this expiry.
+     */
+    public void setTimeToLive(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration < 0");
+        }
+        mTimeToLiveMillis = unit.toMillis(duration);
+    }
+
+    /**
+     * Sets how long an entry stays valid after it was last returned by {@link #get(Object)} or
+     * stored. A duration of 0, the default, disables this expiry.
+     */
+    public void setTimeToIdle(long duration, TimeUnit unit) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration < 0");
+        }
+        mTimeToIdleMillis = unit.toMillis(duration);
+    }
+
+    /**
+     * Enables background refreshes. When {@link #get(Object)} returns an entry stored at least
+     * {@code duration} ago, a load for its key is started on {@code executor} and the current
+     * value is returned. The entry is replaced once the load returns a value; if the load fails
+     * or returns null, the current value is kept and the next refresh is attempted one interval
+     * later.
+     *
+     * @param duration The refresh interval, or 0 to disable refreshes.
+     * @param unit     The unit of {@code duration}.
+     * @param executor The executor which runs the refreshes. Ignored if {@code duration} is 0.
+     */
+    public void setRefreshAfterWrite(long duration, TimeUnit unit, Executor executor) {
+        if (duration < 0) {
+            throw new IllegalArgumentException("duration < 0");
+        }
+        if (duration > 0 && executor == null) {
+            throw new NullPointerException("executor == null");
+        }
+        mRefreshExecutor = executor;
+        mRefreshAfterWriteMillis = unit.toMillis(duration);
+    }
+
+    /**
+     * Sets the size of the cache.
+     *
+     * @param maxSize The new maximum size.
+     */
+    public void resize(int maxSize) {
+        mCache.resize(maxSize);
+        dispatchRemovals();
+    }
+
+    /**
+     * Returns the value for {@code key}, loading it with {@link #load(Object)} if it is not
+     * cached or has expired. If another thread is already loading the key, waits for that load
+     * instead of starting a new one. Returns null if the value cannot be loaded, or if the
+     * calling thread is interrupted while waiting for another thread's load.
+     *
+     * @throws RuntimeException The exception thrown by {@link #load(Object)}.
+     */
+    public final V get(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+
+        final long now = now();
+        Entry<V> entry = getValidEntry(key, now);
+        FutureTask<V> task = null;
+        boolean startLoad = false;
+        if (entry == null) {
+            synchronized (mLoads) {
+                task = mLoads.get(key);
+                if (task == null) {
+                    // a load may have stored the value and finished since the lookup above
+                    entry = mCache.get(key);
+                    if (entry == null || isExpired(entry, now)) {
+                        entry = null;
+                        task = newLoadTask(key);
+                        mLoads.put(key, task);
+                        startLoad = true;
+                    }
+                }
+            }
+        }
+        if (entry != null) {
+            mHitCount.incrementAndGet();
+            entry.mAccessTime = now;
+            if (needsRefresh(entry, now)) {
+                refreshAsync(key, entry, now);
+            }
+            return entry.mValue;
+        }
+        mMissCount.incrementAndGet();
+
+        if (startLoad) {
+            task.run();
+        }
+        return getResult(task);
+    }
+
+    /**
+     * Returns the value for {@code key} if it is cached and has not expired. Never loads.
+     */
+    public final V getIfPresent(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        final long now = now();
+        final Entry<V> entry = getValidEntry(key, now);
+        if (entry == null) {
+            return null;
+        }
+        entry.mAccessTime = now;
+        return entry.mValue;
+    }
+
+    /**
+     * Caches {@code value} for {@code key}. The value is moved to the head of
+     * the queue.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V put(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException("key == null || value == null");
+        }
+        final Entry<V> previous;
+        synchronized (mLock) {
+            previous = mCache.put(key, new Entry<V>(value, now()));
+        }
+        dispatchRemovals();
+        return previous == null ? null : previous.mValue;
+    }
+
+    /**
+     * Removes the entry for {@code key} if it exists. A load in flight for the key is not
+     * cancelled and will store its value when it completes.
+     *
+     * @return the previous value mapped by {@code key}.
+     */
+    public final V remove(K key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        final Entry<V> previous;
+        synchronized (mLock) {
+            previous = mCache.remove(key);
+        }
+        dispatchRemovals();
+        return previous == null ? null : previous.mValue;
+    }
+
+    /**
+     * Removes every expired entry, calling {@link #entryRemoved} on each of them.
+     */
+    public final void evictExpired() {
+        if (mTimeToLiveMillis == 0 && mTimeToIdleMillis == 0) {
+            return;
+        }
+        final long now = now();
+        for (Map.Entry<K, Entry<V>> mapEntry : mCache.snapshot().entrySet()) {
+            if (isExpired(mapEntry.getValue(), now)) {
+                removeExpired(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+        dispatchRemovals();
+    }
+
+    /**
+     * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+     */
+    public final void evictAll() {
+        synchronized (mLock) {
+            mCache.evictAll();
+        }
+        dispatchRemovals();
+    }
+
+    /**
+     * Loads the value for {@code key}. Called without synchronization, never more than once at
+     * a time for the same key. Returns null if no value can be loaded. Exceptions thrown by this
+     * method are propagated to the callers of {@link #get(Object)} waiting for the load.
+     */
+    protected abstract V load(K key);
+
+    /**
+     * Called for entries that have been evicted, expired or removed. This method is
+     * invoked when a value is evicted to make space or because it expired, removed by a call
+     * to {@link #remove}, or replaced by a call to {@link #put} or a load. The default
+     * implementation does nothing.
+     *
+     * <p>The method is called without synchronization: other threads may
+     * access the cache while this method is executing.
+     *
+     * @param evicted true if the entry is being removed to make space or because it expired,
+     *     false if the removal was caused by a {@link #put}, a load or {@link #remove}.
+     * @param newValue the new value for {@code key}, if it exists. If non-null,
+     *     this removal was caused by a {@link #put} or a load. Otherwise it was caused by
+     *     an eviction or a {@link #remove}.
+     */
+    protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue) {}
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in
+     * user-defined units.  The default implementation returns 1 so that size
+     * is the number of entries and max size is the maximum number of entries.
+     *
+     * <p>An entry's size must not change while it is in the cache.
+     */
+    protected int sizeOf(K key, V value) {
+        return 1;
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the number
+     * of entries in the cache. For all other caches, this returns the sum of
+     * the sizes of the entries in this cache. Expired entries which were not removed yet are
+     * included.
+     */
+    public final int size() {
+        return mCache.size();
+    }
+
+    /**
+     * For caches that do not override {@link #sizeOf}, this returns the maximum
+     * number of entries in the cache. For all other caches, this returns the
+     * maximum sum of the sizes of the entries in this cache.
+     */
+    public final int maxSize() {
+        return mCache.maxSize();
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned a value that was
+     * already present in the cache.
+     */
+    public final int hitCount() {
+        return mHitCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #get} did not find a valid value in the cache,
+     * including the calls which waited for a load started by another thread.
+     */
+    public final int missCount() {
+        return mMissCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #load(Object)} returned a value.
+     */
+    public final int loadCount() {
+        return mLoadCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #load(Object)} threw an exception.
+     */
+    public final int loadFailureCount() {
+        return mLoadFailureCount.get();
+    }
+
+    /**
+     * Returns the number of background refreshes that were started.
+     */
+    public final int refreshCount() {
+        return mRefreshCount.get();
+    }
+
+    /**
+     * Returns the number of values that have been evicted to make space.
+     */
+    public final int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    /**
+     * Returns a copy of the current unexpired contents of the cache, ordered from least
+     * recently accessed to most recently accessed.
+     */
+    public final Map<K, V> snapshot() {
+        final long now = now();
+        final Map<K, Entry<V>> entries = mCache.snapshot();
+        final LinkedHashMap<K, V> snapshot = new LinkedHashMap<K, V>(entries.size());
+        for (Map.Entry<K, Entry<V>> mapEntry : entries.entrySet()) {
+            if (!isExpired(mapEntry.getValue(), now)) {
+                snapshot.put(mapEntry.getKey(), mapEntry.getValue().mValue);
+            }
+        }
+        return snapshot;
+    }
+
+    @Override public final String toString() {
+        int hitCount = mHitCount.get();
+        int accesses = hitCount + mMissCount.get();
+        int hitPercent = accesses != 0 ? (100 * hitCount / accesses) : 0;
+        return String.format("LoadingLruCache[maxSize=%d,hits=%d,misses=%d,hitRate=%d%%,"
+                + "loads=%d]", maxSize(), hitCount, accesses - hitCount, hitPercent,
+                mLoadCount.get());
+    }
+
+    private static long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        final long timeToLive = mTimeToLiveMillis;
+        final long timeToIdle = mTimeToIdleMillis;
+        return (timeToLive > 0 && now - entry.mWriteTime >= timeToLive)
+                || (timeToIdle > 0 && now - entry.mAccessTime >= timeToIdle);
+    }
+
+    private boolean needsRefresh(Entry<V> entry, long now) {
+        final long refreshAfterWrite = mRefreshAfterWriteMillis;
+        return refreshAfterWrite > 0 && now - entry.mRefreshAttemptTime >= refreshAfterWrite;
+    }
+
+    /**
+     * Returns the entry for the key, or null if there is none. An expired entry is removed and
+     * null is returned.
+     */
+    private Entry<V> getValidEntry(K key, long now) {
+        final Entry<V> entry = mCache.get(key);
+        if (entry != null && isExpired(entry, now)) {
+            removeExpired(key, entry);
+            dispatchRemovals();
+            return null;
+        }
+        return entry;
+    }
+
+    private void removeExpired(K key, Entry<V> entry) {
+        synchronized (mLock) {
+            // it may have been replaced since it was read
+            if (mCache.get(key) == entry) {
+                entry.mExpired = true;
+                mCache.remove(key);
+            }
+        }
+    }
+
+    private void refreshAsync(final K key, final Entry<V> stale, long now) {
+        final Executor executor = mRefreshExecutor;
+        if (executor == null) {
+            return;
+        }
+        final FutureTask<V> task;
+        synchronized (mLoads) {
+            if (mLoads.containsKey(key)) {
+                return;
+            }
+            // also the earliest time of the next attempt if this one fails
+            stale.mRefreshAttemptTime = now;
+            task = newLoadTask(key);
+            mLoads.put(key, task);
+        }
+        mRefreshCount.incrementAndGet();
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            synchronized (mLoads) {
+                mLoads.remove(key);
+            }
+        }
+    }
+
+    private FutureTask<V> newLoadTask(final K key) {
+        return new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() {
+                try {
+                    return loadAndStore(key);
+                } finally {
+                    synchronized (mLoads) {
+                        mLoads.remove(key);
+                    }
+                    dispatchRemovals();
+                }
+            }
+        });
+    }
+
+    /**
+     * Loads the value for the key and stores it, unless a valid value was stored in the
+     * meantime. Returns the value now in the cache for the key.
+     */
+    private V loadAndStore(K key) {
+        final V value;
+        try {
+            value = load(key);
+        } catch (RuntimeException e) {
+            mLoadFailureCount.incrementAndGet();
+            throw e;
+        } catch (Error e) {
+            mLoadFailureCount.incrementAndGet();
+            throw e;
+        }
+        final long now = now();
+        synchronized (mLock) {
+            final Entry<V> current = mCache.get(key);
+            if (value == null) {
+                // keep serving a refreshed entry if the load could not produce a new one
+                return current == null || isExpired(current, now) ? null : current.mValue;
+            }
+            mLoadCount.incrementAndGet();
+            if (current == null || isExpired(current, now)
+                    || current.mRefreshAttemptTime != current.mWriteTime) {
+                // nothing valid cached, or this load is the refresh of the current entry
+                mCache.put(key, new Entry<V>(value, now));
+                return value;
+            }
+            // the value was put while loading, keep it and release the loaded one
+            mPendingRemovals.add(new Removal<K, V>(false, key, value, current.mValue));
+            return current.mValue;
+        }
+    }
+
+    private V getResult(FutureTask<V> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void dispatchRemovals() {
+        Removal<K, V> removal;
+        while ((removal = mPendingRemovals.poll()) != null) {
+            entryRemoved(removal.mEvicted, removal.mKey, removal.mOldValue, removal.mNewValue);
+        }
+    }
+
+    private static class Entry<V> {
+        final V mValue;
+        final long mWriteTime;
+        volatile long mAccessTime;
+        volatile long mRefreshAttemptTime;
+        // set under mLock right before an expired entry is removed
+        boolean mExpired;
+
+        Entry(V value, long now) {
+            mValue = value;
+            mWriteTime = now;
+            mAccessTime = now;
+            mRefreshAttemptTime = now;
+        }
+    }
+
+    private static class Removal<K, V> {
+        final boolean mEvicted;
+        final K mKey;
+        final V mOldValue;
+        final V mNewValue;
+
+        Removal(boolean evicted, K key, V oldValue, V newValue) {
+            mEvicted = evicted;
+            mKey = key;
+            mOldValue = oldValue;
+            mNewValue = newValue;
+        }
+    }
+
+    /**
+     * Holds the entries; removals are queued and reported after {@link #mLock} is released.
+     */
+    private class EntryCache extends LruCache<K, Entry<V>> {
+        EntryCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(K key, Entry<V> entry) {
+            return LoadingLruCache.this.sizeOf(key, entry.mValue);
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, K key, Entry<V> oldEntry,
+                Entry<V> newEntry) {
+            mPendingRemovals.add(new Removal<K, V>(evicted || oldEntry.mExpired, key,
+                    oldEntry.mValue, newEntry == null ? null : newEntry.mValue));
+        }
+    }
+}
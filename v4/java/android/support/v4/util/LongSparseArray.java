@@ -16,6 +16,8 @@
 
 package android.support.v4.util;
 
+import java.util.ConcurrentModificationException;
+
 /**
  * SparseArray mapping longs to Objects, a version of the platform's
  * {@link android.util.LongSparseArray} that can be used on older versions of the
@@ -47,6 +49,7 @@ public class LongSparseArray<E> implements Cloneable {
     private long[] mKeys;
     private Object[] mValues;
     private int mSize;
+    private int mModCount;
 
     /**
      * Creates a new LongSparseArray containing no mappings.
@@ -121,6 +124,7 @@ public class LongSparseArray<E> implements Cloneable {
             if (mValues[i] != DELETED) {
                 mValues[i] = DELETED;
                 mGarbage = true;
+                mModCount++;
             }
         }
     }
@@ -139,6 +143,7 @@ public class LongSparseArray<E> implements Cloneable {
         if (mValues[index] != DELETED) {
             mValues[index] = DELETED;
             mGarbage = true;
+            mModCount++;
         }
     }
 
@@ -186,6 +191,7 @@ public class LongSparseArray<E> implements Cloneable {
             if (i < mSize && mValues[i] == DELETED) {
                 mKeys[i] = key;
                 mValues[i] = value;
+                mModCount++;
                 return;
             }
 
@@ -219,6 +225,7 @@ public class LongSparseArray<E> implements Cloneable {
             mKeys[i] = key;
             mValues[i] = value;
             mSize++;
+            mModCount++;
         }
     }
 
@@ -320,6 +327,7 @@ public class LongSparseArray<E> implements Cloneable {
 
         mSize = 0;
         mGarbage = false;
+        mModCount++;
     }
 
     /**
@@ -354,6 +362,177 @@ public class LongSparseArray<E> implements Cloneable {
         mKeys[pos] = key;
         mValues[pos] = value;
         mSize = pos + 1;
+        mModCount++;
+    }
+
+    /**
+     * Puts all mappings of <var>other</var> into this array, replacing the values of keys
+     * which are already mapped.  Both arrays are already sorted, so this is a single merge
+     * rather than a search and an insertion per key.
+     */
+    public void putAll(LongSparseArray<? extends E> other) {
+        if (other == this) {
+            return;
+        }
+        final int count = other.size();
+        putAllSorted(other.mKeys, other.mValues, count);
+    }
+
+    /**
+     * Puts all of the given mappings into this array, replacing the values of keys which
+     * are already mapped.  If <var>keys</var> is in strictly ascending order this is a single
+     * merge, and keys greater than all existing keys are appended without searching;
+     * otherwise each mapping is {@link #put put} in turn.
+     *
+     * @param keys The keys to map.
+     * @param values The values to map <var>keys</var> to, one per key.
+     */
+    public void putAll(long[] keys, E[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("keys and values must have the same length");
+        }
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                for (int j = 0; j < keys.length; j++) {
+                    put(keys[j], values[j]);
+                }
+                return;
+            }
+        }
+        putAllSorted(keys, values, keys.length);
+    }
+
+    private void putAllSorted(long[] keys, Object[] values, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (mGarbage) {
+            gc();
+        }
+
+        final int size = mSize;
+        if (size == 0 || keys[0] > mKeys[size - 1]) {
+            // Everything goes after the existing keys.
+            if (size + count > mKeys.length) {
+                int n = ContainerHelpers.idealLongArraySize(size + count);
+
+                long[] nkeys = new long[n];
+                Object[] nvalues = new Object[n];
+
+                System.arraycopy(mKeys, 0, nkeys, 0, size);
+                System.arraycopy(mValues, 0, nvalues, 0, size);
+
+                mKeys = nkeys;
+                mValues = nvalues;
+            }
+            System.arraycopy(keys, 0, mKeys, size, count);
+            System.arraycopy(values, 0, mValues, size, count);
+            mSize = size + count;
+            mModCount++;
+            return;
+        }
+
+        final long[] okeys = mKeys;
+        final Object[] ovalues = mValues;
+        final int n = ContainerHelpers.idealLongArraySize(size + count);
+        final long[] nkeys = new long[n];
+        final Object[] nvalues = new Object[n];
+        int i = 0;
+        int j = 0;
+        int o = 0;
+        while (i < size && j < count) {
+            final long key = okeys[i];
+            final long newKey = keys[j];
+            if (key < newKey) {
+                nkeys[o] = key;
+                nvalues[o] = ovalues[i++];
+            } else {
+                if (key == newKey) {
+                    i++;
+                }
+                nkeys[o] = newKey;
+                nvalues[o] = values[j++];
+            }
+            o++;
+        }
+        if (i < size) {
+            System.arraycopy(okeys, i, nkeys, o, size - i);
+            System.arraycopy(ovalues, i, nvalues, o, size - i);
+            o += size - i;
+        }
+        if (j < count) {
+            System.arraycopy(keys, j, nkeys, o, count - j);
+            System.arraycopy(values, j, nvalues, o, count - j);
+            o += count - j;
+        }
+
+        mKeys = nkeys;
+        mValues = nvalues;
+        mSize = o;
+        mModCount++;
+    }
+
+    /**
+     * Calls <var>visitor</var> with each key/value mapping in ascending key order.  Unlike
+     * a loop over {@link #keyAt} and {@link #valueAt}, this fails fast when the visitor
+     * adds or removes keys.  The visitor may change values with {@link #setValueAt}.
+     *
+     * @throws ConcurrentModificationException If keys were added or removed during the visit.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryVisitor<? super E> visitor) {
+        if (mGarbage) {
+            gc();
+        }
+
+        final int modCount = mModCount;
+        for (int i = 0; i < mSize; i++) {
+            visitor.visit(mKeys[i], (E) mValues[i]);
+            if (mModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Copies the keys in ascending order into <var>array</var> starting at
+     * <var>offset</var>, and returns the number of keys copied.
+     *
+     * @throws ArrayIndexOutOfBoundsException If <var>array</var> has no room for
+     *         {@link #size()} keys after <var>offset</var>.
+     */
+    public int copyKeysTo(long[] array, int offset) {
+        if (mGarbage) {
+            gc();
+        }
+
+        checkCopyBounds(array.length, offset);
+        System.arraycopy(mKeys, 0, array, offset, mSize);
+        return mSize;
+    }
+
+    /**
+     * Copies the values in ascending key order into <var>array</var> starting at
+     * <var>offset</var>, and returns the number of values copied.
+     *
+     * @throws ArrayIndexOutOfBoundsException If <var>array</var> has no room for
+     *         {@link #size()} values after <var>offset</var>.
+     */
+    public int copyValuesTo(Object[] array, int offset) {
+        if (mGarbage) {
+            gc();
+        }
+
+        checkCopyBounds(array.length, offset);
+        System.arraycopy(mValues, 0, array, offset, mSize);
+        return mSize;
+    }
+
+    private void checkCopyBounds(int length, int offset) {
+        if (offset < 0 || length - offset < mSize) {
+            throw new ArrayIndexOutOfBoundsException("need " + mSize + " entries from " + offset
+                    + " but length is " + length);
+        }
     }
 
     /**
@@ -388,4 +567,14 @@ public class LongSparseArray<E> implements Cloneable {
         buffer.append('}');
         return buffer.toString();
     }
+
+    /**
+     * Callback for {@link LongSparseArray#forEach(EntryVisitor)}.
+     */
+    public interface EntryVisitor<E> {
+        /**
+         * Called for each mapping of the array.
+         */
+        void visit(long key, E value);
+    }
 }
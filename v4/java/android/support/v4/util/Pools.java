@@ -17,6 +17,7 @@
 
 package android.support.v4.util;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Helper class for crating pools of objects. An example use looks like this:
@@ -40,9 +41,17 @@ package android.support.v4.util;
  * }
  * </pre>
  *
+ * <p>Pools shared by several threads can use {@link LockFreePool}, or {@link ThreadLocalPool}
+ * when most instances are released on the thread which acquired them.</p>
  */
 public final class Pools {
 
+    /**
+     * Whether release scans the pool for the instance first, see
+     * {@link #setReleaseChecksEnabled(boolean)}.
+     */
+    static volatile boolean sCheckReleases;
+
     /**
      * Interface for managing a pool of objects.
      *
@@ -61,7 +70,8 @@ public final class Pools {
          * @param instance The instance to release.
          * @return Whether the instance was put in the pool.
          *
-         * @throws IllegalStateException If the instance is already in the pool.
+         * @throws IllegalStateException If the instance is already in the pool and
+         *         release checks are {@link Pools#setReleaseChecksEnabled(boolean) enabled}.
          */
         public boolean release(T instance);
     }
@@ -70,6 +80,17 @@ public final class Pools {
         /* do nothing - hiding constructor */
     }
 
+    /**
+     * Sets whether pools check that a released instance is not already in the pool.  The
+     * check scans the whole pool on every release, so it is off by default and meant for
+     * debug builds.
+     *
+     * @param enabled Whether to check releases.
+     */
+    public static void setReleaseChecksEnabled(boolean enabled) {
+        sCheckReleases = enabled;
+    }
+
     /**
      * Simple (non-synchronized) pool of objects.
      *
@@ -109,7 +130,7 @@ public final class Pools {
 
         @Override
         public boolean release(T instance) {
-            if (isInPool(instance)) {
+            if (sCheckReleases && isInPool(instance)) {
                 throw new IllegalStateException("Already in the pool!");
             }
             if (mPoolSize < mPool.length) {
@@ -163,4 +184,235 @@ public final class Pools {
             }
         }
     }
+
+    /**
+     * Bounded pool of objects which can be shared by several threads without locking.
+     * Instances are kept in slots which are claimed and filled with compare-and-set, and each
+     * thread starts looking at a different slot so they rarely race for the same one.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class LockFreePool<T> implements Pool<T> {
+        private final AtomicReferenceArray<T> mPool;
+
+        private volatile Counters mCounters;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSize The max pool size.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public LockFreePool(int maxPoolSize) {
+            if (maxPoolSize <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mPool = new AtomicReferenceArray<T>(maxPoolSize);
+        }
+
+        @Override
+        public T acquire() {
+            final AtomicReferenceArray<T> pool = mPool;
+            final int length = pool.length();
+            int index = startIndex(length);
+            for (int i = 0; i < length; i++) {
+                final T instance = pool.get(index);
+                if (instance != null && pool.compareAndSet(index, instance, null)) {
+                    countAcquire(mCounters, true);
+                    return instance;
+                }
+                if (++index == length) {
+                    index = 0;
+                }
+            }
+            countAcquire(mCounters, false);
+            return null;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final AtomicReferenceArray<T> pool = mPool;
+            final int length = pool.length();
+            if (sCheckReleases) {
+                for (int i = 0; i < length; i++) {
+                    if (pool.get(i) == instance) {
+                        throw new IllegalStateException("Already in the pool!");
+                    }
+                }
+            }
+            int index = startIndex(length);
+            for (int i = 0; i < length; i++) {
+                if (pool.get(index) == null && pool.compareAndSet(index, null, instance)) {
+                    countRelease(mCounters, true);
+                    return true;
+                }
+                if (++index == length) {
+                    index = 0;
+                }
+            }
+            countRelease(mCounters, false);
+            return false;
+        }
+
+        private static int startIndex(int length) {
+            return (int) (Thread.currentThread().getId() % length);
+        }
+
+        /**
+         * Sets whether this pool counts acquires, releases and misses.  Counting is off by
+         * default, and enabling it again resets the counts.
+         *
+         * @param enabled Whether to count.
+         */
+        public void setCountersEnabled(boolean enabled) {
+            mCounters = enabled ? new Counters() : null;
+        }
+
+        /**
+         * @return The counts since counting was enabled, or null if it is disabled.
+         */
+        public Counters getCounters() {
+            return mCounters;
+        }
+    }
+
+    /**
+     * Pool of objects which keeps a small pool per thread, so acquiring and releasing on the
+     * same thread needs no synchronization.  Releases which do not fit the pool of the
+     * current thread go to a shared pool, where threads with an empty pool of their own can
+     * pick them up.
+     *
+     * @param <T> The pooled type.
+     */
+    public static class ThreadLocalPool<T> implements Pool<T> {
+        private final Pool<T> mSharedPool;
+
+        private final ThreadLocal<SimplePool<T>> mLocalPool;
+
+        private volatile Counters mCounters;
+
+        /**
+         * Creates a new instance.
+         *
+         * @param maxPoolSizePerThread The max pool size of each thread.
+         * @param sharedPool The pool to overflow to, which must be safe to use from several
+         *         threads such as a {@link LockFreePool}.
+         *
+         * @throws IllegalArgumentException If the max pool size is less than zero.
+         */
+        public ThreadLocalPool(final int maxPoolSizePerThread, Pool<T> sharedPool) {
+            if (maxPoolSizePerThread <= 0) {
+                throw new IllegalArgumentException("The max pool size must be > 0");
+            }
+            mSharedPool = sharedPool;
+            mLocalPool = new ThreadLocal<SimplePool<T>>() {
+                @Override
+                protected SimplePool<T> initialValue() {
+                    return new SimplePool<T>(maxPoolSizePerThread);
+                }
+            };
+        }
+
+        @Override
+        public T acquire() {
+            T instance = mLocalPool.get().acquire();
+            if (instance == null) {
+                instance = mSharedPool.acquire();
+            }
+            countAcquire(mCounters, instance != null);
+            return instance;
+        }
+
+        @Override
+        public boolean release(T instance) {
+            final boolean pooled = mLocalPool.get().release(instance)
+                    || mSharedPool.release(instance);
+            countRelease(mCounters, pooled);
+            return pooled;
+        }
+
+        /**
+         * Sets whether this pool counts acquires, releases and misses.  Counting is off by
+         * default, and enabling it again resets the counts.
+         *
+         * @param enabled Whether to count.
+         */
+        public void setCountersEnabled(boolean enabled) {
+            mCounters = enabled ? new Counters() : null;
+        }
+
+        /**
+         * @return The counts since counting was enabled, or null if it is disabled.
+         */
+        public Counters getCounters() {
+            return mCounters;
+        }
+    }
+
+    /**
+     * Usage counts of a pool, for sizing it.  Many misses mean the pool runs empty, many
+     * drops mean it is full when instances come back.
+     */
+    public static final class Counters {
+        final StripedCounter mAcquireCount = new StripedCounter(8);
+        final StripedCounter mMissCount = new StripedCounter(8);
+        final StripedCounter mReleaseCount = new StripedCounter(8);
+        final StripedCounter mDropCount = new StripedCounter(8);
+
+        Counters() {
+        }
+
+        /**
+         * @return The number of calls to acquire.
+         */
+        public int acquireCount() {
+            return mAcquireCount.get();
+        }
+
+        /**
+         * @return The number of calls to acquire which found the pool empty.
+         */
+        public int missCount() {
+            return mMissCount.get();
+        }
+
+        /**
+         * @return The number of calls to release.
+         */
+        public int releaseCount() {
+            return mReleaseCount.get();
+        }
+
+        /**
+         * @return The number of calls to release which found the pool full.
+         */
+        public int dropCount() {
+            return mDropCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "Counters[acquires=" + acquireCount() + ",misses=" + missCount()
+                    + ",releases=" + releaseCount() + ",drops=" + dropCount() + "]";
+        }
+    }
+
+    static void countAcquire(Counters counters, boolean hit) {
+        if (counters != null) {
+            counters.mAcquireCount.increment();
+            if (!hit) {
+                counters.mMissCount.increment();
+            }
+        }
+    }
+
+    static void countRelease(Counters counters, boolean pooled) {
+        if (counters != null) {
+            counters.mReleaseCount.increment();
+            if (!pooled) {
+                counters.mDropCount.increment();
+            }
+        }
+    }
 }
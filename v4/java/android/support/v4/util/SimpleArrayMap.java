@@ -18,6 +18,8 @@ package android.support.v4.util;
 
 import android.util.Log;
 
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
 import java.util.Map;
 
 /**
@@ -27,6 +29,14 @@ import java.util.Map;
  * easier to use as a drop-in replacement for HashMap.  If you don't need them, this
  * class can be preferrable since it doesn't bring in any of the implementation of those
  * APIs, allowing that code to be stripped by ProGuard.
+ *
+ * <p>Once a map holds more than {@link #setHashedThreshold(int) a threshold} of entries it also
+ * keeps an open addressing table from hashes to indices, so lookups no longer binary search and
+ * new entries are appended instead of being inserted in hash order.  Removing an entry in this
+ * mode moves the last entry into its place.  Entries keep their indices until the next put or
+ * remove, and an entry removed while iterating by index is replaced by one which has not been
+ * visited yet.  The map returns to its compact layout on the first put after it has shrunk
+ * below half of the threshold.</p>
  */
 public class SimpleArrayMap<K, V> {
     private static final boolean DEBUG = false;
@@ -39,26 +49,63 @@ public class SimpleArrayMap<K, V> {
     private static final int BASE_SIZE = 4;
 
     /**
-     * Maximum number of entries to have in array caches.
+     * Maximum number of arrays of each size to keep in the cache of a thread.
      */
     private static final int CACHE_SIZE = 10;
 
     /**
-     * Caches of small array objects to avoid spamming garbage.  The cache
-     * Object[] variable is a pointer to a linked list of array objects.
-     * The first entry in the array is a pointer to the next array in the
-     * list; the second entry is a pointer to the int[] hash code array for it.
+     * Default number of entries above which the map switches to its hashed layout.  Below
+     * this, binary searching and shifting the arrays is close enough in speed that the
+     * table is not worth its memory.
      */
-    static Object[] mBaseCache;
-    static int mBaseCacheSize;
-    static Object[] mTwiceBaseCache;
-    static int mTwiceBaseCacheSize;
+    static final int DEFAULT_HASHED_THRESHOLD = 256;
+
+    /**
+     * Golden ratio multiplier used to spread hash codes over the table.
+     */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
+
+    /**
+     * Array sizes which are recycled through {@link #sArrayCache}.  Replaced as a whole when
+     * changed, so a thread can tell that its cache is stale by comparing references.
+     */
+    static volatile int[] sCacheSizes = { BASE_SIZE, BASE_SIZE*2 };
+
+    /**
+     * Caches of array objects to avoid spamming garbage.  They are per thread, so maps
+     * built on different threads do not contend for them.
+     */
+    static final ThreadLocal<ArrayCache> sArrayCache = new ThreadLocal<ArrayCache>() {
+        @Override
+        protected ArrayCache initialValue() {
+            return new ArrayCache(sCacheSizes);
+        }
+    };
+
+    static final StripedCounter sCacheHitCount = new StripedCounter(8);
+    static final StripedCounter sCacheMissCount = new StripedCounter(8);
 
     int[] mHashes;
     Object[] mArray;
     int mSize;
 
+    /**
+     * Open addressing table of entry indices plus one, or null in the compact layout.
+     */
+    int[] mTable;
+    int mTableShift;
+    int mHashedThreshold = DEFAULT_HASHED_THRESHOLD;
+
+    /**
+     * Incremented whenever entries are added, removed or reordered.
+     */
+    int mModCount;
+
     int indexOf(Object key, int hash) {
+        if (mTable != null) {
+            return indexOfHashed(key, hash);
+        }
+
         final int N = mSize;
 
         // Important fast case: if nothing is in here, nothing to look for.
@@ -97,6 +144,10 @@ public class SimpleArrayMap<K, V> {
     }
 
     int indexOfNull() {
+        if (mTable != null) {
+            return indexOfHashed(null, 0);
+        }
+
         final int N = mSize;
 
         // Important fast case: if nothing is in here, nothing to look for.
@@ -134,71 +185,198 @@ public class SimpleArrayMap<K, V> {
         return ~end;
     }
 
-    private void allocArrays(final int size) {
-        if (size == (BASE_SIZE*2)) {
-            synchronized (ArrayMap.class) {
-                if (mTwiceBaseCache != null) {
-                    final Object[] array = mTwiceBaseCache;
-                    mArray = array;
-                    mTwiceBaseCache = (Object[])array[0];
-                    mHashes = (int[])array[1];
-                    array[0] = array[1] = null;
-                    mTwiceBaseCacheSize--;
-                    if (DEBUG) Log.d(TAG, "Retrieving 2x cache " + mHashes
-                            + " now have " + mTwiceBaseCacheSize + " entries");
-                    return;
-                }
+    private int indexOfHashed(Object key, int hash) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        for (int slot = (hash * HASH_MULTIPLIER) >>> mTableShift; ; slot = (slot + 1) & mask) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                // New entries are always appended in the hashed layout.
+                return ~mSize;
             }
-        } else if (size == BASE_SIZE) {
-            synchronized (ArrayMap.class) {
-                if (mBaseCache != null) {
-                    final Object[] array = mBaseCache;
-                    mArray = array;
-                    mBaseCache = (Object[])array[0];
-                    mHashes = (int[])array[1];
-                    array[0] = array[1] = null;
-                    mBaseCacheSize--;
-                    if (DEBUG) Log.d(TAG, "Retrieving 1x cache " + mHashes
-                            + " now have " + mBaseCacheSize + " entries");
-                    return;
+            final int index = entry - 1;
+            if (mHashes[index] == hash) {
+                final Object cur = mArray[index << 1];
+                if (key == null ? cur == null : key.equals(cur)) {
+                    return index;
                 }
             }
         }
+    }
+
+    /**
+     * (Re)builds the hash table for the current entries, sized for the capacity of the arrays.
+     */
+    private void buildTable() {
+        final int capacity = Integer.highestOneBit(Math.max(mHashes.length, 1) * 2 - 1) << 1;
+        if (DEBUG) Log.d(TAG, "buildTable: " + mSize + " entries in " + capacity + " slots");
+        mTable = new int[capacity];
+        mTableShift = Integer.numberOfLeadingZeros(capacity) + 1;
+        final int[] hashes = mHashes;
+        for (int i = 0; i < mSize; i++) {
+            tableInsert(i, hashes[i]);
+        }
+    }
+
+    private void tableInsert(int index, int hash) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int slot = (hash * HASH_MULTIPLIER) >>> mTableShift;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private int tableSlotOf(int index) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int slot = (mHashes[index] * HASH_MULTIPLIER) >>> mTableShift;
+        while (table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the entry at <var>index</var> from the table, shifting back any entries of the
+     * same probe run which can then be found closer to their home slot.
+     */
+    private void tableRemove(int index) {
+        final int[] table = mTable;
+        final int mask = table.length - 1;
+        int hole = tableSlotOf(index);
+        for (int slot = (hole + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int home = (mHashes[table[slot] - 1] * HASH_MULTIPLIER) >>> mTableShift;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                table[hole] = table[slot];
+                hole = slot;
+            }
+        }
+        table[hole] = 0;
+    }
+
+    /**
+     * Drops the hash table and sorts the entries back into hash order.
+     */
+    private void leaveHashed() {
+        if (DEBUG) Log.d(TAG, "leaveHashed: " + mSize + " entries");
+        mTable = null;
+        sortByHash();
+    }
+
+    private void sortByHash() {
+        mModCount++;
+        final int N = mSize;
+        final long[] order = new long[N];
+        for (int i = 0; i < N; i++) {
+            order[i] = ((long) mHashes[i] << 32) | i;
+        }
+        Arrays.sort(order);
+
+        final int[] ohashes = mHashes;
+        final Object[] oarray = mArray;
+        allocArrays(N > (BASE_SIZE*2) ? (N + (N>>1)) : (BASE_SIZE*2));
+        for (int i = 0; i < N; i++) {
+            final int from = (int) order[i];
+            mHashes[i] = ohashes[from];
+            mArray[i << 1] = oarray[from << 1];
+            mArray[(i << 1) + 1] = oarray[(from << 1) + 1];
+        }
+        freeArrays(ohashes, oarray, N);
+    }
+
+    private void allocArrays(final int size) {
+        final int[] sizes = sCacheSizes;
+        final int sizeClass = sizeClassOf(sizes, size);
+        if (sizeClass >= 0) {
+            final ArrayCache cache = getArrayCache(sizes);
+            final Object[] array = cache.mArrays[sizeClass];
+            if (array != null) {
+                mArray = array;
+                cache.mArrays[sizeClass] = (Object[])array[0];
+                mHashes = (int[])array[1];
+                array[0] = array[1] = null;
+                cache.mCounts[sizeClass]--;
+                sCacheHitCount.increment();
+                if (DEBUG) Log.d(TAG, "Retrieving " + size + " cache " + mHashes
+                        + " now have " + cache.mCounts[sizeClass] + " entries");
+                return;
+            }
+            sCacheMissCount.increment();
+        }
 
         mHashes = new int[size];
         mArray = new Object[size<<1];
     }
 
     private static void freeArrays(final int[] hashes, final Object[] array, final int size) {
-        if (hashes.length == (BASE_SIZE*2)) {
-            synchronized (ArrayMap.class) {
-                if (mTwiceBaseCacheSize < CACHE_SIZE) {
-                    array[0] = mTwiceBaseCache;
-                    array[1] = hashes;
-                    for (int i=(size<<1)-1; i>=2; i--) {
-                        array[i] = null;
-                    }
-                    mTwiceBaseCache = array;
-                    mTwiceBaseCacheSize++;
-                    if (DEBUG) Log.d(TAG, "Storing 2x cache " + array
-                            + " now have " + mTwiceBaseCacheSize + " entries");
+        final int[] sizes = sCacheSizes;
+        final int sizeClass = sizeClassOf(sizes, hashes.length);
+        if (sizeClass >= 0) {
+            final ArrayCache cache = getArrayCache(sizes);
+            if (cache.mCounts[sizeClass] < CACHE_SIZE) {
+                array[0] = cache.mArrays[sizeClass];
+                array[1] = hashes;
+                for (int i=(size<<1)-1; i>=2; i--) {
+                    array[i] = null;
                 }
+                cache.mArrays[sizeClass] = array;
+                cache.mCounts[sizeClass]++;
+                if (DEBUG) Log.d(TAG, "Storing " + hashes.length + " cache " + array
+                        + " now have " + cache.mCounts[sizeClass] + " entries");
             }
-        } else if (hashes.length == BASE_SIZE) {
-            synchronized (ArrayMap.class) {
-                if (mBaseCacheSize < CACHE_SIZE) {
-                    array[0] = mBaseCache;
-                    array[1] = hashes;
-                    for (int i=(size<<1)-1; i>=2; i--) {
-                        array[i] = null;
-                    }
-                    mBaseCache = array;
-                    mBaseCacheSize++;
-                    if (DEBUG) Log.d(TAG, "Storing 1x cache " + array
-                            + " now have " + mBaseCacheSize + " entries");
-                }
+        }
+    }
+
+    private static int sizeClassOf(int[] sizes, int size) {
+        for (int i = 0; i < sizes.length; i++) {
+            if (sizes[i] == size) {
+                return i;
             }
         }
+        return -1;
+    }
+
+    private static ArrayCache getArrayCache(int[] sizes) {
+        ArrayCache cache = sArrayCache.get();
+        if (cache.mSizes != sizes) {
+            cache = new ArrayCache(sizes);
+            sArrayCache.set(cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Set the array sizes which are recycled when maps grow, shrink or are cleared.  Each
+     * thread keeps up to 10 arrays of each size.  Maps grow to 4, 8, 12, 18 and then by half
+     * again each time, so adding 12 and 18 helps code which builds many short-lived maps
+     * of a dozen or so entries.  The default is 4 and 8.
+     * @param sizes The array sizes to recycle, or none to disable recycling.
+     */
+    public static void setArrayCacheSizes(int... sizes) {
+        for (int size : sizes) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("size must be positive");
+            }
+        }
+        sCacheSizes = sizes.clone();
+    }
+
+    /**
+     * Return the number of times a map took its arrays from the cache rather than
+     * allocating them.
+     */
+    public static int getArrayCacheHitCount() {
+        return sCacheHitCount.get();
+    }
+
+    /**
+     * Return the number of times a map needed arrays of a recycled size but the cache of
+     * its thread had none.
+     */
+    public static int getArrayCacheMissCount() {
+        return sCacheMissCount.get();
     }
 
     /**
@@ -243,6 +421,29 @@ public class SimpleArrayMap<K, V> {
             mHashes = ContainerHelpers.EMPTY_INTS;
             mArray = ContainerHelpers.EMPTY_OBJECTS;
             mSize = 0;
+            mModCount++;
+        }
+        mTable = null;
+    }
+
+    /**
+     * Set the number of entries above which the map keeps a hash table to find keys instead of
+     * binary searching, and appends new entries instead of keeping them in hash order.  The
+     * default is 256; {@link Integer#MAX_VALUE} disables the
+     * hashed layout.
+     * @param threshold The number of entries, must be positive.
+     */
+    public void setHashedThreshold(int threshold) {
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("threshold must be positive");
+        }
+        mHashedThreshold = threshold;
+        if (mTable == null) {
+            if (mSize > threshold) {
+                buildTable();
+            }
+        } else if (mSize < (threshold>>1)) {
+            leaveHashed();
         }
     }
 
@@ -260,6 +461,9 @@ public class SimpleArrayMap<K, V> {
                 System.arraycopy(oarray, 0, mArray, 0, mSize<<1);
             }
             freeArrays(ohashes, oarray, mSize);
+            if (mTable != null) {
+                buildTable();
+            }
         }
     }
 
@@ -371,6 +575,10 @@ public class SimpleArrayMap<K, V> {
      * was no such key.
      */
     public V put(K key, V value) {
+        if (mTable != null && mSize < (mHashedThreshold>>1)) {
+            leaveHashed();
+        }
+
         final int hash;
         int index;
         if (key == null) {
@@ -405,6 +613,9 @@ public class SimpleArrayMap<K, V> {
             }
 
             freeArrays(ohashes, oarray, mSize);
+            if (mTable != null) {
+                buildTable();
+            }
         }
 
         if (index < mSize) {
@@ -418,6 +629,12 @@ public class SimpleArrayMap<K, V> {
         mArray[index<<1] = key;
         mArray[(index<<1)+1] = value;
         mSize++;
+        mModCount++;
+        if (mTable != null) {
+            tableInsert(index, hash);
+        } else if (mSize > mHashedThreshold) {
+            buildTable();
+        }
         return null;
     }
 
@@ -433,6 +650,12 @@ public class SimpleArrayMap<K, V> {
                 System.arraycopy(array.mHashes, 0, mHashes, 0, N);
                 System.arraycopy(array.mArray, 0, mArray, 0, N<<1);
                 mSize = N;
+                mModCount++;
+                if (N > mHashedThreshold) {
+                    buildTable();
+                } else if (array.mTable != null) {
+                    sortByHash();
+                }
             }
         } else {
             for (int i=0; i<N; i++) {
@@ -463,6 +686,7 @@ public class SimpleArrayMap<K, V> {
      */
     public V removeAt(int index) {
         final Object old = mArray[(index << 1) + 1];
+        mModCount++;
         if (mSize <= 1) {
             // Now empty.
             if (DEBUG) Log.d(TAG, "remove: shrink from " + mHashes.length + " to 0");
@@ -470,6 +694,9 @@ public class SimpleArrayMap<K, V> {
             mHashes = ContainerHelpers.EMPTY_INTS;
             mArray = ContainerHelpers.EMPTY_OBJECTS;
             mSize = 0;
+            mTable = null;
+        } else if (mTable != null) {
+            removeHashedAt(index);
         } else {
             if (mHashes.length > (BASE_SIZE*2) && mSize < mHashes.length/3) {
                 // Shrunk enough to reduce size of arrays.  We don't allow it to
@@ -512,6 +739,85 @@ public class SimpleArrayMap<K, V> {
         return (V)old;
     }
 
+    private void removeHashedAt(int index) {
+        tableRemove(index);
+        final int last = mSize - 1;
+        if (index < last) {
+            // Fill the gap with the last entry rather than shifting everything after it.
+            mTable[tableSlotOf(last)] = index + 1;
+            mHashes[index] = mHashes[last];
+            mArray[index << 1] = mArray[last << 1];
+            mArray[(index << 1) + 1] = mArray[(last << 1) + 1];
+        }
+        mArray[last << 1] = null;
+        mArray[(last << 1) + 1] = null;
+        mSize = last;
+
+        if (mHashes.length > (BASE_SIZE*2) && mSize < mHashes.length/3) {
+            final int n = mSize > (BASE_SIZE*2) ? (mSize + (mSize>>1)) : (BASE_SIZE*2);
+            if (DEBUG) Log.d(TAG, "remove: shrink from " + mHashes.length + " to " + n);
+            final int[] ohashes = mHashes;
+            final Object[] oarray = mArray;
+            allocArrays(n);
+            System.arraycopy(ohashes, 0, mHashes, 0, mSize);
+            System.arraycopy(oarray, 0, mArray, 0, mSize << 1);
+            buildTable();
+        }
+    }
+
+    /**
+     * Call <var>visitor</var> with each key/value pair in the array map, in index order.
+     * Unlike iterating the collection views of {@link ArrayMap} this does not allocate.
+     * The visitor may change values with {@link #setValueAt}, but must not add or remove
+     * keys.
+     * @param visitor The visitor to call for each mapping.
+     * @throws ConcurrentModificationException If the map gained or lost keys during the visit.
+     */
+    public void forEach(EntryVisitor<? super K, ? super V> visitor) {
+        final int modCount = mModCount;
+        for (int i = 0; i < mSize; i++) {
+            visitor.visit((K)mArray[i << 1], (V)mArray[(i << 1) + 1]);
+            if (mModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Copy the keys of the array map, in index order, into <var>array</var>.
+     * @param array The array to copy into, which must have room for {@link #size()} keys
+     * after <var>offset</var>.
+     * @param offset The index in <var>array</var> of the first key.
+     * @return Returns the number of keys copied.
+     */
+    public int copyKeysTo(Object[] array, int offset) {
+        return copyTo(array, offset, 0);
+    }
+
+    /**
+     * Copy the values of the array map, in index order, into <var>array</var>.
+     * @param array The array to copy into, which must have room for {@link #size()} values
+     * after <var>offset</var>.
+     * @param offset The index in <var>array</var> of the first value.
+     * @return Returns the number of values copied.
+     */
+    public int copyValuesTo(Object[] array, int offset) {
+        return copyTo(array, offset, 1);
+    }
+
+    private int copyTo(Object[] array, int offset, int which) {
+        final int N = mSize;
+        if (offset < 0 || array.length - offset < N) {
+            throw new ArrayIndexOutOfBoundsException("need " + N + " entries from " + offset
+                    + " but length is " + array.length);
+        }
+        final Object[] entries = mArray;
+        for (int i = 0; i < N; i++) {
+            array[offset + i] = entries[(i << 1) + which];
+        }
+        return N;
+    }
+
     /**
      * Return the number of items in this array map.
      */
@@ -612,4 +918,33 @@ public class SimpleArrayMap<K, V> {
         buffer.append('}');
         return buffer.toString();
     }
+
+    /**
+     * Callback for {@link #forEach(EntryVisitor)}.
+     */
+    public interface EntryVisitor<K, V> {
+        /**
+         * Called for each mapping of the array map.
+         * @param key The key of the mapping.
+         * @param value The value of the mapping.
+         */
+        void visit(K key, V value);
+    }
+
+    /**
+     * Recycled arrays of one thread.  Each entry of mArrays points to a linked list of
+     * array objects of one size.  The first entry in the array is a pointer to the next
+     * array in the list; the second entry is a pointer to the int[] hash code array for it.
+     */
+    static final class ArrayCache {
+        final int[] mSizes;
+        final Object[][] mArrays;
+        final int[] mCounts;
+
+        ArrayCache(int[] sizes) {
+            mSizes = sizes;
+            mArrays = new Object[sizes.length][];
+            mCounts = new int[sizes.length];
+        }
+    }
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A counter which is cheap to increment from many threads at once. Each thread increments
+ * one of several cells, padded to live on separate cache lines.
+ */
+final class StripedCounter {
+    // ints per 64 byte cache line
+    private static final int PADDING = 16;
+
+    private final AtomicIntegerArray mCells;
+    private final int mMask;
+
+    /**
+     * @param stripes The number of cells, must be a power of two.
+     */
+    StripedCounter(int stripes) {
+        mCells = new AtomicIntegerArray(stripes * PADDING);
+        mMask = stripes - 1;
+    }
+
+    void increment() {
+        final int stripe = (int) Thread.currentThread().getId() & mMask;
+        mCells.getAndIncrement(stripe * PADDING);
+    }
+
+    int get() {
+        int sum = 0;
+        for (int i = 0; i <= mMask; i++) {
+            sum += mCells.get(i * PADDING);
+        }
+        return sum;
+    }
+}
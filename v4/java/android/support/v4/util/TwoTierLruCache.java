@@ -0,0 +1,856 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * A cache with an in-memory {@link LruCache} in front of a size bounded directory on disk.
+ * <p>
+ * {@link #put} stores the value in memory right away and writes it to disk on a background
+ * thread. {@link #get} looks in memory first and falls back to the disk, in which case the
+ * value is decoded and promoted to the memory tier. Since it may read from the disk, call
+ * {@link #get} off the main thread and use {@link #getFromMemory} on the main thread.
+ * <p>
+ * Each value is written to a temporary file which is synced and then renamed over the entry
+ * file, so an entry is either complete or absent after a crash. The index of entries with their
+ * size and last access time is kept in an {@link AtomicFile}, and changes since it was written
+ * are appended to a journal which is replayed when the cache is opened. Files which are not
+ * referenced by the index are deleted at that time. When the entries on disk exceed the
+ * maximum disk size, the least recently accessed ones are deleted on the background thread.
+ * <p>
+ * Keys must match <code>[a-z0-9_-]{1,64}</code> since they are used as file names; hash other
+ * keys before using them with this cache. A directory must not be used by more than one
+ * instance at a time.
+ */
+public class TwoTierLruCache<V> {
+    private static final String TAG = "TwoTierLruCache";
+
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,64}");
+
+    static final String INDEX_FILE = "index";
+    static final String JOURNAL_FILE = "journal";
+    static final String INDEX_HEADER = "android.support.v4.util.TwoTierLruCache 1";
+    static final String ENTRY_SUFFIX = ".entry";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    static final String PUT = "PUT";
+    static final String READ = "READ";
+    static final String REMOVE = "REMOVE";
+
+    /**
+     * Minimum number of journal records before the index is rewritten.
+     */
+    private static final int MIN_COMPACTION_RECORDS = 2000;
+
+    private static ExecutorService sDiskExecutor;
+
+    /**
+     * Encodes values to and decodes them from their files on disk.
+     */
+    public interface Codec<V> {
+        /**
+         * Writes the value. The stream is buffered and closed by the cache.
+         */
+        void encode(V value, OutputStream out) throws IOException;
+
+        /**
+         * Reads a value written by {@link #encode}. The stream is buffered and closed by the
+         * cache.
+         */
+        V decode(InputStream in) throws IOException;
+    }
+
+    private final File mDirectory;
+    private final AtomicFile mIndexFile;
+    private final File mJournalFile;
+    private final Codec<V> mCodec;
+    private final MemoryCache mMemoryCache;
+    private final SerialExecutor mExecutor;
+    private volatile long mMaxDiskSize;
+
+    private final Object mLock = new Object();
+
+    // guarded by mLock
+    private final LinkedHashMap<String, DiskEntry> mIndex =
+            new LinkedHashMap<String, DiskEntry>(0, 0.75f, true);
+    private final HashMap<String, V> mPendingWrites = new HashMap<String, V>();
+    private long mDiskSize = 0;
+
+    private final CountDownLatch mOpened = new CountDownLatch(1);
+
+    // only accessed on the disk thread
+    private FileOutputStream mJournalStream;
+    private Writer mJournalWriter;
+    private int mJournalRecordCount;
+
+    private final AtomicInteger mMemoryHitCount = new AtomicInteger();
+    private final AtomicInteger mDiskHitCount = new AtomicInteger();
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    /**
+     * Creates a cache which accesses the disk on a shared background thread. The directory is
+     * read on that thread; this constructor does not do any I/O.
+     *
+     * @param directory     The directory holding the entries. Created if needed.
+     * @param maxDiskSize   The maximum number of bytes used by the entries on disk.
+     * @param maxMemorySize The maximum size of the memory tier, see {@link LruCache#LruCache}.
+     * @param codec         Converts values to and from bytes.
+     */
+    public TwoTierLruCache(File directory, long maxDiskSize, int maxMemorySize, Codec<V> codec) {
+        this(directory, maxDiskSize, maxMemorySize, codec, getDiskExecutor());
+    }
+
+    /**
+     * Creates a cache which accesses the disk with the given executor. Tasks of this cache are
+     * never run concurrently, even if the executor has multiple threads.
+     *
+     * @param directory     The directory holding the entries. Created if needed.
+     * @param maxDiskSize   The maximum number of bytes used by the entries on disk.
+     * @param maxMemorySize The maximum size of the memory tier, see {@link LruCache#LruCache}.
+     * @param codec         Converts values to and from bytes.
+     * @param diskExecutor  The executor which writes to the disk.
+     */
+    public TwoTierLruCache(File directory, long maxDiskSize, int maxMemorySize, Codec<V> codec,
+            Executor diskExecutor) {
+        if (maxDiskSize <= 0) {
+            throw new IllegalArgumentException("maxDiskSize <= 0");
+        }
+        mDirectory = directory;
+        mIndexFile = new AtomicFile(new File(directory, INDEX_FILE));
+        mJournalFile = new File(directory, JOURNAL_FILE);
+        mMaxDiskSize = maxDiskSize;
+        mCodec = codec;
+        mMemoryCache = new MemoryCache(maxMemorySize);
+        mExecutor = new SerialExecutor(diskExecutor);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Returns the size of the entry for {@code key} and {@code value} in the memory tier, in
+     * user-defined units. The default implementation returns 1.
+     *
+     * @see LruCache#sizeOf
+     */
+    protected int sizeOf(String key, V value) {
+        return 1;
+    }
+
+    /**
+     * Returns the value for {@code key} if it is in the memory tier. Never accesses the disk.
+     */
+    public final V getFromMemory(String key) {
+        final V value = mMemoryCache.get(key);
+        if (value != null) {
+            mMemoryHitCount.incrementAndGet();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the value for {@code key} from the memory tier, or reads it from the disk and
+     * adds it to the memory tier. Returns null if there is no value for the key or it cannot be
+     * read. May block on disk I/O.
+     */
+    public final V get(String key) {
+        checkKey(key);
+        V value = mMemoryCache.get(key);
+        if (value != null) {
+            mMemoryHitCount.incrementAndGet();
+            return value;
+        }
+        DiskEntry entry;
+        synchronized (mLock) {
+            value = mPendingWrites.get(key);
+            if (value != null) {
+                mMemoryHitCount.incrementAndGet();
+                return value;
+            }
+        }
+        awaitOpen();
+        final long now = System.currentTimeMillis();
+        synchronized (mLock) {
+            entry = mIndex.get(key);
+            if (entry != null) {
+                entry.mAccessTime = now;
+            }
+        }
+        if (entry == null) {
+            mMissCount.incrementAndGet();
+            return null;
+        }
+
+        try {
+            final InputStream in = new BufferedInputStream(
+                    new FileInputStream(getEntryFile(key)));
+            try {
+                value = mCodec.decode(in);
+            } finally {
+                in.close();
+            }
+        } catch (FileNotFoundException e) {
+            value = null;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read entry " + key, e);
+            value = null;
+        }
+        if (value == null) {
+            // missing or unreadable, drop it unless it was replaced in the meantime
+            mMissCount.incrementAndGet();
+            removeFromDisk(key, entry);
+            return null;
+        }
+
+        mDiskHitCount.incrementAndGet();
+        boolean promote;
+        synchronized (mLock) {
+            promote = mIndex.get(key) == entry && !mPendingWrites.containsKey(key);
+        }
+        if (promote) {
+            mMemoryCache.put(key, value);
+        }
+        mExecutor.execute(new JournalRecord(READ + ' ' + key + ' ' + now));
+        return value;
+    }
+
+    /**
+     * Caches {@code value} for {@code key} in memory and writes it to the disk in the
+     * background.
+     */
+    public final void put(final String key, final V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new NullPointerException("value == null");
+        }
+        mMemoryCache.put(key, value);
+        synchronized (mLock) {
+            mPendingWrites.put(key, value);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                writeEntry(key, value);
+            }
+        });
+    }
+
+    /**
+     * Removes the entry for {@code key} from memory, and from the disk in the background.
+     */
+    public final void remove(final String key) {
+        checkKey(key);
+        mMemoryCache.remove(key);
+        synchronized (mLock) {
+            mPendingWrites.remove(key);
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                removeFromDisk(key, null);
+            }
+        });
+    }
+
+    /**
+     * Removes every entry from memory, and from the disk in the background.
+     */
+    public final void evictAll() {
+        mMemoryCache.evictAll();
+        synchronized (mLock) {
+            mPendingWrites.clear();
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                trimToDiskSize(-1);
+            }
+        });
+    }
+
+    /**
+     * Sets the maximum number of bytes used on disk. Entries over the new size are deleted in
+     * the background.
+     */
+    public final void setMaxDiskSize(long maxDiskSize) {
+        if (maxDiskSize <= 0) {
+            throw new IllegalArgumentException("maxDiskSize <= 0");
+        }
+        mMaxDiskSize = maxDiskSize;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                trimToDiskSize(mMaxDiskSize);
+            }
+        });
+    }
+
+    /**
+     * Blocks until the writes and removals requested so far are done and the journal is written
+     * to the disk. Must not be called on the executor of this cache.
+     */
+    public final void flush() {
+        final CountDownLatch latch = new CountDownLatch(1);
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flushJournal();
+                syncJournal();
+                latch.countDown();
+            }
+        });
+        awaitUninterruptibly(latch);
+    }
+
+    /**
+     * Returns the memory tier of this cache.
+     */
+    public final LruCache<String, V> getMemoryCache() {
+        return mMemoryCache;
+    }
+
+    /**
+     * Returns the number of bytes used by the entries written to the disk.
+     */
+    public final long diskSize() {
+        synchronized (mLock) {
+            return mDiskSize;
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes used by the entries on the disk.
+     */
+    public final long maxDiskSize() {
+        return mMaxDiskSize;
+    }
+
+    /**
+     * Returns the number of times a value was found in memory.
+     */
+    public final int memoryHitCount() {
+        return mMemoryHitCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #get} read a value from the disk.
+     */
+    public final int diskHitCount() {
+        return mDiskHitCount.get();
+    }
+
+    /**
+     * Returns the number of times {@link #get} returned null.
+     */
+    public final int missCount() {
+        return mMissCount.get();
+    }
+
+    @Override public final String toString() {
+        return String.format("TwoTierLruCache[maxDiskSize=%d,memoryHits=%d,diskHits=%d,"
+                + "misses=%d]", mMaxDiskSize, mMemoryHitCount.get(), mDiskHitCount.get(),
+                mMissCount.get());
+    }
+
+    private static void checkKey(String key) {
+        if (key == null) {
+            throw new NullPointerException("key == null");
+        }
+        if (!KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("keys must match [a-z0-9_-]{1,64}: " + key);
+        }
+    }
+
+    private File getEntryFile(String key) {
+        return new File(mDirectory, key + ENTRY_SUFFIX);
+    }
+
+    private void awaitOpen() {
+        awaitUninterruptibly(mOpened);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Reads the index and the journal and deletes the files they do not reference. Runs on the
+     * disk thread before any other task.
+     */
+    private void open() {
+        try {
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                Log.w(TAG, "Couldn't create directory " + mDirectory);
+            }
+            final LinkedHashMap<String, DiskEntry> index = new LinkedHashMap<String, DiskEntry>(
+                    0, 0.75f, true);
+            readIndex(index);
+            readJournal(index);
+            long diskSize = 0;
+            for (Iterator<Map.Entry<String, DiskEntry>> it = index.entrySet().iterator();
+                    it.hasNext(); ) {
+                final Map.Entry<String, DiskEntry> mapEntry = it.next();
+                if (getEntryFile(mapEntry.getKey()).exists()) {
+                    diskSize += mapEntry.getValue().mSize;
+                } else {
+                    it.remove();
+                }
+            }
+            deleteUnreferencedFiles(index);
+            synchronized (mLock) {
+                mIndex.putAll(index);
+                mDiskSize = diskSize;
+            }
+            writeIndex();
+        } finally {
+            mOpened.countDown();
+        }
+        trimToDiskSize(mMaxDiskSize);
+    }
+
+    private void readIndex(LinkedHashMap<String, DiskEntry> index) {
+        final FileInputStream in;
+        try {
+            in = mIndexFile.openRead();
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            if (!INDEX_HEADER.equals(reader.readLine())) {
+                Log.w(TAG, "Unknown index format in " + mDirectory + ", discarding it");
+                return;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] parts = line.split(" ");
+                if (parts.length == 3) {
+                    index.put(parts[0], new DiskEntry(Long.parseLong(parts[1]),
+                            Long.parseLong(parts[2])));
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read index of " + mDirectory, e);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Corrupt index in " + mDirectory, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void readJournal(LinkedHashMap<String, DiskEntry> index) {
+        final FileInputStream in;
+        try {
+            in = new FileInputStream(mJournalFile);
+        } catch (FileNotFoundException e) {
+            return;
+        }
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+            final StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = reader.read()) != -1) {
+                if (c != '\n') {
+                    line.append((char) c);
+                    continue;
+                }
+                // only records followed by a newline are complete, a crash may truncate the
+                // last one into a different valid record, e.g. a REMOVE of a shorter key
+                applyJournalRecord(index, line.toString().split(" "));
+                line.setLength(0);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't read journal of " + mDirectory, e);
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Corrupt journal in " + mDirectory, e);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private static void applyJournalRecord(LinkedHashMap<String, DiskEntry> index,
+            String[] parts) {
+        if (parts.length == 4 && PUT.equals(parts[0])) {
+            index.put(parts[1], new DiskEntry(Long.parseLong(parts[2]),
+                    Long.parseLong(parts[3])));
+        } else if (parts.length == 3 && READ.equals(parts[0])) {
+            final DiskEntry entry = index.get(parts[1]);
+            if (entry != null) {
+                entry.mAccessTime = Long.parseLong(parts[2]);
+            }
+        } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+            index.remove(parts[1]);
+        }
+    }
+
+    private void deleteUnreferencedFiles(Map<String, DiskEntry> index) {
+        final File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            final String name = file.getName();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                file.delete();
+            } else if (name.endsWith(ENTRY_SUFFIX)) {
+                final String key = name.substring(0, name.length() - ENTRY_SUFFIX.length());
+                if (!index.containsKey(key)) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the whole index, then starts a new journal. Runs on the disk thread.
+     */
+    private void writeIndex() {
+        closeQuietly(mJournalWriter);
+        mJournalWriter = null;
+        mJournalStream = null;
+        final ArrayList<String> lines;
+        synchronized (mLock) {
+            lines = new ArrayList<String>(mIndex.size());
+            for (Map.Entry<String, DiskEntry> mapEntry : mIndex.entrySet()) {
+                final DiskEntry entry = mapEntry.getValue();
+                lines.add(mapEntry.getKey() + ' ' + entry.mSize + ' ' + entry.mAccessTime);
+            }
+        }
+        FileOutputStream out = null;
+        try {
+            out = mIndexFile.startWrite();
+            final Writer writer = new OutputStreamWriter(new BufferedOutputStream(out), "UTF-8");
+            writer.write(INDEX_HEADER);
+            writer.write('\n');
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+            writer.flush();
+            mIndexFile.finishWrite(out);
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write index of " + mDirectory, e);
+            mIndexFile.failWrite(out);
+            // keep appending to the old journal so that no change is lost
+            openJournal(true);
+            return;
+        }
+        openJournal(false);
+    }
+
+    private void openJournal(boolean append) {
+        try {
+            mJournalStream = new FileOutputStream(mJournalFile, append);
+            mJournalWriter = new OutputStreamWriter(new BufferedOutputStream(mJournalStream),
+                    "UTF-8");
+            mJournalRecordCount = 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't open journal of " + mDirectory, e);
+        }
+    }
+
+    private void appendJournal(String record) {
+        if (mJournalWriter == null) {
+            return;
+        }
+        try {
+            mJournalWriter.write(record);
+            mJournalWriter.write('\n');
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't append to journal of " + mDirectory, e);
+        }
+        mJournalRecordCount++;
+    }
+
+    private void flushJournal() {
+        if (mJournalWriter == null) {
+            return;
+        }
+        final int indexSize;
+        synchronized (mLock) {
+            indexSize = mIndex.size();
+        }
+        if (mJournalRecordCount >= MIN_COMPACTION_RECORDS
+                && mJournalRecordCount >= 2 * indexSize) {
+            writeIndex();
+            return;
+        }
+        try {
+            mJournalWriter.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't flush journal of " + mDirectory, e);
+        }
+    }
+
+    /**
+     * Makes the journal records written so far durable. Runs on the disk thread after
+     * {@link #flushJournal()}.
+     */
+    private void syncJournal() {
+        if (mJournalStream != null && !AtomicFile.sync(mJournalStream)) {
+            Log.w(TAG, "Couldn't sync journal of " + mDirectory);
+        }
+    }
+
+    private void writeEntry(String key, V value) {
+        synchronized (mLock) {
+            if (mPendingWrites.get(key) != value) {
+                // replaced or removed before it could be written
+                return;
+            }
+        }
+        final File temp = new File(mDirectory, key + TEMP_SUFFIX);
+        final long size;
+        try {
+            final FileOutputStream out = new FileOutputStream(temp);
+            try {
+                final BufferedOutputStream buffered = new BufferedOutputStream(out);
+                mCodec.encode(value, buffered);
+                buffered.flush();
+                AtomicFile.sync(out);
+            } finally {
+                out.close();
+            }
+            final File file = getEntryFile(key);
+            if (!temp.renameTo(file)) {
+                throw new IOException("Couldn't rename " + temp + " to " + file);
+            }
+            size = file.length();
+        } catch (IOException e) {
+            Log.w(TAG, "Couldn't write entry " + key, e);
+            temp.delete();
+            synchronized (mLock) {
+                if (mPendingWrites.get(key) == value) {
+                    mPendingWrites.remove(key);
+                }
+            }
+            return;
+        }
+
+        final long now = System.currentTimeMillis();
+        synchronized (mLock) {
+            final DiskEntry previous = mIndex.put(key, new DiskEntry(size, now));
+            mDiskSize += size - (previous == null ? 0 : previous.mSize);
+            if (mPendingWrites.get(key) == value) {
+                mPendingWrites.remove(key);
+            }
+        }
+        appendJournal(PUT + ' ' + key + ' ' + size + ' ' + now);
+        trimToDiskSize(mMaxDiskSize);
+    }
+
+    /**
+     * Removes the entry of the key from the disk. If {@code expected} is not null, the entry is
+     * only removed if it has not been replaced.
+     */
+    private void removeFromDisk(final String key, final DiskEntry expected) {
+        synchronized (mLock) {
+            final DiskEntry entry = mIndex.get(key);
+            if (entry == null || (expected != null && entry != expected)) {
+                return;
+            }
+            mIndex.remove(key);
+            mDiskSize -= entry.mSize;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mLock) {
+                    if (mIndex.containsKey(key)) {
+                        // written again in the meantime
+                        return;
+                    }
+                }
+                appendJournal(REMOVE + ' ' + key);
+                getEntryFile(key).delete();
+            }
+        });
+    }
+
+    /**
+     * Deletes the least recently accessed entries until the disk size is at most
+     * {@code maxDiskSize}. Runs on the disk thread.
+     */
+    private void trimToDiskSize(long maxDiskSize) {
+        while (true) {
+            final String key;
+            synchronized (mLock) {
+                if (mDiskSize <= maxDiskSize || mIndex.isEmpty()) {
+                    break;
+                }
+                final Map.Entry<String, DiskEntry> eldest = mIndex.entrySet().iterator().next();
+                key = eldest.getKey();
+                mIndex.remove(key);
+                mDiskSize -= eldest.getValue().mSize;
+            }
+            appendJournal(REMOVE + ' ' + key);
+            getEntryFile(key).delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    private static synchronized Executor getDiskExecutor() {
+        if (sDiskExecutor == null) {
+            sDiskExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sDiskExecutor;
+    }
+
+    private static class DiskEntry {
+        final long mSize;
+        // guarded by mLock
+        long mAccessTime;
+
+        DiskEntry(long size, long accessTime) {
+            mSize = size;
+            mAccessTime = accessTime;
+        }
+    }
+
+    private class JournalRecord implements Runnable {
+        private final String mRecord;
+
+        JournalRecord(String record) {
+            mRecord = record;
+        }
+
+        @Override
+        public void run() {
+            appendJournal(mRecord);
+        }
+    }
+
+    private class MemoryCache extends LruCache<String, V> {
+        MemoryCache(int maxSize) {
+            super(maxSize);
+        }
+
+        @Override
+        protected int sizeOf(String key, V value) {
+            return TwoTierLruCache.this.sizeOf(key, value);
+        }
+    }
+
+    /**
+     * Runs the tasks of this cache one at a time, in order, on the given executor, and flushes
+     * the journal whenever the queue becomes empty.
+     */
+    private class SerialExecutor implements Executor {
+        private final Executor mExecutor;
+        private final LinkedList<Runnable> mTasks = new LinkedList<Runnable>();
+        private boolean mRunning;
+
+        SerialExecutor(Executor executor) {
+            mExecutor = executor;
+        }
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            mTasks.add(task);
+            if (!mRunning) {
+                mRunning = true;
+                mExecutor.execute(mDrain);
+            }
+        }
+
+        private final Runnable mDrain = new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    final Runnable task;
+                    synchronized (SerialExecutor.this) {
+                        task = mTasks.poll();
+                        if (task == null) {
+                            mRunning = false;
+                            break;
+                        }
+                    }
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Failure in disk task", e);
+                    }
+                    synchronized (SerialExecutor.this) {
+                        if (!mTasks.isEmpty()) {
+                            continue;
+                        }
+                    }
+                    flushJournal();
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class AtomicFileTest extends TestCase {
+
+    /**
+     * Keeps the snapshot as lines, one per record.
+     */
+    private static final AtomicFile.Compactor COMPACTOR = new AtomicFile.Compactor() {
+        @Override
+        public void compact(InputStream base, List<byte[]> records, OutputStream out)
+                throws IOException {
+            final byte[] buffer = new byte[256];
+            int count;
+            while ((count = base.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            for (byte[] record : records) {
+                out.write(record);
+                out.write('\n');
+            }
+        }
+    };
+
+    private File mDirectory;
+    private AtomicFile mFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = File.createTempFile("AtomicFileTest", null);
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+        mFile = new AtomicFile(new File(mDirectory, "file"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    public void testWriteAndRead() throws IOException {
+        final FileOutputStream out = mFile.startWrite();
+        out.write(bytes("first"));
+        mFile.finishWrite(out);
+        assertEquals("first", string(mFile.readFully()));
+
+        final FileOutputStream failed = mFile.startWrite();
+        failed.write(bytes("second"));
+        mFile.failWrite(failed);
+        assertEquals("first", string(mFile.readFully()));
+    }
+
+    public void testJournalReopened() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.appendAndSync(bytes("b"));
+        journal.close();
+        try {
+            journal.append(bytes("c"));
+            fail();
+        } catch (IOException expected) {
+        }
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals(Arrays.asList("a", "b"), strings(journal.readRecords()));
+        assertEquals("", string(journal.readBase()));
+        journal.append(bytes("c"));
+        journal.compact();
+        journal.append(bytes("d"));
+        journal.close();
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals("a\nb\nc\n", string(journal.readBase()));
+        assertEquals(Arrays.asList("d"), strings(journal.readRecords()));
+        journal.close();
+        assertEquals(Arrays.asList(mFile.journalFile(1)), Arrays.asList(mFile.listJournals()));
+    }
+
+    public void testTornRecordTruncated() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.appendAndSync(bytes("b"));
+        journal.close();
+        final File file = mFile.journalFile(0);
+        final long length = file.length();
+
+        // a crash in the middle of appending the next record
+        final FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(new byte[] { 0, 0, 0, 5, 1, 2, 3, 4, 'c' });
+        } finally {
+            out.close();
+        }
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals(length, file.length());
+        assertEquals(Arrays.asList("a", "b"), strings(journal.readRecords()));
+        journal.append(bytes("c"));
+        journal.close();
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals(Arrays.asList("a", "b", "c"), strings(journal.readRecords()));
+        journal.close();
+    }
+
+    public void testCorruptRecordTruncated() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.append(bytes("b"));
+        journal.close();
+
+        // flip a byte of the last record so that its checksum no longer matches
+        final File file = mFile.journalFile(0);
+        final byte[] data = readFile(file);
+        data[data.length - 1] ^= 1;
+        writeFile(file, data);
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals(Arrays.asList("a"), strings(journal.readRecords()));
+        journal.close();
+    }
+
+    public void testCrashBeforeSnapshotWritten() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.append(bytes("b"));
+        journal.close();
+        final byte[] journal0 = readFile(mFile.journalFile(0));
+
+        journal = mFile.openJournal(COMPACTOR);
+        journal.compact();
+        journal.append(bytes("c"));
+        journal.close();
+
+        // the new journal was started, but the snapshot of generation 1 was never written
+        assertTrue(mFile.getBaseFile().delete());
+        writeFile(mFile.journalFile(0), journal0);
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals("", string(journal.readBase()));
+        assertEquals(Arrays.asList("a", "b", "c"), strings(journal.readRecords()));
+        journal.compact();
+        assertEquals("a\nb\nc\n", string(journal.readBase()));
+        assertTrue(journal.readRecords().isEmpty());
+        journal.close();
+    }
+
+    public void testCrashBeforeOldJournalsDeleted() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.append(bytes("b"));
+        journal.close();
+        final byte[] journal0 = readFile(mFile.journalFile(0));
+
+        journal = mFile.openJournal(COMPACTOR);
+        journal.compact();
+        journal.append(bytes("c"));
+        journal.close();
+
+        // the snapshot of generation 1 was written, but the old journal was not deleted
+        writeFile(mFile.journalFile(0), journal0);
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertFalse(mFile.journalFile(0).exists());
+        assertEquals("a\nb\n", string(journal.readBase()));
+        assertEquals(Arrays.asList("c"), strings(journal.readRecords()));
+        journal.close();
+    }
+
+    public void testFailedSnapshotKeepsJournals() throws IOException {
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        journal.append(bytes("a"));
+        journal.compact();
+        journal.append(bytes("b"));
+        journal.close();
+
+        // writes the whole snapshot, but closes the stream so that it can't be synced
+        final AtomicFile.Compactor unsynced = new AtomicFile.Compactor() {
+            @Override
+            public void compact(InputStream base, List<byte[]> records, OutputStream out)
+                    throws IOException {
+                COMPACTOR.compact(base, records, out);
+                out.close();
+            }
+        };
+        journal = mFile.openJournal(unsynced);
+        journal.append(bytes("c"));
+        try {
+            journal.compact();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals("a\n", string(journal.readBase()));
+        assertEquals(Arrays.asList("b", "c"), strings(journal.readRecords()));
+        journal.append(bytes("d"));
+        journal.close();
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals("a\n", string(journal.readBase()));
+        assertEquals(Arrays.asList("b", "c", "d"), strings(journal.readRecords()));
+        journal.compact();
+        assertEquals("a\nb\nc\nd\n", string(journal.readBase()));
+        assertTrue(journal.readRecords().isEmpty());
+        journal.close();
+    }
+
+    public void testLegacyBaseIsFirstSnapshot() throws IOException {
+        final FileOutputStream out = mFile.startWrite();
+        out.write(bytes("legacy\n"));
+        mFile.finishWrite(out);
+
+        AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        assertEquals("legacy\n", string(journal.readBase()));
+        assertTrue(journal.readRecords().isEmpty());
+        journal.append(bytes("a"));
+        journal.close();
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals("legacy\n", string(journal.readBase()));
+        assertEquals(Arrays.asList("a"), strings(journal.readRecords()));
+        journal.compact();
+        journal.close();
+
+        journal = mFile.openJournal(COMPACTOR);
+        assertEquals("legacy\na\n", string(journal.readBase()));
+        assertTrue(journal.readRecords().isEmpty());
+        journal.close();
+    }
+
+    public void testConcurrentAppendAndSync() throws Exception {
+        final AtomicFile.Journal journal = mFile.openJournal(COMPACTOR);
+        final int threadCount = 4;
+        final int recordsPerThread = 200;
+        final Thread[] threads = new Thread[threadCount];
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int t = 0; t < threadCount; t++) {
+            final int id = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < recordsPerThread; i++) {
+                            journal.appendAndSync(bytes(id + ":" + i));
+                        }
+                    } catch (Throwable e) {
+                        failures.add(e);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        // compact while the appends go on, syncs of a journal closed by it must not fail
+        boolean running = true;
+        while (running) {
+            journal.compact();
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Collections.emptyList(), failures);
+        journal.close();
+
+        final AtomicFile.Journal reopened = mFile.openJournal(COMPACTOR);
+        final List<String> contents = new ArrayList<String>();
+        final String base = string(reopened.readBase());
+        if (base.length() > 0) {
+            contents.addAll(Arrays.asList(base.split("\n")));
+        }
+        contents.addAll(strings(reopened.readRecords()));
+        reopened.close();
+
+        // every record is there once, and those of each thread are in order
+        assertEquals(threadCount * recordsPerThread, contents.size());
+        final int[] next = new int[threadCount];
+        for (String record : contents) {
+            final String[] parts = record.split(":");
+            final int id = Integer.parseInt(parts[0]);
+            assertEquals(record, next[id]++, Integer.parseInt(parts[1]));
+        }
+    }
+
+    private static byte[] bytes(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String string(byte[] bytes) throws IOException {
+        return new String(bytes, "UTF-8");
+    }
+
+    private static List<String> strings(List<byte[]> records) throws IOException {
+        final List<String> strings = new ArrayList<String>();
+        for (byte[] record : records) {
+            strings.add(string(record));
+        }
+        return strings;
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        final FileInputStream in = new FileInputStream(file);
+        try {
+            final byte[] data = new byte[(int) file.length()];
+            int pos = 0;
+            int count;
+            while (pos < data.length && (count = in.read(data, pos, data.length - pos)) > 0) {
+                pos += count;
+            }
+            return data;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeFile(File file, byte[] data) throws IOException {
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+}
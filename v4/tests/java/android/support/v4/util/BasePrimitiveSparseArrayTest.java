@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * Base class for testing the sparse arrays of primitive values, which have the same methods
+ * but no common type. Subclasses forward to the array under test and add the checks specific
+ * to its value type.
+ *
+ * @param <A> The sparse array type
+ * @param <V> The boxed value type
+ */
+public abstract class BasePrimitiveSparseArrayTest<A, V> extends TestCase {
+
+    /**
+     * Returns the n-th test value. Consecutive values must differ so that overwriting the
+     * value of n with the one of n + 1 is visible.
+     */
+    abstract V value(int n);
+
+    abstract A newArray();
+
+    abstract A newArray(int initialCapacity);
+
+    abstract A copy(A array);
+
+    abstract int size(A array);
+
+    abstract long keyAt(A array, int index);
+
+    abstract V valueAt(A array, int index);
+
+    abstract V get(A array, long key);
+
+    abstract int indexOfKey(A array, long key);
+
+    abstract void put(A array, long key, V value);
+
+    abstract void append(A array, long key, V value);
+
+    abstract void setValueAt(A array, int index, V value);
+
+    abstract void delete(A array, long key);
+
+    abstract void removeAt(A array, int index);
+
+    abstract void removeAtRange(A array, int index, int size);
+
+    abstract void clear(A array);
+
+    public void testPutAndGet() {
+        final A array = newArray();
+        put(array, 5, value(5));
+        put(array, 1, value(1));
+        put(array, 3, value(3));
+        assertContents(array, 1, 3, 5);
+        put(array, 3, value(4));
+        assertEquals(3, size(array));
+        assertEquals(value(4), get(array, 3));
+        assertEquals(1, indexOfKey(array, 3));
+        assertEquals(~1, indexOfKey(array, 2));
+        setValueAt(array, 0, value(2));
+        assertEquals(value(2), get(array, 1));
+        assertEquals(value(2), valueAt(array, 0));
+    }
+
+    public void testAppend() {
+        final A array = newArray(2);
+        for (int i = 0; i < 20; i++) {
+            append(array, i * 2, value(i * 2));
+        }
+        // keys which are not greater than the last one fall back to put
+        append(array, 7, value(7));
+        append(array, 4, value(5));
+        assertEquals(21, size(array));
+        assertEquals(7, keyAt(array, 4));
+        assertEquals(value(5), get(array, 4));
+        for (int i = 1; i < size(array); i++) {
+            assertTrue(keyAt(array, i - 1) < keyAt(array, i));
+        }
+    }
+
+    public void testDelete() {
+        final A array = create(1, 2, 3, 4, 5);
+        delete(array, 3);
+        delete(array, 6);
+        assertContents(array, 1, 2, 4, 5);
+        removeAt(array, 0);
+        removeAt(array, 2);
+        assertContents(array, 2, 4);
+        clear(array);
+        assertEquals(0, size(array));
+        put(array, 1, value(1));
+        assertContents(array, 1);
+    }
+
+    public void testRemoveAtRange() {
+        A array = create(1, 2, 3, 4, 5, 6);
+        removeAtRange(array, 1, 2);
+        assertContents(array, 1, 4, 5, 6);
+        // the range is clamped to the end of the array
+        removeAtRange(array, 2, 10);
+        assertContents(array, 1, 4);
+        removeAtRange(array, 1, 0);
+        assertContents(array, 1, 4);
+        removeAtRange(array, 0, 2);
+        assertEquals(0, size(array));
+
+        array = create(1, 2, 3);
+        removeAtRange(array, 3, 1);
+        assertContents(array, 1, 2, 3);
+        put(array, 0, value(0));
+        put(array, 4, value(4));
+        assertContents(array, 0, 1, 2, 3, 4);
+    }
+
+    public void testClone() {
+        final A array = create(1, 2, 3);
+        final A clone = copy(array);
+        put(array, 4, value(4));
+        setValueAt(array, 0, value(2));
+        delete(clone, 2);
+        assertEquals(4, size(array));
+        assertEquals(value(2), get(array, 1));
+        assertEquals(value(2), get(array, 2));
+        assertContents(clone, 1, 3);
+    }
+
+    public void testRandomOperations() {
+        final Random random = new Random(3);
+        final A array = newArray();
+        final TreeMap<Long, V> expected = new TreeMap<Long, V>();
+        for (int step = 0; step < 5000; step++) {
+            final long key = random.nextInt(100);
+            switch (random.nextInt(5)) {
+                case 0:
+                case 1:
+                    put(array, key, value(step));
+                    expected.put(key, value(step));
+                    break;
+                case 2:
+                    append(array, key, value(step));
+                    expected.put(key, value(step));
+                    break;
+                case 3:
+                    delete(array, key);
+                    expected.remove(key);
+                    break;
+                default:
+                    if (size(array) > 0) {
+                        final int index = random.nextInt(size(array));
+                        final int count = random.nextInt(4);
+                        for (int i = index; i < Math.min(index + count, size(array)); i++) {
+                            expected.remove(keyAt(array, i));
+                        }
+                        removeAtRange(array, index, count);
+                    }
+                    break;
+            }
+            assertEquals(expected.size(), size(array));
+        }
+        int i = 0;
+        for (Map.Entry<Long, V> entry : expected.entrySet()) {
+            assertEquals((long) entry.getKey(), keyAt(array, i));
+            assertEquals(entry.getValue(), valueAt(array, i));
+            i++;
+        }
+    }
+
+    /**
+     * Creates an array mapping each key to {@link #value(int)} of the key.
+     */
+    A create(int... keys) {
+        final A array = newArray();
+        for (int key : keys) {
+            put(array, key, value(key));
+        }
+        return array;
+    }
+
+    void assertContents(A array, int... keys) {
+        assertEquals(keys.length, size(array));
+        for (int i = 0; i < keys.length; i++) {
+            assertEquals(keys[i], keyAt(array, i));
+            assertEquals(value(keys[i]), get(array, keys[i]));
+        }
+    }
+}
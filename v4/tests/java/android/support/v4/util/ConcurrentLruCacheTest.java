@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class ConcurrentLruCacheTest extends TestCase {
+
+    public void testGetAndPut() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3);
+        assertNull(cache.get("a"));
+        assertNull(cache.put("a", "A"));
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.put("a", "A2"));
+        assertEquals("A2", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(2, cache.putCount());
+        assertEquals(0, cache.createCount());
+    }
+
+    public void testCreate() {
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3) {
+            @Override
+            protected String create(String key) {
+                return key.length() == 1 ? key.toUpperCase() : null;
+            }
+        };
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("bb"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.createCount());
+        assertEquals(1, cache.hitCount());
+        assertEquals(2, cache.missCount());
+    }
+
+    public void testCreateConflictKeepsCachedValue() {
+        final List<String> removals = new ArrayList<String>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(3) {
+            @Override
+            protected String create(String key) {
+                // another thread puts a value while this one is creating
+                put(key, "put");
+                return "created";
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue,
+                    String newValue) {
+                removals.add(evicted + " " + key + " " + oldValue + " " + newValue);
+            }
+        };
+        assertEquals("put", cache.get("a"));
+        assertEquals("put", cache.get("a"));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.createCount());
+        assertEquals(Arrays.asList("false a created put"), removals);
+    }
+
+    public void testEntryRemoved() {
+        final List<String> removals = new ArrayList<String>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(2) {
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue,
+                    String newValue) {
+                removals.add(evicted + " " + key + " " + oldValue + " " + newValue);
+            }
+        };
+        cache.put("a", "A");
+        cache.put("a", "A2");
+        assertEquals(Arrays.asList("false a A A2"), removals);
+        removals.clear();
+
+        assertEquals("A2", cache.remove("a"));
+        assertNull(cache.remove("a"));
+        assertEquals(Arrays.asList("false a A2 null"), removals);
+        removals.clear();
+
+        cache.put("b", "B");
+        cache.put("c", "C");
+        cache.put("d", "D");
+        assertEquals(Arrays.asList("true b B null"), removals);
+        assertEquals(1, cache.evictionCount());
+    }
+
+    public void testEvictionOrderAcrossSegments() {
+        final List<Integer> evicted = new ArrayList<Integer>();
+        ConcurrentLruCache<Integer, String> cache =
+                new ConcurrentLruCache<Integer, String>(10, 16) {
+                    @Override
+                    protected void entryRemoved(boolean evicted1, Integer key, String oldValue,
+                            String newValue) {
+                        if (evicted1) {
+                            evicted.add(key);
+                        }
+                    }
+                };
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+        }
+        // the even keys become more recent than the odd ones
+        for (int i = 0; i < 10; i += 2) {
+            assertEquals("v" + i, cache.get(i));
+        }
+        for (int i = 10; i < 15; i++) {
+            cache.put(i, "v" + i);
+        }
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), evicted);
+        assertEquals(10, cache.size());
+
+        // buffered reads are ordered when they are applied, so only check the contents
+        Map<Integer, String> snapshot = cache.snapshot();
+        assertEquals(new HashSet<Integer>(Arrays.asList(0, 2, 4, 6, 8, 10, 11, 12, 13, 14)),
+                snapshot.keySet());
+    }
+
+    public void testEvictAllWithZeroSizedEntries() {
+        final List<String> evicted = new ArrayList<String>();
+        ConcurrentLruCache<String, String> cache = new ConcurrentLruCache<String, String>(10) {
+            @Override
+            protected int sizeOf(String key, String value) {
+                return value.length();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted1, String key, String oldValue,
+                    String newValue) {
+                assertTrue(evicted1);
+                evicted.add(key);
+            }
+        };
+        cache.put("a", "");
+        cache.put("b", "bb");
+        cache.put("c", "");
+        assertEquals(2, cache.size());
+        // entries are evicted in order until the size fits, 0-sized ones after that remain
+        cache.trimToSize(0);
+        assertEquals(Arrays.asList("a", "b"), evicted);
+        assertEquals(1, cache.snapshot().size());
+
+        cache.evictAll();
+        assertEquals(Arrays.asList("a", "b", "c"), evicted);
+        assertEquals(0, cache.size());
+        assertTrue(cache.snapshot().isEmpty());
+    }
+
+    public void testResize() {
+        ConcurrentLruCache<Integer, Integer> cache = new ConcurrentLruCache<Integer, Integer>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, i);
+        }
+        cache.resize(4);
+        assertEquals(4, cache.maxSize());
+        assertEquals(4, cache.size());
+        assertEquals(Arrays.asList(6, 7, 8, 9),
+                new ArrayList<Integer>(cache.snapshot().keySet()));
+        assertEquals(6, cache.evictionCount());
+    }
+
+    public void testConcurrentAccess() throws InterruptedException {
+        final ConcurrentLruCache<Integer, Integer> cache =
+                new ConcurrentLruCache<Integer, Integer>(64, 4) {
+                    @Override
+                    protected Integer create(Integer key) {
+                        return key * 2;
+                    }
+                };
+        Thread[] threads = new Thread[4];
+        final Throwable[] failure = new Throwable[1];
+        for (int t = 0; t < threads.length; t++) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < 10000; i++) {
+                            final int key = (i * 31 + seed) % 200;
+                            if (i % 7 == 0) {
+                                cache.remove(key);
+                            } else {
+                                assertEquals(Integer.valueOf(key * 2), cache.get(key));
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(failure[0]);
+        assertTrue(cache.size() <= 64);
+        assertEquals(cache.size(), cache.snapshot().size());
+    }
+}
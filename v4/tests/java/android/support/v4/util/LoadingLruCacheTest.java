@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class LoadingLruCacheTest extends TestCase {
+
+    private static final int THREAD_COUNT = 8;
+
+    public void testLoadOnMiss() {
+        final AtomicInteger loads = new AtomicInteger();
+        LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                loads.incrementAndGet();
+                return key.length() == 1 ? key.toUpperCase() : null;
+            }
+        };
+        assertEquals("A", cache.get("a"));
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("bb"));
+        assertNull(cache.get("bb"));
+        assertEquals(3, loads.get());
+        assertEquals(1, cache.hitCount());
+        assertEquals(3, cache.missCount());
+        assertEquals(1, cache.loadCount());
+    }
+
+    public void testSingleFlight() throws InterruptedException {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                loads.incrementAndGet();
+                await(release);
+                return "loaded " + key;
+            }
+        };
+        final List<Object> results = runConcurrently(cache, "a");
+        // every thread has joined the load once all of them missed
+        waitFor(cache, THREAD_COUNT);
+        release.countDown();
+        joinAll();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.loadCount());
+        assertEquals(THREAD_COUNT, results.size());
+        for (Object result : results) {
+            assertEquals("loaded a", result);
+        }
+    }
+
+    public void testLoadExceptionPropagatesToWaiters() throws InterruptedException {
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        final LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                loads.incrementAndGet();
+                await(release);
+                throw new IllegalStateException("load failed");
+            }
+        };
+        final List<Object> results = runConcurrently(cache, "a");
+        waitFor(cache, THREAD_COUNT);
+        release.countDown();
+        joinAll();
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.loadFailureCount());
+        assertEquals(0, cache.loadCount());
+        assertEquals(THREAD_COUNT, results.size());
+        for (Object result : results) {
+            assertTrue(result instanceof IllegalStateException);
+            assertEquals("load failed", ((IllegalStateException) result).getMessage());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    public void testTimeToLive() throws InterruptedException {
+        final List<String> removals = new ArrayList<String>();
+        LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                return null;
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, String oldValue,
+                    String newValue) {
+                removals.add(evicted + " " + key + " " + oldValue);
+            }
+        };
+        cache.setTimeToLive(100, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+        assertEquals("A", cache.get("a"));
+        Thread.sleep(250);
+        assertTrue(cache.snapshot().isEmpty());
+        assertNull(cache.getIfPresent("a"));
+        assertNull(cache.get("a"));
+        assertEquals(Arrays.asList("true a A"), removals);
+        assertEquals(0, cache.size());
+    }
+
+    public void testTimeToIdle() throws InterruptedException {
+        LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                return null;
+            }
+        };
+        cache.setTimeToIdle(200, TimeUnit.MILLISECONDS);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        for (int i = 0; i < 4; i++) {
+            Thread.sleep(75);
+            // reading "a" keeps it alive
+            assertEquals("A", cache.get("a"));
+        }
+        cache.evictExpired();
+        assertEquals(1, cache.size());
+        assertNull(cache.getIfPresent("b"));
+        Thread.sleep(400);
+        assertNull(cache.getIfPresent("a"));
+    }
+
+    public void testRefreshKeepsStaleValue() throws InterruptedException {
+        final AtomicInteger version = new AtomicInteger();
+        final boolean[] fail = new boolean[1];
+        LoadingLruCache<String, String> cache = new LoadingLruCache<String, String>(2) {
+            @Override
+            protected String load(String key) {
+                if (fail[0]) {
+                    throw new IllegalStateException("refresh failed");
+                }
+                return key + version.incrementAndGet();
+            }
+        };
+        final List<Runnable> refreshes = new ArrayList<Runnable>();
+        cache.setRefreshAfterWrite(100, TimeUnit.MILLISECONDS, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                refreshes.add(command);
+            }
+        });
+        assertEquals("a1", cache.get("a"));
+        assertTrue(refreshes.isEmpty());
+        Thread.sleep(200);
+
+        // the stale value is returned while the refresh is pending, only one refresh runs
+        assertEquals("a1", cache.get("a"));
+        assertEquals("a1", cache.get("a"));
+        assertEquals(1, refreshes.size());
+        assertEquals(1, cache.refreshCount());
+        refreshes.remove(0).run();
+        assertEquals("a2", cache.get("a"));
+
+        // a failed refresh keeps the current value
+        Thread.sleep(200);
+        fail[0] = true;
+        assertEquals("a2", cache.get("a"));
+        assertEquals(1, refreshes.size());
+        refreshes.remove(0).run();
+        assertEquals("a2", cache.get("a"));
+        assertEquals(1, cache.loadFailureCount());
+        assertTrue(refreshes.isEmpty());
+    }
+
+    private final List<Thread> mThreads = new ArrayList<Thread>();
+
+    /**
+     * Calls get(key) on {@link #THREAD_COUNT} threads and collects the values or exceptions.
+     */
+    private List<Object> runConcurrently(final LoadingLruCache<String, String> cache,
+            final String key) {
+        final List<Object> results = new ArrayList<Object>();
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            final Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    Object result;
+                    try {
+                        result = cache.get(key);
+                    } catch (RuntimeException e) {
+                        result = e;
+                    }
+                    synchronized (results) {
+                        results.add(result);
+                    }
+                }
+            };
+            mThreads.add(thread);
+            thread.start();
+        }
+        return results;
+    }
+
+    private void joinAll() throws InterruptedException {
+        for (Thread thread : mThreads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    private static void waitFor(LoadingLruCache<?, ?> cache, int missCount)
+            throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (cache.missCount() < missCount) {
+            assertTrue("timed out waiting for " + missCount + " misses",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
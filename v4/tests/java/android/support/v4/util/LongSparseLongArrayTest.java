@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+public class LongSparseLongArrayTest
+        extends BasePrimitiveSparseArrayTest<LongSparseLongArray, Long> {
+
+    public void testGetMissing() {
+        final LongSparseLongArray array = create(1, 3);
+        assertEquals(0L, array.get(2));
+        assertEquals(-1L, array.get(2, -1L));
+        assertEquals(10000000000L, array.get(1, -1L));
+    }
+
+    public void testIndexOfValue() {
+        final LongSparseLongArray array = create(1, 3, 5);
+        array.put(7, 30000000000L);
+        assertEquals(1, array.indexOfValue(30000000000L));
+        assertEquals(2, array.indexOfValue(50000000000L));
+        assertEquals(-1, array.indexOfValue(20000000000L));
+    }
+
+    public void testKeysBeyondIntRange() {
+        final LongSparseLongArray array = new LongSparseLongArray();
+        array.put(1L << 32, 2);
+        array.put(0, 1);
+        array.put(-(1L << 32), 0);
+        assertEquals(3, array.size());
+        assertEquals(-(1L << 32), array.keyAt(0));
+        assertEquals(1L << 32, array.keyAt(2));
+        assertEquals(2L, array.get(1L << 32));
+        // keys which only differ above the lower 32 bits are distinct
+        assertEquals(~2, array.indexOfKey(1L));
+        assertEquals(0L, array.get((1L << 32) + 1));
+    }
+
+    @Override
+    Long value(int n) {
+        return n * 10000000000L;
+    }
+
+    @Override
+    LongSparseLongArray newArray() {
+        return new LongSparseLongArray();
+    }
+
+    @Override
+    LongSparseLongArray newArray(int initialCapacity) {
+        return new LongSparseLongArray(initialCapacity);
+    }
+
+    @Override
+    LongSparseLongArray copy(LongSparseLongArray array) {
+        return array.clone();
+    }
+
+    @Override
+    int size(LongSparseLongArray array) {
+        return array.size();
+    }
+
+    @Override
+    long keyAt(LongSparseLongArray array, int index) {
+        return array.keyAt(index);
+    }
+
+    @Override
+    Long valueAt(LongSparseLongArray array, int index) {
+        return array.valueAt(index);
+    }
+
+    @Override
+    Long get(LongSparseLongArray array, long key) {
+        return array.get(key);
+    }
+
+    @Override
+    int indexOfKey(LongSparseLongArray array, long key) {
+        return array.indexOfKey(key);
+    }
+
+    @Override
+    void put(LongSparseLongArray array, long key, Long value) {
+        array.put(key, value);
+    }
+
+    @Override
+    void append(LongSparseLongArray array, long key, Long value) {
+        array.append(key, value);
+    }
+
+    @Override
+    void setValueAt(LongSparseLongArray array, int index, Long value) {
+        array.setValueAt(index, value);
+    }
+
+    @Override
+    void delete(LongSparseLongArray array, long key) {
+        array.delete(key);
+    }
+
+    @Override
+    void removeAt(LongSparseLongArray array, int index) {
+        array.removeAt(index);
+    }
+
+    @Override
+    void removeAtRange(LongSparseLongArray array, int index, int size) {
+        array.removeAtRange(index, size);
+    }
+
+    @Override
+    void clear(LongSparseLongArray array) {
+        array.clear();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PoolsTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        Pools.setReleaseChecksEnabled(false);
+        super.tearDown();
+    }
+
+    public void testLockFreePoolBound() {
+        Pools.LockFreePool<Object> pool = new Pools.LockFreePool<Object>(3);
+        final Set<Object> released = new HashSet<Object>();
+        for (int i = 0; i < 3; i++) {
+            final Object instance = new Object();
+            assertTrue(pool.release(instance));
+            released.add(instance);
+        }
+        assertFalse(pool.release(new Object()));
+
+        final Set<Object> acquired = new HashSet<Object>();
+        for (int i = 0; i < 3; i++) {
+            acquired.add(pool.acquire());
+        }
+        assertEquals(released, acquired);
+        assertNull(pool.acquire());
+    }
+
+    public void testLockFreePoolConcurrentAccess() throws InterruptedException {
+        final Pools.LockFreePool<Object> pool = new Pools.LockFreePool<Object>(4);
+        final AtomicInteger acquires = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+        final List<Object> held = new ArrayList<Object>();
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final List<Object> mine = new ArrayList<Object>();
+                    for (int i = 0; i < 10000; i++) {
+                        if (i % 3 == 0) {
+                            final Object instance = pool.acquire();
+                            if (instance != null) {
+                                acquires.incrementAndGet();
+                                mine.add(instance);
+                            }
+                        } else {
+                            final Object instance = mine.isEmpty()
+                                    ? new Object() : mine.remove(mine.size() - 1);
+                            if (pool.release(instance)) {
+                                releases.incrementAndGet();
+                            }
+                        }
+                    }
+                    synchronized (held) {
+                        held.addAll(mine);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // every pooled instance is handed out once, and never while a thread holds it
+        final Set<Object> instances = new HashSet<Object>(held);
+        assertEquals(held.size(), instances.size());
+        int pooled = 0;
+        Object instance;
+        while ((instance = pool.acquire()) != null) {
+            assertTrue(instances.add(instance));
+            pooled++;
+        }
+        assertTrue(pooled <= 4);
+        assertEquals(releases.get() - acquires.get(), pooled);
+    }
+
+    public void testThreadLocalPoolOverflowsToSharedPool() throws InterruptedException {
+        final Pools.SimplePool<Object> shared = new Pools.SimplePool<Object>(2);
+        final Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<Object>(1, shared);
+        final Object local = new Object();
+        final Object overflow1 = new Object();
+        final Object overflow2 = new Object();
+        assertTrue(pool.release(local));
+        assertTrue(pool.release(overflow1));
+        assertTrue(pool.release(overflow2));
+        assertFalse(pool.release(new Object()));
+
+        // another thread has an empty pool of its own and takes from the shared pool
+        final List<Object> acquired = new ArrayList<Object>();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                acquired.add(pool.acquire());
+                acquired.add(pool.acquire());
+                acquired.add(pool.acquire());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(3, acquired.size());
+        assertNull(acquired.get(2));
+        assertTrue(acquired.contains(overflow1));
+        assertTrue(acquired.contains(overflow2));
+
+        assertSame(local, pool.acquire());
+        assertNull(pool.acquire());
+    }
+
+    public void testCounters() {
+        Pools.LockFreePool<Object> shared = new Pools.LockFreePool<Object>(1);
+        Pools.ThreadLocalPool<Object> pool = new Pools.ThreadLocalPool<Object>(1, shared);
+        assertNull(pool.getCounters());
+        pool.acquire();
+        pool.setCountersEnabled(true);
+        shared.setCountersEnabled(true);
+
+        assertNull(pool.acquire());
+        assertTrue(pool.release(new Object()));
+        assertTrue(pool.release(new Object()));
+        assertFalse(pool.release(new Object()));
+        assertNotNull(pool.acquire());
+        assertNotNull(pool.acquire());
+
+        Pools.Counters counters = pool.getCounters();
+        assertEquals(3, counters.acquireCount());
+        assertEquals(1, counters.missCount());
+        assertEquals(3, counters.releaseCount());
+        assertEquals(1, counters.dropCount());
+
+        // the shared pool only sees what the local pool could not handle
+        counters = shared.getCounters();
+        assertEquals(2, counters.acquireCount());
+        assertEquals(1, counters.missCount());
+        assertEquals(2, counters.releaseCount());
+        assertEquals(1, counters.dropCount());
+
+        // enabling again resets the counts, disabling drops them
+        pool.setCountersEnabled(true);
+        assertEquals(0, pool.getCounters().acquireCount());
+        pool.setCountersEnabled(false);
+        assertNull(pool.getCounters());
+        pool.acquire();
+        assertNull(pool.getCounters());
+    }
+
+    public void testReleaseChecks() {
+        final Pools.SimplePool<Object> simple = new Pools.SimplePool<Object>(4);
+        final Pools.LockFreePool<Object> lockFree = new Pools.LockFreePool<Object>(4);
+        final Pools.ThreadLocalPool<Object> threadLocal = new Pools.ThreadLocalPool<Object>(4,
+                new Pools.LockFreePool<Object>(4));
+        final List<Pools.Pool<Object>> pools = new ArrayList<Pools.Pool<Object>>();
+        pools.add(simple);
+        pools.add(lockFree);
+        pools.add(threadLocal);
+
+        for (Pools.Pool<Object> pool : pools) {
+            final Object instance = new Object();
+            assertTrue(pool.release(instance));
+            // unchecked, the same instance is pooled twice
+            assertTrue(pool.release(instance));
+        }
+
+        Pools.setReleaseChecksEnabled(true);
+        for (Pools.Pool<Object> pool : pools) {
+            final Object instance = new Object();
+            assertTrue(pool.release(instance));
+            try {
+                pool.release(instance);
+                fail("double release into " + pool);
+            } catch (IllegalStateException expected) {
+            }
+        }
+    }
+}
@@ -0,0 +1,406 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+public class SimpleArrayMapTest extends TestCase {
+
+    private static final int THRESHOLD = 32;
+
+    @Override
+    protected void tearDown() throws Exception {
+        SimpleArrayMap.setArrayCacheSizes(4, 8);
+        super.tearDown();
+    }
+
+    /**
+     * A key whose hash codes collide often, so that probe runs in the hash table and runs of
+     * equal hashes in the compact layout get long.
+     */
+    private static final class Key {
+        final int mId;
+
+        Key(int id) {
+            mId = id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).mId == mId;
+        }
+
+        @Override
+        public int hashCode() {
+            return mId % 13;
+        }
+
+        @Override
+        public String toString() {
+            return "Key" + mId;
+        }
+    }
+
+    public void testHashedThresholdCrossedBothWays() {
+        ArrayMap<Key, Integer> map = new ArrayMap<Key, Integer>();
+        map.setHashedThreshold(THRESHOLD);
+        HashMap<Key, Integer> expected = new HashMap<Key, Integer>();
+        for (int i = 0; i <= THRESHOLD; i++) {
+            put(map, expected, new Key(i), i);
+        }
+        assertNotNull(map.mTable);
+        assertMatches(expected, map);
+
+        // removals keep the hashed layout, the next put below half the threshold leaves it
+        for (int i = 0; i < THRESHOLD / 2 + 2; i++) {
+            remove(map, expected, new Key(i));
+        }
+        assertNotNull(map.mTable);
+        assertMatches(expected, map);
+        put(map, expected, new Key(-1), -1);
+        assertNull(map.mTable);
+        assertMatches(expected, map);
+
+        map.setHashedThreshold(4);
+        assertNotNull(map.mTable);
+        assertMatches(expected, map);
+        map.setHashedThreshold(Integer.MAX_VALUE);
+        assertNull(map.mTable);
+        assertMatches(expected, map);
+    }
+
+    public void testRandomOperations() {
+        final Random random = new Random(42);
+        ArrayMap<Key, Integer> map = new ArrayMap<Key, Integer>();
+        map.setHashedThreshold(THRESHOLD);
+        HashMap<Key, Integer> expected = new HashMap<Key, Integer>();
+        int enteredHashed = 0;
+        int leftHashed = 0;
+        for (int step = 0; step < 20000; step++) {
+            final boolean wasHashed = map.mTable != null;
+            // drift between growing and shrinking so the threshold is crossed many times
+            final boolean grow = (step / 500) % 2 == 0;
+            final int op = random.nextInt(10);
+            final Key key = random.nextInt(50) == 0 ? null : new Key(random.nextInt(200));
+            if (op < (grow ? 6 : 3)) {
+                put(map, expected, key, step);
+            } else if (op < 7) {
+                remove(map, expected, key);
+            } else if (op < 9) {
+                if (map.size() > 0) {
+                    final int index = random.nextInt(map.size());
+                    final Key removed = map.keyAt(index);
+                    assertEquals(expected.remove(removed), map.removeAt(index));
+                }
+            } else {
+                removeThroughIterator(map, expected, random);
+            }
+            assertMatches(expected, map);
+            if (!wasHashed && map.mTable != null) {
+                enteredHashed++;
+            } else if (wasHashed && map.mTable == null) {
+                leftHashed++;
+            }
+        }
+        assertTrue("entered hashed layout " + enteredHashed + " times", enteredHashed > 2);
+        assertTrue("left hashed layout " + leftHashed + " times", leftHashed > 2);
+    }
+
+    public void testIteratorRemoveVisitsEveryEntryOnce() {
+        for (int size : new int[] { 10, THRESHOLD * 3 }) {
+            for (int view = 0; view < 3; view++) {
+                ArrayMap<Key, Integer> map = new ArrayMap<Key, Integer>();
+                map.setHashedThreshold(THRESHOLD);
+                for (int i = 0; i < size; i++) {
+                    map.put(new Key(i), i);
+                }
+                assertEquals(size > THRESHOLD, map.mTable != null);
+                final Set<Integer> visited = new HashSet<Integer>();
+                final Iterator<?> it = iterator(map, view);
+                int i = 0;
+                while (it.hasNext()) {
+                    final Object next = it.next();
+                    // values equal the ids of their keys
+                    final Integer value = view == 1 ? (Integer) next
+                            : Integer.valueOf(keyOf(null, view, next).mId);
+                    assertTrue("visited " + value + " twice", visited.add(value));
+                    if (i++ % 2 == 0) {
+                        it.remove();
+                    }
+                }
+                assertEquals(size, visited.size());
+                assertEquals(size / 2, map.size());
+            }
+        }
+    }
+
+    public void testCustomArrayCacheSizesRecycled() {
+        SimpleArrayMap.setArrayCacheSizes(4, 8, 12, 18);
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<Integer, Integer>(12);
+        final int[] hashes = map.mHashes;
+        final Object[] array = map.mArray;
+        map.put(1, 1);
+        map.clear();
+        map = new SimpleArrayMap<Integer, Integer>(12);
+        assertSame(hashes, map.mHashes);
+        assertSame(array, map.mArray);
+        assertNull(map.mArray[0]);
+
+        // growing from 12 to 18 entries frees the 12 array and reuses a cached 18 array
+        map = new SimpleArrayMap<Integer, Integer>(18);
+        final int[] hashes18 = map.mHashes;
+        map.put(1, 1);
+        map.clear();
+        map = new SimpleArrayMap<Integer, Integer>(12);
+        final int[] hashes12 = map.mHashes;
+        for (int i = 0; i < 13; i++) {
+            map.put(i, i);
+        }
+        assertSame(hashes18, map.mHashes);
+        assertSame(hashes12, new SimpleArrayMap<Integer, Integer>(12).mHashes);
+    }
+
+    public void testStaleArrayCacheDropped() {
+        SimpleArrayMap.setArrayCacheSizes(12);
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<Integer, Integer>(12);
+        final int[] hashes = map.mHashes;
+        map.put(1, 1);
+        map.clear();
+
+        // equal sizes set again still replace the cache of this thread
+        SimpleArrayMap.setArrayCacheSizes(12);
+        assertNotSame(hashes, new SimpleArrayMap<Integer, Integer>(12).mHashes);
+
+        map = new SimpleArrayMap<Integer, Integer>(12);
+        map.put(1, 1);
+        map.clear();
+        SimpleArrayMap.setArrayCacheSizes(18);
+        final int hits = SimpleArrayMap.getArrayCacheHitCount();
+        final int misses = SimpleArrayMap.getArrayCacheMissCount();
+        new SimpleArrayMap<Integer, Integer>(12);
+        assertEquals(hits, SimpleArrayMap.getArrayCacheHitCount());
+        assertEquals(misses, SimpleArrayMap.getArrayCacheMissCount());
+
+        SimpleArrayMap.setArrayCacheSizes();
+        map = new SimpleArrayMap<Integer, Integer>(4);
+        map.put(1, 1);
+        map.clear();
+        assertEquals(hits, SimpleArrayMap.getArrayCacheHitCount());
+        assertEquals(misses, SimpleArrayMap.getArrayCacheMissCount());
+    }
+
+    public void testArrayCacheHitAndMissCounts() throws InterruptedException {
+        SimpleArrayMap.setArrayCacheSizes(4, 8);
+        final int hits = SimpleArrayMap.getArrayCacheHitCount();
+        final int misses = SimpleArrayMap.getArrayCacheMissCount();
+        SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<Integer, Integer>();
+        // grows to 4, 8 and 12 entries, freeing the 4 and 8 arrays
+        for (int i = 0; i < 9; i++) {
+            map.put(i, i);
+        }
+        assertEquals(hits, SimpleArrayMap.getArrayCacheHitCount());
+        assertEquals(misses + 2, SimpleArrayMap.getArrayCacheMissCount());
+
+        new SimpleArrayMap<Integer, Integer>(4);
+        new SimpleArrayMap<Integer, Integer>(8);
+        new SimpleArrayMap<Integer, Integer>(8);
+        assertEquals(hits + 2, SimpleArrayMap.getArrayCacheHitCount());
+        assertEquals(misses + 3, SimpleArrayMap.getArrayCacheMissCount());
+
+        // arrays freed on this thread are not visible to another one
+        map = new SimpleArrayMap<Integer, Integer>(4);
+        map.put(1, 1);
+        map.clear();
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                new SimpleArrayMap<Integer, Integer>(4);
+            }
+        };
+        thread.start();
+        thread.join();
+        assertEquals(hits + 2, SimpleArrayMap.getArrayCacheHitCount());
+        assertEquals(misses + 5, SimpleArrayMap.getArrayCacheMissCount());
+        new SimpleArrayMap<Integer, Integer>(4);
+        assertEquals(hits + 3, SimpleArrayMap.getArrayCacheHitCount());
+    }
+
+    public void testForEachFailsFast() {
+        for (final int threshold : new int[] { THRESHOLD, 2 }) {
+            final SimpleArrayMap<String, String> map = new SimpleArrayMap<String, String>();
+            map.setHashedThreshold(threshold);
+            map.put("a", "A");
+            map.put("b", "B");
+            map.put("c", "C");
+            final StringBuilder visited = new StringBuilder();
+            map.forEach(new SimpleArrayMap.EntryVisitor<String, String>() {
+                @Override
+                public void visit(String key, String value) {
+                    visited.append(key);
+                    map.setValueAt(map.indexOfKey(key), value + "!");
+                    // replacing the value of an existing key is not a modification
+                    map.put(key, map.get(key));
+                }
+            });
+            assertEquals(3, visited.length());
+            assertEquals("A!", map.get("a"));
+
+            assertForEachFails(map, new SimpleArrayMap.EntryVisitor<String, String>() {
+                @Override
+                public void visit(String key, String value) {
+                    map.put(key + key, value);
+                }
+            });
+            assertForEachFails(map, new SimpleArrayMap.EntryVisitor<String, String>() {
+                @Override
+                public void visit(String key, String value) {
+                    map.remove(key);
+                }
+            });
+            assertForEachFails(map, new SimpleArrayMap.EntryVisitor<String, String>() {
+                @Override
+                public void visit(String key, String value) {
+                    map.clear();
+                }
+            });
+        }
+    }
+
+    public void testCopyTo() {
+        final SimpleArrayMap<String, String> map = new SimpleArrayMap<String, String>();
+        map.put("a", "A");
+        map.put("b", "B");
+        final Object[] keys = new Object[4];
+        assertEquals(2, map.copyKeysTo(keys, 2));
+        assertNull(keys[1]);
+        final Object[] values = new Object[2];
+        assertEquals(2, map.copyValuesTo(values, 0));
+        for (int i = 0; i < 2; i++) {
+            assertEquals(map.keyAt(i), keys[i + 2]);
+            assertEquals(map.valueAt(i), values[i]);
+        }
+
+        assertCopyFails(map, 3, 2, "need 2 entries from 2 but length is 3");
+        assertCopyFails(map, 4, -1, "need 2 entries from -1 but length is 4");
+        assertCopyFails(map, 1, 0, "need 2 entries from 0 but length is 1");
+        assertEquals(0, new SimpleArrayMap<String, String>().copyKeysTo(new Object[0], 0));
+    }
+
+    private static void assertForEachFails(SimpleArrayMap<String, String> map,
+            SimpleArrayMap.EntryVisitor<String, String> visitor) {
+        try {
+            map.forEach(visitor);
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+
+    private static void assertCopyFails(SimpleArrayMap<String, String> map, int length,
+            int offset, String message) {
+        try {
+            map.copyKeysTo(new Object[length], offset);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+        try {
+            map.copyValuesTo(new Object[length], offset);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+
+    private static void put(ArrayMap<Key, Integer> map, HashMap<Key, Integer> expected,
+            Key key, Integer value) {
+        assertEquals(expected.put(key, value), map.put(key, value));
+    }
+
+    private static void remove(ArrayMap<Key, Integer> map, HashMap<Key, Integer> expected,
+            Key key) {
+        assertEquals(expected.remove(key), map.remove(key));
+    }
+
+    /**
+     * Removes about one in eight entries through one of the collection views.  Values are
+     * unique, so an entry removed through the values view can be found by its value.
+     */
+    private static void removeThroughIterator(ArrayMap<Key, Integer> map,
+            HashMap<Key, Integer> expected, Random random) {
+        final int view = random.nextInt(3);
+        final Iterator<?> it = iterator(map, view);
+        while (it.hasNext()) {
+            final Object next = it.next();
+            if (random.nextInt(8) == 0) {
+                final Key key = keyOf(expected, view, next);
+                it.remove();
+                assertTrue(expected.containsKey(key));
+                expected.remove(key);
+            }
+        }
+    }
+
+    private static Key keyOf(HashMap<Key, Integer> expected, int view, Object next) {
+        if (view == 0) {
+            return (Key) next;
+        } else if (view == 2) {
+            return ((Map.Entry<Key, Integer>) next).getKey();
+        }
+        for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+            if (entry.getValue().equals(next)) {
+                return entry.getKey();
+            }
+        }
+        throw new AssertionError("unexpected value " + next);
+    }
+
+    private static Iterator<?> iterator(ArrayMap<Key, Integer> map, int view) {
+        switch (view) {
+            case 0:
+                return map.keySet().iterator();
+            case 1:
+                return map.values().iterator();
+            default:
+                return map.entrySet().iterator();
+        }
+    }
+
+    private static void assertMatches(HashMap<Key, Integer> expected,
+            ArrayMap<Key, Integer> map) {
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Key, Integer> entry : expected.entrySet()) {
+            final int index = map.indexOfKey(entry.getKey());
+            assertTrue("missing " + entry.getKey(), index >= 0);
+            assertEquals(entry.getKey(), map.keyAt(index));
+            assertEquals(entry.getValue(), map.valueAt(index));
+        }
+        for (int i = 0; i < map.size(); i++) {
+            assertEquals(i, map.indexOfKey(map.keyAt(i)));
+        }
+        assertFalse(map.containsKey(new Key(-1000)));
+        assertEquals(expected, map);
+        assertEquals(expected.hashCode(), map.hashCode());
+    }
+}
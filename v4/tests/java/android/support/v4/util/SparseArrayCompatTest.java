@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+public class SparseArrayCompatTest extends TestCase {
+
+    public void testPutAllOverlappingKeys() {
+        SparseArrayCompat<String> array = create("a", 1, 3, 5, 7);
+        array.putAll(create("b", 2, 3, 6, 7, 9));
+        assertContents(array, 1, "a1", 2, "b2", 3, "b3", 5, "a5", 6, "b6", 7, "b7", 9, "b9");
+    }
+
+    public void testPutAllAfterExistingKeys() {
+        SparseArrayCompat<String> array = new SparseArrayCompat<String>(20);
+        array.put(1, "1");
+        array.put(2, "2");
+        array.putAll(new int[] { 3, 4, 5 }, new String[] { "3", "4", "5" });
+        assertContents(array, 1, "1", 2, "2", 3, "3", 4, "4", 5, "5");
+
+        // appending past the capacity grows the arrays
+        array = create("a", 1, 2);
+        array.putAll(create("b", 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15));
+        assertEquals(15, array.size());
+        assertEquals("b15", array.get(15));
+        assertEquals(14, array.indexOfKey(15));
+    }
+
+    public void testPutAllUnsortedKeys() {
+        SparseArrayCompat<String> array = create("a", 2, 4);
+        // duplicate keys, the last one wins as with put
+        array.putAll(new int[] { 5, 1, 4, 5 }, new String[] { "w", "x", "y", "z" });
+        assertContents(array, 1, "x", 2, "a2", 4, "y", 5, "z");
+
+        try {
+            array.putAll(new int[] { 1, 2 }, new String[] { "a" });
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testPutAllWithPendingDeletes() {
+        SparseArrayCompat<String> source = create("b", 1, 2, 3, 4, 5);
+        source.delete(2);
+        source.delete(5);
+        SparseArrayCompat<String> array = create("a", 0, 3, 6);
+        array.delete(0);
+        array.putAll(source);
+        assertContents(array, 1, "b1", 3, "b3", 4, "b4", 6, "a6");
+
+        // into an empty array
+        array = new SparseArrayCompat<String>();
+        source.delete(3);
+        array.putAll(source);
+        assertContents(array, 1, "b1", 4, "b4");
+
+        // after the existing keys
+        array = create("a", 0);
+        source = create("b", 1, 2, 3);
+        source.delete(2);
+        array.putAll(source);
+        assertContents(array, 0, "a0", 1, "b1", 3, "b3");
+
+        // into itself
+        array.delete(1);
+        array.putAll(array);
+        assertContents(array, 0, "a0", 3, "b3");
+    }
+
+    public void testPutAllRandom() {
+        final Random random = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            final SparseArrayCompat<String> array = new SparseArrayCompat<String>();
+            final TreeMap<Integer, String> expected = new TreeMap<Integer, String>();
+            fill(random, array, expected, random.nextInt(20), "a");
+            final SparseArrayCompat<String> source = new SparseArrayCompat<String>();
+            final TreeMap<Integer, String> sourceExpected = new TreeMap<Integer, String>();
+            fill(random, source, sourceExpected, random.nextInt(20), "b");
+            array.putAll(source);
+            expected.putAll(sourceExpected);
+            assertEquals(expected.size(), array.size());
+            int i = 0;
+            for (Map.Entry<Integer, String> entry : expected.entrySet()) {
+                assertEquals((int) entry.getKey(), array.keyAt(i));
+                assertEquals(entry.getValue(), array.valueAt(i));
+                i++;
+            }
+        }
+    }
+
+    public void testForEach() {
+        final SparseArrayCompat<String> array = create("a", 1, 2, 3);
+        array.delete(2);
+        final StringBuilder visited = new StringBuilder();
+        array.forEach(new SparseArrayCompat.EntryVisitor<String>() {
+            @Override
+            public void visit(int key, String value) {
+                visited.append(key).append('=').append(value).append(' ');
+                array.setValueAt(array.indexOfKey(key), value + "!");
+            }
+        });
+        assertEquals("1=a1 3=a3 ", visited.toString());
+        assertContents(array, 1, "a1!", 3, "a3!");
+    }
+
+    public void testForEachFailsFast() {
+        final SparseArrayCompat<String> array = create("a", 1, 2, 3);
+        assertForEachFails(array, new SparseArrayCompat.EntryVisitor<String>() {
+            @Override
+            public void visit(int key, String value) {
+                array.put(key + 10, value);
+            }
+        });
+        assertForEachFails(array, new SparseArrayCompat.EntryVisitor<String>() {
+            @Override
+            public void visit(int key, String value) {
+                array.delete(key);
+            }
+        });
+        assertForEachFails(array, new SparseArrayCompat.EntryVisitor<String>() {
+            @Override
+            public void visit(int key, String value) {
+                array.clear();
+            }
+        });
+    }
+
+    public void testCopyTo() {
+        final SparseArrayCompat<String> array = create("a", 1, 2, 3);
+        array.delete(2);
+        final int[] keys = new int[4];
+        assertEquals(2, array.copyKeysTo(keys, 2));
+        assertEquals(1, keys[2]);
+        assertEquals(3, keys[3]);
+        final Object[] values = new Object[2];
+        assertEquals(2, array.copyValuesTo(values, 0));
+        assertEquals("a1", values[0]);
+        assertEquals("a3", values[1]);
+
+        assertCopyFails(array, 3, 2, "need 2 entries from 2 but length is 3");
+        assertCopyFails(array, 4, -1, "need 2 entries from -1 but length is 4");
+        assertCopyFails(array, 1, 0, "need 2 entries from 0 but length is 1");
+        assertEquals(0, new SparseArrayCompat<String>().copyKeysTo(new int[0], 0));
+    }
+
+    private static void assertForEachFails(SparseArrayCompat<String> array,
+            SparseArrayCompat.EntryVisitor<String> visitor) {
+        try {
+            array.forEach(visitor);
+            fail();
+        } catch (ConcurrentModificationException expected) {
+        }
+    }
+
+    private static void assertCopyFails(SparseArrayCompat<String> array, int length, int offset,
+            String message) {
+        try {
+            array.copyKeysTo(new int[length], offset);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+        try {
+            array.copyValuesTo(new Object[length], offset);
+            fail();
+        } catch (ArrayIndexOutOfBoundsException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+
+    private static void fill(Random random, SparseArrayCompat<String> array,
+            TreeMap<Integer, String> expected, int count, String prefix) {
+        for (int i = 0; i < count; i++) {
+            final int key = random.nextInt(40);
+            if (random.nextInt(4) == 0) {
+                array.delete(key);
+                expected.remove(key);
+            } else {
+                array.put(key, prefix + i);
+                expected.put(key, prefix + i);
+            }
+        }
+    }
+
+    /**
+     * Creates an array mapping each key to the tag followed by the key.
+     */
+    private static SparseArrayCompat<String> create(String tag, int... keys) {
+        final SparseArrayCompat<String> array = new SparseArrayCompat<String>();
+        for (int key : keys) {
+            array.put(key, tag + key);
+        }
+        return array;
+    }
+
+    private static void assertContents(SparseArrayCompat<String> array, Object... keysAndValues) {
+        assertEquals(keysAndValues.length / 2, array.size());
+        for (int i = 0; i < array.size(); i++) {
+            assertEquals(((Number) keysAndValues[i * 2]).intValue(), array.keyAt(i));
+            assertEquals(keysAndValues[i * 2 + 1], array.valueAt(i));
+        }
+    }
+}
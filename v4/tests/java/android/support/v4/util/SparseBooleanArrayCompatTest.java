@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+public class SparseBooleanArrayCompatTest
+        extends BasePrimitiveSparseArrayTest<SparseBooleanArrayCompat, Boolean> {
+
+    public void testGetMissing() {
+        final SparseBooleanArrayCompat array = create(1, 2);
+        assertFalse(array.get(3));
+        assertTrue(array.get(3, true));
+        assertFalse(array.get(1, true));
+        assertTrue(array.get(2, false));
+    }
+
+    public void testIndexOfValue() {
+        final SparseBooleanArrayCompat array = new SparseBooleanArrayCompat();
+        array.put(1, false);
+        assertEquals(-1, array.indexOfValue(true));
+        array.put(3, true);
+        array.put(5, true);
+        assertEquals(0, array.indexOfValue(false));
+        assertEquals(1, array.indexOfValue(true));
+        array.setValueAt(0, true);
+        assertEquals(-1, array.indexOfValue(false));
+    }
+
+    @Override
+    Boolean value(int n) {
+        return n % 2 == 0;
+    }
+
+    @Override
+    SparseBooleanArrayCompat newArray() {
+        return new SparseBooleanArrayCompat();
+    }
+
+    @Override
+    SparseBooleanArrayCompat newArray(int initialCapacity) {
+        return new SparseBooleanArrayCompat(initialCapacity);
+    }
+
+    @Override
+    SparseBooleanArrayCompat copy(SparseBooleanArrayCompat array) {
+        return array.clone();
+    }
+
+    @Override
+    int size(SparseBooleanArrayCompat array) {
+        return array.size();
+    }
+
+    @Override
+    long keyAt(SparseBooleanArrayCompat array, int index) {
+        return array.keyAt(index);
+    }
+
+    @Override
+    Boolean valueAt(SparseBooleanArrayCompat array, int index) {
+        return array.valueAt(index);
+    }
+
+    @Override
+    Boolean get(SparseBooleanArrayCompat array, long key) {
+        return array.get((int) key);
+    }
+
+    @Override
+    int indexOfKey(SparseBooleanArrayCompat array, long key) {
+        return array.indexOfKey((int) key);
+    }
+
+    @Override
+    void put(SparseBooleanArrayCompat array, long key, Boolean value) {
+        array.put((int) key, value);
+    }
+
+    @Override
+    void append(SparseBooleanArrayCompat array, long key, Boolean value) {
+        array.append((int) key, value);
+    }
+
+    @Override
+    void setValueAt(SparseBooleanArrayCompat array, int index, Boolean value) {
+        array.setValueAt(index, value);
+    }
+
+    @Override
+    void delete(SparseBooleanArrayCompat array, long key) {
+        array.delete((int) key);
+    }
+
+    @Override
+    void removeAt(SparseBooleanArrayCompat array, int index) {
+        array.removeAt(index);
+    }
+
+    @Override
+    void removeAtRange(SparseBooleanArrayCompat array, int index, int size) {
+        array.removeAtRange(index, size);
+    }
+
+    @Override
+    void clear(SparseBooleanArrayCompat array) {
+        array.clear();
+    }
+}
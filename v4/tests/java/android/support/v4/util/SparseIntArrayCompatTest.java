@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+public class SparseIntArrayCompatTest
+        extends BasePrimitiveSparseArrayTest<SparseIntArrayCompat, Integer> {
+
+    public void testGetMissing() {
+        final SparseIntArrayCompat array = create(1, 3);
+        assertEquals(0, array.get(2));
+        assertEquals(-1, array.get(2, -1));
+        assertEquals(10, array.get(1, -1));
+    }
+
+    public void testIndexOfValue() {
+        final SparseIntArrayCompat array = create(1, 3, 5);
+        array.put(7, 30);
+        assertEquals(1, array.indexOfValue(30));
+        assertEquals(2, array.indexOfValue(50));
+        assertEquals(-1, array.indexOfValue(20));
+    }
+
+    @Override
+    Integer value(int n) {
+        return n * 10;
+    }
+
+    @Override
+    SparseIntArrayCompat newArray() {
+        return new SparseIntArrayCompat();
+    }
+
+    @Override
+    SparseIntArrayCompat newArray(int initialCapacity) {
+        return new SparseIntArrayCompat(initialCapacity);
+    }
+
+    @Override
+    SparseIntArrayCompat copy(SparseIntArrayCompat array) {
+        return array.clone();
+    }
+
+    @Override
+    int size(SparseIntArrayCompat array) {
+        return array.size();
+    }
+
+    @Override
+    long keyAt(SparseIntArrayCompat array, int index) {
+        return array.keyAt(index);
+    }
+
+    @Override
+    Integer valueAt(SparseIntArrayCompat array, int index) {
+        return array.valueAt(index);
+    }
+
+    @Override
+    Integer get(SparseIntArrayCompat array, long key) {
+        return array.get((int) key);
+    }
+
+    @Override
+    int indexOfKey(SparseIntArrayCompat array, long key) {
+        return array.indexOfKey((int) key);
+    }
+
+    @Override
+    void put(SparseIntArrayCompat array, long key, Integer value) {
+        array.put((int) key, value);
+    }
+
+    @Override
+    void append(SparseIntArrayCompat array, long key, Integer value) {
+        array.append((int) key, value);
+    }
+
+    @Override
+    void setValueAt(SparseIntArrayCompat array, int index, Integer value) {
+        array.setValueAt(index, value);
+    }
+
+    @Override
+    void delete(SparseIntArrayCompat array, long key) {
+        array.delete((int) key);
+    }
+
+    @Override
+    void removeAt(SparseIntArrayCompat array, int index) {
+        array.removeAt(index);
+    }
+
+    @Override
+    void removeAtRange(SparseIntArrayCompat array, int index, int size) {
+        array.removeAtRange(index, size);
+    }
+
+    @Override
+    void clear(SparseIntArrayCompat array) {
+        array.clear();
+    }
+}
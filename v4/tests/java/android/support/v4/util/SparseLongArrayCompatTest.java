@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+public class SparseLongArrayCompatTest
+        extends BasePrimitiveSparseArrayTest<SparseLongArrayCompat, Long> {
+
+    public void testGetMissing() {
+        final SparseLongArrayCompat array = create(1, 3);
+        assertEquals(0L, array.get(2));
+        assertEquals(-1L, array.get(2, -1L));
+        assertEquals(10000000000L, array.get(1, -1L));
+    }
+
+    public void testIndexOfValue() {
+        final SparseLongArrayCompat array = create(1, 3, 5);
+        array.put(7, 30000000000L);
+        assertEquals(1, array.indexOfValue(30000000000L));
+        assertEquals(2, array.indexOfValue(50000000000L));
+        assertEquals(-1, array.indexOfValue(20000000000L));
+    }
+
+    @Override
+    Long value(int n) {
+        return n * 10000000000L;
+    }
+
+    @Override
+    SparseLongArrayCompat newArray() {
+        return new SparseLongArrayCompat();
+    }
+
+    @Override
+    SparseLongArrayCompat newArray(int initialCapacity) {
+        return new SparseLongArrayCompat(initialCapacity);
+    }
+
+    @Override
+    SparseLongArrayCompat copy(SparseLongArrayCompat array) {
+        return array.clone();
+    }
+
+    @Override
+    int size(SparseLongArrayCompat array) {
+        return array.size();
+    }
+
+    @Override
+    long keyAt(SparseLongArrayCompat array, int index) {
+        return array.keyAt(index);
+    }
+
+    @Override
+    Long valueAt(SparseLongArrayCompat array, int index) {
+        return array.valueAt(index);
+    }
+
+    @Override
+    Long get(SparseLongArrayCompat array, long key) {
+        return array.get((int) key);
+    }
+
+    @Override
+    int indexOfKey(SparseLongArrayCompat array, long key) {
+        return array.indexOfKey((int) key);
+    }
+
+    @Override
+    void put(SparseLongArrayCompat array, long key, Long value) {
+        array.put((int) key, value);
+    }
+
+    @Override
+    void append(SparseLongArrayCompat array, long key, Long value) {
+        array.append((int) key, value);
+    }
+
+    @Override
+    void setValueAt(SparseLongArrayCompat array, int index, Long value) {
+        array.setValueAt(index, value);
+    }
+
+    @Override
+    void delete(SparseLongArrayCompat array, long key) {
+        array.delete((int) key);
+    }
+
+    @Override
+    void removeAt(SparseLongArrayCompat array, int index) {
+        array.removeAt(index);
+    }
+
+    @Override
+    void removeAtRange(SparseLongArrayCompat array, int index, int size) {
+        array.removeAtRange(index, size);
+    }
+
+    @Override
+    void clear(SparseLongArrayCompat array) {
+        array.clear();
+    }
+}
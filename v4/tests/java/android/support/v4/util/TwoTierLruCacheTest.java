@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.Executor;
+
+public class TwoTierLruCacheTest extends TestCase {
+
+    private static final TwoTierLruCache.Codec<String> CODEC =
+            new TwoTierLruCache.Codec<String>() {
+                @Override
+                public void encode(String value, OutputStream out) throws IOException {
+                    out.write(value.getBytes("UTF-8"));
+                }
+
+                @Override
+                public String decode(InputStream in) throws IOException {
+                    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[256];
+                    int count;
+                    while ((count = in.read(buffer)) != -1) {
+                        bytes.write(buffer, 0, count);
+                    }
+                    return new String(bytes.toByteArray(), "UTF-8");
+                }
+            };
+
+    /** Runs the disk tasks on the calling thread so that every call completes right away. */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private File mDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDirectory = File.createTempFile("TwoTierLruCacheTest", null);
+        assertTrue(mDirectory.delete());
+        assertTrue(mDirectory.mkdir());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        final File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        super.tearDown();
+    }
+
+    private TwoTierLruCache<String> open(long maxDiskSize) {
+        return new TwoTierLruCache<String>(mDirectory, maxDiskSize, 1, CODEC, DIRECT_EXECUTOR);
+    }
+
+    private File entryFile(String key) {
+        return new File(mDirectory, key + TwoTierLruCache.ENTRY_SUFFIX);
+    }
+
+    public void testGetFromMemoryAndDisk() {
+        TwoTierLruCache<String> cache = open(1000);
+        cache.put("a", "value a");
+        cache.put("b", "value b");
+        // the memory tier only holds one value
+        assertEquals("value b", cache.getFromMemory("b"));
+        assertNull(cache.getFromMemory("a"));
+        assertEquals("value a", cache.get("a"));
+        assertEquals("value a", cache.getFromMemory("a"));
+        assertNull(cache.get("c"));
+        assertEquals(1, cache.diskHitCount());
+        assertEquals(2, cache.memoryHitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(14, cache.diskSize());
+    }
+
+    public void testJournalReplay() {
+        TwoTierLruCache<String> cache = open(1000);
+        cache.put("a", "value a");
+        cache.put("b", "value b");
+        cache.put("c", "value c");
+        cache.remove("b");
+        cache.flush();
+        assertFalse(entryFile("b").exists());
+
+        cache = open(1000);
+        assertEquals("value a", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("value c", cache.get("c"));
+        assertEquals(14, cache.diskSize());
+    }
+
+    public void testTruncatedJournalRecordIgnored() throws IOException {
+        TwoTierLruCache<String> cache = open(1000);
+        cache.put("ab", "value ab");
+        cache.put("abc", "value abc");
+        cache.flush();
+
+        // a crash while appending "REMOVE abc" leaves a record for a different key
+        final FileOutputStream out = new FileOutputStream(
+                new File(mDirectory, TwoTierLruCache.JOURNAL_FILE), true);
+        try {
+            out.write((TwoTierLruCache.REMOVE + " ab").getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        cache = open(1000);
+        assertEquals("value ab", cache.get("ab"));
+        assertEquals("value abc", cache.get("abc"));
+        assertEquals(17, cache.diskSize());
+    }
+
+    public void testUnreferencedFilesDeleted() throws IOException {
+        TwoTierLruCache<String> cache = open(1000);
+        cache.put("a", "value a");
+        cache.flush();
+        assertTrue(entryFile("stray").createNewFile());
+        final File temp = new File(mDirectory, "b" + TwoTierLruCache.TEMP_SUFFIX);
+        assertTrue(temp.createNewFile());
+
+        cache = open(1000);
+        assertEquals("value a", cache.get("a"));
+        assertTrue(entryFile("a").exists());
+        assertFalse(entryFile("stray").exists());
+        assertFalse(temp.exists());
+
+        // an entry whose file is gone is dropped from the index
+        assertTrue(entryFile("a").delete());
+        cache = open(1000);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.diskSize());
+    }
+
+    public void testTrimsLeastRecentlyAccessed() {
+        TwoTierLruCache<String> cache = open(25);
+        cache.put("a", "0123456789");
+        cache.put("b", "0123456789");
+        // read "a" from the disk so that "b" becomes the least recently accessed entry
+        assertEquals("0123456789", cache.get("a"));
+        cache.put("c", "0123456789");
+        assertEquals(20, cache.diskSize());
+        assertTrue(entryFile("a").exists());
+        assertFalse(entryFile("b").exists());
+        assertTrue(entryFile("c").exists());
+
+        cache.setMaxDiskSize(10);
+        assertEquals(10, cache.diskSize());
+        assertFalse(entryFile("a").exists());
+        cache.flush();
+
+        cache = open(10);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("0123456789", cache.get("c"));
+    }
+
+    public void testEvictAll() {
+        TwoTierLruCache<String> cache = open(1000);
+        cache.put("a", "value a");
+        cache.put("b", "value b");
+        cache.evictAll();
+        assertEquals(0, cache.diskSize());
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertFalse(entryFile("a").exists());
+    }
+}
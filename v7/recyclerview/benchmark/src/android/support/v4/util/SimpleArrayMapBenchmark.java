@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v4.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the compact and hashed layouts of {@link SimpleArrayMap} across sizes, to find the
+ * size above which the hashed layout pays off.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SimpleArrayMapBenchmark {
+
+    static final String LAYOUT_COMPACT = "compact";
+
+    static final String LAYOUT_HASHED = "hashed";
+
+    @Param({"32", "64", "128", "256", "512", "1024", "4096"})
+    int mSize;
+
+    @Param({LAYOUT_COMPACT, LAYOUT_HASHED})
+    String mLayout;
+
+    Integer[] mKeys;
+
+    SimpleArrayMap<Integer, Integer> mFullMap;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mKeys = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mKeys[i] = random.nextInt();
+        }
+        mFullMap = newMap();
+        for (Integer key : mKeys) {
+            mFullMap.put(key, key);
+        }
+    }
+
+    private SimpleArrayMap<Integer, Integer> newMap() {
+        final SimpleArrayMap<Integer, Integer> map = new SimpleArrayMap<Integer, Integer>();
+        map.setHashedThreshold(LAYOUT_HASHED.equals(mLayout) ? 1 : Integer.MAX_VALUE);
+        return map;
+    }
+
+    @Benchmark
+    public int putAll() {
+        final SimpleArrayMap<Integer, Integer> map = newMap();
+        for (Integer key : mKeys) {
+            map.put(key, key);
+        }
+        return map.size();
+    }
+
+    @Benchmark
+    public int get() {
+        int sum = 0;
+        for (Integer key : mKeys) {
+            sum += mFullMap.get(key);
+        }
+        return sum;
+    }
+
+    /**
+     * Removes and re-adds every key, so the map stays at the same size.
+     */
+    @Benchmark
+    public int removeAndPut() {
+        for (Integer key : mKeys) {
+            mFullMap.remove(key);
+            mFullMap.put(key, key);
+        }
+        return mFullMap.size();
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures filling and updating a {@link SortedList}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SortedListBenchmark {
+
+    @Param({"1000", "10000"})
+    int mSize;
+
+    Integer[] mItems;
+
+    SortedList<Integer> mFullList;
+
+    int mEvents;
+
+    final SortedList.Callback<Integer> mCallback = new SortedList.Callback<Integer>() {
+        @Override
+        public int compare(Integer o1, Integer o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mEvents++;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mEvents++;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mEvents++;
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mEvents++;
+        }
+
+        @Override
+        public boolean areContentsTheSame(Integer oldItem, Integer newItem) {
+            return oldItem.equals(newItem);
+        }
+
+        @Override
+        public boolean areItemsTheSame(Integer item1, Integer item2) {
+            return item1.equals(item2);
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mItems = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mItems[i] = random.nextInt();
+        }
+        mFullList = new SortedList<Integer>(Integer.class, mCallback);
+        mFullList.addAll(mItems, false);
+    }
+
+    @Benchmark
+    public int addOneByOne() {
+        final SortedList<Integer> list = new SortedList<Integer>(Integer.class, mCallback);
+        for (Integer item : mItems) {
+            list.add(item);
+        }
+        return list.size();
+    }
+
+    @Benchmark
+    public int addOneByOneBatched() {
+        final SortedList<Integer> list = new SortedList<Integer>(Integer.class, mCallback);
+        list.beginBatchedUpdates();
+        for (Integer item : mItems) {
+            list.add(item);
+        }
+        list.endBatchedUpdates();
+        return list.size();
+    }
+
+    @Benchmark
+    public int addAll() {
+        final SortedList<Integer> list = new SortedList<Integer>(Integer.class, mCallback);
+        list.addAll(mItems, false);
+        return list.size();
+    }
+
+    /**
+     * Merges the same items into a full list, so every item is a replacement.
+     */
+    @Benchmark
+    public int addAllExisting() {
+        mFullList.addAll(mItems, false);
+        return mFullList.size();
+    }
+
+    /**
+     * Replaces each of the first hundred items with a value which sorts at the other end of the
+     * list and back.
+     */
+    @Benchmark
+    public int updateItemAt() {
+        final int count = Math.min(100, mSize);
+        for (int i = 0; i < count; i++) {
+            final Integer item = mFullList.get(0);
+            mFullList.updateItemAt(0, Integer.MAX_VALUE - i);
+            mFullList.updateItemAt(mFullList.size() - 1, item);
+        }
+        return mEvents;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+import static android.support.v7.widget.AdapterHelper.UpdateOp.ADD;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.MOVE;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.REMOVE;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.UPDATE;
+
+/**
+ * Measures how fast {@link AdapterHelper} consumes a burst of adapter notifications, both in the
+ * two pass mode used for predictive animations and in the single pass mode.
+ * <p>
+ * There are no views on the JVM, so the callback does not find any ViewHolder and only
+ * accumulates the offsets it receives. Every item is handled as if it was not laid out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AdapterHelperBenchmark {
+
+    @Param({"10000"})
+    int mItemCount;
+
+    @Param({"16", "256"})
+    int mBurstSize;
+
+    @Param({UpdateOpSequence.CHANGE_BURST, UpdateOpSequence.MIXED})
+    String mWorkload;
+
+    UpdateOpSequence mSequence;
+
+    AdapterHelper mAdapterHelper;
+
+    long mChecksum;
+
+    @Setup
+    public void setUp() {
+        mSequence = UpdateOpSequence.create(mWorkload, mItemCount, mBurstSize, 42);
+        mAdapterHelper = new AdapterHelper(new AdapterHelper.Callback() {
+            @Override
+            public RecyclerView.ViewHolder findViewHolder(int position) {
+                return null;
+            }
+
+            @Override
+            public void offsetPositionsForRemovingInvisible(int positionStart, int itemCount) {
+                mChecksum += positionStart - itemCount;
+            }
+
+            @Override
+            public void offsetPositionsForRemovingLaidOutOrNewView(int positionStart,
+                    int itemCount) {
+                mChecksum += positionStart - itemCount;
+            }
+
+            @Override
+            public void markViewHoldersUpdated(int positionStart, int itemCount,
+                    Object payload) {
+                mChecksum += positionStart ^ itemCount;
+            }
+
+            @Override
+            public void onDispatchFirstPass(AdapterHelper.UpdateOp updateOp) {
+                mChecksum++;
+            }
+
+            @Override
+            public void onDispatchSecondPass(AdapterHelper.UpdateOp updateOp) {
+                mChecksum++;
+            }
+
+            @Override
+            public void offsetPositionsForAdd(int positionStart, int itemCount) {
+                mChecksum += positionStart + itemCount;
+            }
+
+            @Override
+            public void offsetPositionsForMove(int from, int to) {
+                mChecksum += from * 31 + to;
+            }
+        });
+    }
+
+    private void dispatchUpdates(UpdateOpSequence sequence) {
+        final int size = sequence.size();
+        for (int i = 0; i < size; i++) {
+            final int start = sequence.starts[i];
+            final int count = sequence.counts[i];
+            switch (sequence.cmds[i]) {
+                case ADD:
+                    mAdapterHelper.onItemRangeInserted(start, count);
+                    break;
+                case REMOVE:
+                    mAdapterHelper.onItemRangeRemoved(start, count);
+                    break;
+                case UPDATE:
+                    mAdapterHelper.onItemRangeChanged(start, count, null);
+                    break;
+                case MOVE:
+                    mAdapterHelper.onItemRangeMoved(start, count, 1);
+                    break;
+            }
+        }
+    }
+
+    @Benchmark
+    public long preProcess() {
+        dispatchUpdates(mSequence);
+        mAdapterHelper.preProcess();
+        mAdapterHelper.consumePostponedUpdates();
+        return mChecksum;
+    }
+
+    @Benchmark
+    public long consumeUpdatesInOnePass() {
+        dispatchUpdates(mSequence);
+        mAdapterHelper.consumeUpdatesInOnePass();
+        return mChecksum;
+    }
+}
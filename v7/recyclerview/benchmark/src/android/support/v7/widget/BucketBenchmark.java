@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ChildHelper.Bucket}, which maps between child and hidden view indices on every
+ * child lookup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class BucketBenchmark {
+
+    /**
+     * Number of bits in use, i.e. the number of children of the RecyclerView.
+     */
+    @Param({"32", "256", "10000"})
+    int mSize;
+
+    ChildHelper.Bucket mBucket;
+
+    int[] mIndices;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mBucket = new ChildHelper.Bucket();
+        // a few hidden children, as during a change animation
+        for (int i = 0; i < mSize; i++) {
+            if (random.nextInt(8) == 0) {
+                mBucket.set(i);
+            }
+        }
+        mIndices = new int[1024];
+        for (int i = 0; i < mIndices.length; i++) {
+            mIndices[i] = random.nextInt(mSize);
+        }
+    }
+
+    /**
+     * Rank queries only, as in a layout pass which does not add or remove views.
+     */
+    @Benchmark
+    public int countOnesBefore() {
+        int sum = 0;
+        for (int index : mIndices) {
+            sum += mBucket.countOnesBefore(index);
+        }
+        return sum;
+    }
+
+    /**
+     * Inserting and removing a child followed by rank queries, as when views are added and
+     * detached while scrolling.
+     */
+    @Benchmark
+    public int insertRemoveAndCount() {
+        int sum = 0;
+        for (int index : mIndices) {
+            mBucket.insert(index, true);
+            sum += mBucket.countOnesBefore(mSize);
+            mBucket.remove(index);
+            sum += mBucket.countOnesBefore(index);
+        }
+        return sum;
+    }
+}
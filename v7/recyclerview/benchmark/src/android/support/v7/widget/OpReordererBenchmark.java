@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import android.support.v7.widget.AdapterHelper.UpdateOp;
+
+/**
+ * Measures {@link OpReorderer} on notification sequences for a large adapter. Each invocation
+ * rebuilds the op list from the same sequence, which is included in the results.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class OpReordererBenchmark {
+
+    @Param({"10000"})
+    int mItemCount;
+
+    @Param({"16", "128"})
+    int mOpCount;
+
+    @Param({UpdateOpSequence.CHANGE_BURST, UpdateOpSequence.MIXED})
+    String mWorkload;
+
+    UpdateOpSequence mSequence;
+
+    OpReorderer mOpReorderer;
+
+    final List<UpdateOp> mOps = new ArrayList<UpdateOp>();
+
+    @Setup
+    public void setUp() {
+        mSequence = UpdateOpSequence.create(mWorkload, mItemCount, mOpCount, 42);
+        mOpReorderer = new OpReorderer(new OpReorderer.Callback() {
+            @Override
+            public UpdateOp obtainUpdateOp(int cmd, int startPosition, int itemCount,
+                    Object payload) {
+                return new UpdateOp(cmd, startPosition, itemCount, payload);
+            }
+
+            @Override
+            public void recycleUpdateOp(UpdateOp op) {
+            }
+        });
+    }
+
+    private List<UpdateOp> fillOps() {
+        mOps.clear();
+        final int size = mSequence.size();
+        for (int i = 0; i < size; i++) {
+            mOps.add(new UpdateOp(mSequence.cmds[i], mSequence.starts[i], mSequence.counts[i],
+                    null));
+        }
+        return mOps;
+    }
+
+    @Benchmark
+    public int reorderOps() {
+        final List<UpdateOp> ops = fillOps();
+        mOpReorderer.reorderOps(ops);
+        return ops.size();
+    }
+
+    @Benchmark
+    public int coalesceAndReorderOps() {
+        final List<UpdateOp> ops = fillOps();
+        mOpReorderer.coalesceOps(ops);
+        mOpReorderer.reorderOps(ops);
+        return ops.size();
+    }
+}
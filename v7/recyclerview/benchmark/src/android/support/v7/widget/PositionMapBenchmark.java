@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building and querying a {@link PositionMap}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PositionMapBenchmark {
+
+    @Param({"100", "10000"})
+    int mSize;
+
+    int[] mShuffledKeys;
+
+    PositionMap<Object> mFullMap;
+
+    final Object mValue = new Object();
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        mShuffledKeys = new int[mSize];
+        for (int i = 0; i < mSize; i++) {
+            mShuffledKeys[i] = i;
+        }
+        for (int i = mSize - 1; i > 0; i--) {
+            final int j = random.nextInt(i + 1);
+            final int tmp = mShuffledKeys[i];
+            mShuffledKeys[i] = mShuffledKeys[j];
+            mShuffledKeys[j] = tmp;
+        }
+        mFullMap = new PositionMap<Object>();
+        for (int i = 0; i < mSize; i++) {
+            mFullMap.append(i, mValue);
+        }
+    }
+
+    @Benchmark
+    public int appendInOrder() {
+        final PositionMap<Object> map = new PositionMap<Object>();
+        for (int i = 0; i < mSize; i++) {
+            map.append(i, mValue);
+        }
+        return map.size();
+    }
+
+    @Benchmark
+    public int putShuffled() {
+        final PositionMap<Object> map = new PositionMap<Object>();
+        for (int key : mShuffledKeys) {
+            map.put(key, mValue);
+        }
+        return map.size();
+    }
+
+    @Benchmark
+    public int getShuffled() {
+        int found = 0;
+        for (int key : mShuffledKeys) {
+            if (mFullMap.get(key) != null) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Deletes every other key from a copy of the map, then reads the size which compacts it.
+     */
+    @Benchmark
+    public int cloneAndDelete() {
+        final PositionMap<Object> map = mFullMap.clone();
+        for (int i = 0; i < mSize; i += 2) {
+            map.delete(i);
+        }
+        return map.size();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link GridLayoutManager.SpanSizeLookup} deep into a large grid where a full width
+ * section header follows every few dozen items.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SpanSizeLookupBenchmark {
+
+    static final String CACHE_NONE = "none";
+
+    static final String CACHE_SPAN_INDEX = "spanIndex";
+
+    static final String CACHE_SPAN_GROUP = "spanGroup";
+
+    static final int SECTION_SIZE = 37;
+
+    @Param({"100000"})
+    int mItemCount;
+
+    @Param({"4"})
+    int mSpanCount;
+
+    @Param({CACHE_NONE, CACHE_SPAN_INDEX, CACHE_SPAN_GROUP})
+    String mCache;
+
+    GridLayoutManager.SpanSizeLookup mLookup;
+
+    int[] mRandomPositions;
+
+    int mScrollPosition;
+
+    @Setup
+    public void setUp() {
+        mLookup = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return position % SECTION_SIZE == 0 ? mSpanCount : 1;
+            }
+        };
+        mLookup.setSpanIndexCacheEnabled(CACHE_SPAN_INDEX.equals(mCache));
+        mLookup.setSpanGroupIndexCacheEnabled(CACHE_SPAN_GROUP.equals(mCache));
+        final Random random = new Random(42);
+        mRandomPositions = new int[64];
+        for (int i = 0; i < mRandomPositions.length; i++) {
+            mRandomPositions[i] = random.nextInt(mItemCount);
+        }
+        mScrollPosition = 0;
+    }
+
+    /**
+     * Group indices of the next row of items, as queried while scrolling down one row.
+     */
+    @Benchmark
+    public int scrollOneRow() {
+        int sum = 0;
+        for (int i = 0; i < mSpanCount; i++) {
+            sum += mLookup.getSpanGroupIndex(mScrollPosition, mSpanCount);
+            if (++mScrollPosition == mItemCount) {
+                mScrollPosition = 0;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Group indices at random positions, as queried for accessibility or when jumping to a
+     * position.
+     */
+    @Benchmark
+    public int randomGroupIndex() {
+        int sum = 0;
+        for (int position : mRandomPositions) {
+            sum += mLookup.getSpanGroupIndex(position, mSpanCount);
+        }
+        return sum;
+    }
+
+    /**
+     * A deep lookup right after the adapter changed and the caches were dropped.
+     */
+    @Benchmark
+    public int deepLookupAfterInvalidate() {
+        mLookup.invalidateSpanIndexCache();
+        mLookup.invalidateSpanGroupIndexCache();
+        return mLookup.getSpanGroupIndex(mItemCount - 1, mSpanCount)
+                + mLookup.getSpanIndex(mItemCount - 1, mSpanCount);
+    }
+}
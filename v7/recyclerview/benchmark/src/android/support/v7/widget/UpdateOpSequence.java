@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.widget;
+
+import java.util.Random;
+
+import static android.support.v7.widget.AdapterHelper.UpdateOp.ADD;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.MOVE;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.REMOVE;
+import static android.support.v7.widget.AdapterHelper.UpdateOp.UPDATE;
+
+/**
+ * A reproducible sequence of adapter notifications, kept in parallel arrays so that replaying it
+ * does not allocate anything besides the ops themselves.
+ */
+class UpdateOpSequence {
+
+    /**
+     * Single item changes at neighbouring positions, as sent by an adapter which notifies each
+     * modified row separately.
+     */
+    static final String CHANGE_BURST = "changeBurst";
+
+    /**
+     * Random adds, removes, changes and moves, similar to merging a server response.
+     */
+    static final String MIXED = "mixed";
+
+    final int[] cmds;
+    final int[] starts;
+    // item count, or target position of a move
+    final int[] counts;
+
+    private UpdateOpSequence(int size) {
+        cmds = new int[size];
+        starts = new int[size];
+        counts = new int[size];
+    }
+
+    int size() {
+        return cmds.length;
+    }
+
+    static UpdateOpSequence create(String workload, int itemCount, int size, long seed) {
+        final UpdateOpSequence sequence = new UpdateOpSequence(size);
+        final Random random = new Random(seed);
+        if (CHANGE_BURST.equals(workload)) {
+            int position = random.nextInt(itemCount - size);
+            for (int i = 0; i < size; i++) {
+                sequence.set(i, UPDATE, position, 1);
+                // mostly sequential with an occasional gap
+                position += random.nextInt(8) == 0 ? 2 : 1;
+            }
+        } else if (MIXED.equals(workload)) {
+            for (int i = 0; i < size; i++) {
+                final int cmd = random.nextInt(4);
+                switch (cmd) {
+                    case ADD: {
+                        final int count = 1 + random.nextInt(10);
+                        sequence.set(i, ADD, random.nextInt(itemCount + 1), count);
+                        itemCount += count;
+                        break;
+                    }
+                    case REMOVE: {
+                        final int start = random.nextInt(itemCount - 1);
+                        final int count = 1 + random.nextInt(Math.min(10, itemCount - start));
+                        sequence.set(i, REMOVE, start, count);
+                        itemCount -= count;
+                        break;
+                    }
+                    case UPDATE: {
+                        final int start = random.nextInt(itemCount - 1);
+                        final int count = 1 + random.nextInt(Math.min(10, itemCount - start));
+                        sequence.set(i, UPDATE, start, count);
+                        break;
+                    }
+                    case MOVE: {
+                        final int from = random.nextInt(itemCount);
+                        int to;
+                        do {
+                            to = random.nextInt(itemCount);
+                        } while (to == from);
+                        sequence.set(i, MOVE, from, to);
+                        break;
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("unknown workload " + workload);
+        }
+        return sequence;
+    }
+
+    private void set(int index, int cmd, int start, int count) {
+        cmds[index] = cmd;
+        starts[index] = start;
+        counts[index] = count;
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A companion to {@link SortedList} which sorts and merges items on a background thread.
+ * <p>
+ * Mutations are queued as {@link Batch}es and applied in order, on a background executor, to a
+ * private SortedList. Once the queued batches are applied, an immutable snapshot of the list and
+ * the coalesced change events are handed to the main thread in a single step. The snapshot
+ * becomes visible through {@link #size()} and {@link #get(int)} right before the change events are
+ * dispatched to the {@link SortedList.Callback}, so readers on the main thread never see a
+ * partially applied batch.
+ * <p>
+ * {@link SortedList.Callback#compare(Object, Object)},
+ * {@link SortedList.Callback#areItemsTheSame(Object, Object)} and
+ * {@link SortedList.Callback#areContentsTheSame(Object, Object)} are called on the background
+ * thread and must not access state owned by the main thread. The <code>on*</code> methods are
+ * called on the main thread, so a
+ * {@link android.support.v7.widget.util.SortedListAdapterCallback SortedListAdapterCallback} can
+ * be used to bind this list to an Adapter.
+ * <p>
+ * If a batch or the callback throws on the background thread, the list goes back to the contents
+ * it had after the batches which completed before the failing one and the exception is rethrown
+ * on the main thread.
+ * <p>
+ * Items must not be modified after they are passed to this list.
+ */
+@SuppressWarnings("unchecked")
+public class AsyncSortedList<T> {
+
+    private static ExecutorService sBackgroundExecutor;
+
+    private final Class<T> mTClass;
+    private final SortedList.Callback<T> mCallback;
+    private final Executor mMainThreadExecutor;
+    private final Executor mBackgroundExecutor;
+
+    /**
+     * Only accessed on the background executor.
+     */
+    private SortedList<T> mWorkerList;
+    private T[] mPublished;
+    private final OpRecorder mRecorder = new OpRecorder();
+    private final BatchingListUpdateCallback mBatchingRecorder =
+            new BatchingListUpdateCallback(mRecorder);
+
+    private final Object mLock = new Object();
+    private final ArrayList<Batch<T>> mQueue = new ArrayList<Batch<T>>();
+    private boolean mDrainScheduled = false;
+
+    /**
+     * Latest published contents, only accessed on the main thread.
+     */
+    private T[] mSnapshot;
+
+    private final Runnable mDrainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * Creates an AsyncSortedList which applies batches on a shared background thread and
+     * publishes results to the main thread.
+     *
+     * @param klass    The class of the contents of the list.
+     * @param callback The callback that controls the behavior of the list.
+     */
+    public AsyncSortedList(Class<T> klass, SortedList.Callback<T> callback) {
+        this(klass, callback, new MainThreadExecutor(), getBackgroundExecutor());
+    }
+
+    /**
+     * Creates an AsyncSortedList with the given executors.
+     *
+     * @param klass              The class of the contents of the list.
+     * @param callback           The callback that controls the behavior of the list.
+     * @param mainThreadExecutor The executor which runs on the thread that reads the list and
+     *                           receives the change events.
+     * @param backgroundExecutor The executor which applies the batches. Batches of a list are
+     *                           never applied concurrently, even if the executor has multiple
+     *                           threads.
+     */
+    public AsyncSortedList(Class<T> klass, SortedList.Callback<T> callback,
+            Executor mainThreadExecutor, Executor backgroundExecutor) {
+        mTClass = klass;
+        mCallback = callback;
+        mMainThreadExecutor = mainThreadExecutor;
+        mBackgroundExecutor = backgroundExecutor;
+        mWorkerList = new SortedList<T>(klass, new WorkerCallback());
+        mSnapshot = (T[]) Array.newInstance(klass, 0);
+        mPublished = mSnapshot;
+    }
+
+    /**
+     * Returns the number of items in the latest published snapshot. Must be called on the main
+     * thread.
+     *
+     * @return The number of items in the list.
+     */
+    public int size() {
+        return mSnapshot.length;
+    }
+
+    /**
+     * Returns the item at the given index in the latest published snapshot. Must be called on
+     * the main thread.
+     *
+     * @param index The index of the item.
+     * @return The item at the given index.
+     * @throws IndexOutOfBoundsException if the index is not in the snapshot.
+     */
+    public T get(int index) throws IndexOutOfBoundsException {
+        if (index < 0 || index >= mSnapshot.length) {
+            throw new IndexOutOfBoundsException("Asked to get item at " + index + " but size is "
+                    + mSnapshot.length);
+        }
+        return mSnapshot[index];
+    }
+
+    /**
+     * Queues a batch which will be applied to the list on the background thread.
+     * <p>
+     * This method can be called from any thread. Batches are applied in the order they are
+     * queued.
+     *
+     * @param batch The batch to apply.
+     */
+    public void submit(Batch<T> batch) {
+        synchronized (mLock) {
+            mQueue.add(batch);
+            if (mDrainScheduled) {
+                return;
+            }
+            mDrainScheduled = true;
+        }
+        mBackgroundExecutor.execute(mDrainRunnable);
+    }
+
+    /**
+     * Queues the given items to be added to the list.
+     *
+     * @param items The items to add. The collection is copied before this method returns.
+     * @see SortedList#addAll(Object[], boolean)
+     */
+    public void addAll(Collection<T> items) {
+        final T[] copy = items.toArray((T[]) Array.newInstance(mTClass, items.size()));
+        submit(new Batch<T>() {
+            @Override
+            public void apply(SortedList<T> list) {
+                list.addAll(copy, true);
+            }
+        });
+    }
+
+    /**
+     * Queues the given items to be removed from the list.
+     *
+     * @param items The items to remove. The collection is copied before this method returns.
+     * @see SortedList#remove(Object)
+     */
+    public void removeAll(Collection<T> items) {
+        final T[] copy = items.toArray((T[]) Array.newInstance(mTClass, items.size()));
+        submit(new Batch<T>() {
+            @Override
+            public void apply(SortedList<T> list) {
+                for (T item : copy) {
+                    list.remove(item);
+                }
+            }
+        });
+    }
+
+    /**
+     * Applies every queued batch, then publishes the result. Runs on the background executor.
+     */
+    private void drain() {
+        final ArrayList<Batch<T>> batches;
+        synchronized (mLock) {
+            batches = new ArrayList<Batch<T>>(mQueue);
+            mQueue.clear();
+        }
+        RuntimeException failure = null;
+        boolean published = false;
+        try {
+            final int count = batches.size();
+            int applied = 0;
+            try {
+                for (; applied < count; applied++) {
+                    batches.get(applied).apply(mWorkerList);
+                }
+            } catch (RuntimeException e) {
+                // The failing batch may have left the list half modified. Go back to the
+                // published contents and apply the batches which completed before it again.
+                failure = e;
+                resetWorkerList();
+                for (int i = 0; i < applied; i++) {
+                    batches.get(i).apply(mWorkerList);
+                }
+            }
+            publishWorkerList();
+            published = true;
+        } catch (RuntimeException e) {
+            if (failure == null) {
+                failure = e;
+            }
+        } finally {
+            if (!published) {
+                resetWorkerList();
+            }
+            if (failure != null) {
+                final RuntimeException exception = failure;
+                mMainThreadExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        throw exception;
+                    }
+                });
+            }
+            scheduleNextDrain();
+        }
+    }
+
+    /**
+     * Copies the worker list into a new snapshot and hands it to the main thread together with
+     * the change events recorded since the last snapshot.
+     */
+    private void publishWorkerList() {
+        mBatchingRecorder.dispatchLastEvent();
+        final int size = mWorkerList.size();
+        final T[] snapshot = (T[]) Array.newInstance(mTClass, size);
+        for (int i = 0; i < size; i++) {
+            snapshot[i] = mWorkerList.get(i);
+        }
+        final int[] ops = mRecorder.drainOps();
+        mPublished = snapshot;
+        mMainThreadExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                publish(snapshot, ops);
+            }
+        });
+    }
+
+    /**
+     * Replaces the worker list with the last published contents and drops the change events
+     * which have not been published.
+     */
+    private void resetWorkerList() {
+        mWorkerList = new SortedList<T>(mTClass, new WorkerCallback());
+        final int size = mPublished.length;
+        if (size > 0) {
+            final T[] contents = (T[]) Array.newInstance(mTClass, size);
+            System.arraycopy(mPublished, 0, contents, 0, size);
+            mWorkerList.addAll(contents, true);
+        }
+        mBatchingRecorder.dispatchLastEvent();
+        mRecorder.drainOps();
+    }
+
+    private void scheduleNextDrain() {
+        synchronized (mLock) {
+            if (mQueue.isEmpty()) {
+                mDrainScheduled = false;
+                return;
+            }
+        }
+        // more batches arrived while applying, keep the executor thread serial
+        mBackgroundExecutor.execute(mDrainRunnable);
+    }
+
+    private void publish(T[] snapshot, int[] ops) {
+        mSnapshot = snapshot;
+        for (int i = 0; i < ops.length; i += OpRecorder.OP_SIZE) {
+            final int position = ops[i + 1];
+            final int value = ops[i + 2];
+            switch (ops[i]) {
+                case OpRecorder.TYPE_ADD:
+                    mCallback.onInserted(position, value);
+                    break;
+                case OpRecorder.TYPE_REMOVE:
+                    mCallback.onRemoved(position, value);
+                    break;
+                case OpRecorder.TYPE_MOVE:
+                    mCallback.onMoved(position, value);
+                    break;
+                case OpRecorder.TYPE_CHANGE:
+                    mCallback.onChanged(position, value);
+                    break;
+            }
+        }
+    }
+
+    private static synchronized Executor getBackgroundExecutor() {
+        if (sBackgroundExecutor == null) {
+            sBackgroundExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "AsyncSortedList");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sBackgroundExecutor;
+    }
+
+    /**
+     * A set of mutations applied to the private copy of the list on the background thread.
+     */
+    public interface Batch<T> {
+        /**
+         * Applies the mutations. Called on the background thread; the list must not be kept
+         * after this method returns.
+         *
+         * @param list The list to modify.
+         */
+        void apply(SortedList<T> list);
+    }
+
+    /**
+     * Forwards item comparisons to the user callback and records the change events.
+     */
+    private class WorkerCallback extends SortedList.Callback<T> {
+        @Override
+        public int compare(T o1, T o2) {
+            return mCallback.compare(o1, o2);
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            mBatchingRecorder.onInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            mBatchingRecorder.onRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            mBatchingRecorder.onMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            mBatchingRecorder.onChanged(position, count, null);
+        }
+
+        @Override
+        public boolean areContentsTheSame(T oldItem, T newItem) {
+            return mCallback.areContentsTheSame(oldItem, newItem);
+        }
+
+        @Override
+        public boolean areItemsTheSame(T item1, T item2) {
+            return mCallback.areItemsTheSame(item1, item2);
+        }
+    }
+
+    /**
+     * Stores change events as (type, position, count or target position) triples.
+     */
+    private static class OpRecorder implements ListUpdateCallback {
+        static final int TYPE_ADD = 0;
+        static final int TYPE_REMOVE = 1;
+        static final int TYPE_MOVE = 2;
+        static final int TYPE_CHANGE = 3;
+        static final int OP_SIZE = 3;
+
+        private int[] mOps = new int[OP_SIZE * 4];
+        private int mSize = 0;
+
+        @Override
+        public void onInserted(int position, int count) {
+            record(TYPE_ADD, position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            record(TYPE_REMOVE, position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            record(TYPE_MOVE, fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            record(TYPE_CHANGE, position, count);
+        }
+
+        private void record(int type, int position, int value) {
+            if (mSize + OP_SIZE > mOps.length) {
+                final int[] ops = new int[mOps.length * 2];
+                System.arraycopy(mOps, 0, ops, 0, mSize);
+                mOps = ops;
+            }
+            mOps[mSize++] = type;
+            mOps[mSize++] = position;
+            mOps[mSize++] = value;
+        }
+
+        int[] drainOps() {
+            final int[] ops = new int[mSize];
+            System.arraycopy(mOps, 0, ops, 0, mSize);
+            mSize = 0;
+            return ops;
+        }
+    }
+
+    private static class MainThreadExecutor implements Executor {
+        private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void execute(Runnable command) {
+            mHandler.post(command);
+        }
+    }
+}
@@ -17,6 +17,9 @@
 package android.support.v7.util;
 
 import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 
 /**
  * A Sorted list implementation that can keep items in order and also notify for changes in the
@@ -45,6 +48,18 @@ public class SortedList<T> {
     private static final int LOOKUP = 1 << 2;
     T[] mData;
 
+    /**
+     * A copy of the previous list contents used during the merge phase of addAll.
+     */
+    private T[] mOldData;
+    private int mOldDataStart;
+    private int mOldDataSize;
+
+    /**
+     * The size of the valid portion of mData during the merge phase of addAll.
+     */
+    private int mMergedSize;
+
     /**
      * The callback instance that controls the behavior of the SortedList and get notified when
      * changes happen.
@@ -114,9 +129,251 @@ public class SortedList<T> {
      * @see {@link Callback#areContentsTheSame(Object, Object)}}
      */
     public int add(T item) {
+        throwIfMerging();
         return add(item, true);
     }
 
+    /**
+     * Adds the given items to the list. Equivalent to calling {@link SortedList#add} in a loop,
+     * except the callback events may be in a different order/granularity since addAll can batch
+     * them for better performance.
+     * <p>
+     * The items are sorted once and merged into the list in a single pass, so adding N items to a
+     * list of M items takes <code>O(N log N + M)</code> time instead of the
+     * <code>O(N * M)</code> array copies the equivalent loop of {@link #add(Object)} calls needs.
+     * <p>
+     * If allowed, may modify the input array and even take the ownership over it in order
+     * to avoid extra memory allocation during sorting and deduplication.
+     *
+     * @param items Array of items to be added into the list.
+     * @param mayModifyInput If true, SortedList is allowed to modify the input.
+     * @see SortedList#addAll(Object[] items)
+     */
+    public void addAll(T[] items, boolean mayModifyInput) {
+        throwIfMerging();
+        if (items.length == 0) {
+            return;
+        }
+        if (mayModifyInput) {
+            addAllInternal(items);
+        } else {
+            T[] copy = (T[]) Array.newInstance(mTClass, items.length);
+            System.arraycopy(items, 0, copy, 0, items.length);
+            addAllInternal(copy);
+        }
+    }
+
+    /**
+     * Adds the given items to the list. Does not modify the input.
+     *
+     * @param items Array of items to be added into the list.
+     * @see SortedList#addAll(Object[] items, boolean mayModifyInput)
+     */
+    public void addAll(T... items) {
+        addAll(items, false);
+    }
+
+    /**
+     * Adds the given items to the list. Does not modify the input.
+     *
+     * @param items Collection of items to be added into the list.
+     * @see SortedList#addAll(Object[] items, boolean mayModifyInput)
+     */
+    public void addAll(Collection<T> items) {
+        T[] copy = (T[]) Array.newInstance(mTClass, items.size());
+        addAll(items.toArray(copy), true);
+    }
+
+    private void addAllInternal(T[] newItems) {
+        final boolean forceBatchedUpdates = !(mCallback instanceof BatchedCallback);
+        if (forceBatchedUpdates) {
+            beginBatchedUpdates();
+        }
+
+        mOldData = mData;
+        mOldDataStart = 0;
+        mOldDataSize = mSize;
+
+        Arrays.sort(newItems, mCallback);  // Arrays.sort is stable.
+
+        final int newSize = deduplicate(newItems);
+        if (mSize == 0) {
+            // clear the references left behind by deduplication
+            Arrays.fill(newItems, newSize, newItems.length, null);
+            mData = newItems;
+            mSize = newSize;
+            mMergedSize = newSize;
+            mCallback.onInserted(0, newSize);
+        } else {
+            merge(newItems, newSize);
+        }
+
+        mOldData = null;
+
+        if (forceBatchedUpdates) {
+            endBatchedUpdates();
+        }
+    }
+
+    /**
+     * Remove duplicate items, leaving only the last item from each group of "same" items.
+     * Move the remaining items to the beginning of the array.
+     *
+     * @return Number of deduplicated items at the beginning of the array.
+     */
+    private int deduplicate(T[] items) {
+        if (items.length == 0) {
+            throw new IllegalArgumentException("Input array must be non-empty");
+        }
+
+        // Keep track of the range of equal items at the end of the output.
+        // Start with the range containing just the first item.
+        int rangeStart = 0;
+        int rangeEnd = 1;
+
+        for (int i = 1; i < items.length; ++i) {
+            T currentItem = items[i];
+
+            int compare = mCallback.compare(items[rangeStart], currentItem);
+            if (compare > 0) {
+                throw new IllegalArgumentException("Input must be sorted in ascending order.");
+            }
+
+            if (compare == 0) {
+                // The range of equal items continues, update it.
+                final int sameItemPos = findSameItem(currentItem, items, rangeStart, rangeEnd);
+                if (sameItemPos != INVALID_POSITION) {
+                    // Replace the duplicate item.
+                    items[sameItemPos] = currentItem;
+                } else {
+                    // Expand the range.
+                    if (rangeEnd != i) {  // Avoid redundant copy.
+                        items[rangeEnd] = currentItem;
+                    }
+                    rangeEnd++;
+                }
+            } else {
+                // The range has ended. Reset it to contain just the current item.
+                if (rangeEnd != i) {  // Avoid redundant copy.
+                    items[rangeEnd] = currentItem;
+                }
+                rangeStart = rangeEnd++;
+            }
+        }
+        return rangeEnd;
+    }
+
+    private int findSameItem(T item, T[] items, int from, int to) {
+        for (int pos = from; pos < to; pos++) {
+            if (mCallback.areItemsTheSame(items[pos], item)) {
+                return pos;
+            }
+        }
+        return INVALID_POSITION;
+    }
+
+    /**
+     * This method assumes that newItems are sorted and deduplicated.
+     */
+    private void merge(T[] newData, int newDataSize) {
+        final int mergedCapacity = mSize + newDataSize + CAPACITY_GROWTH;
+        mData = (T[]) Array.newInstance(mTClass, mergedCapacity);
+        mMergedSize = 0;
+
+        int newDataStart = 0;
+        while (mOldDataStart < mOldDataSize || newDataStart < newDataSize) {
+            if (mOldDataStart == mOldDataSize) {
+                // No more old items, copy the remaining new items.
+                int itemCount = newDataSize - newDataStart;
+                System.arraycopy(newData, newDataStart, mData, mMergedSize, itemCount);
+                mMergedSize += itemCount;
+                mSize += itemCount;
+                mCallback.onInserted(mMergedSize - itemCount, itemCount);
+                break;
+            }
+
+            if (newDataStart == newDataSize) {
+                // No more new items, copy the remaining old items.
+                int itemCount = mOldDataSize - mOldDataStart;
+                System.arraycopy(mOldData, mOldDataStart, mData, mMergedSize, itemCount);
+                mMergedSize += itemCount;
+                break;
+            }
+
+            T oldItem = mOldData[mOldDataStart];
+            T newItem = newData[newDataStart];
+            int compare = mCallback.compare(oldItem, newItem);
+            if (compare > 0) {
+                // New item is lower, output it.
+                mData[mMergedSize++] = newItem;
+                mSize++;
+                newDataStart++;
+                mCallback.onInserted(mMergedSize - 1, 1);
+            } else if (compare == 0) {
+                // Several old and new items may share this sort order, merge all of them.
+                newDataStart = mergeEqualRun(newData, newDataStart, newDataSize);
+            } else {
+                // Old item is lower, output it.
+                mData[mMergedSize++] = oldItem;
+                mOldDataStart++;
+            }
+        }
+    }
+
+    /**
+     * Merges the old items which compare equal to the new item at newDataStart with the new
+     * items of the same sort order. Each old item is replaced by the new item which is the same
+     * as it, if any, and the remaining new items are inserted after the old ones.
+     *
+     * @return The position of the first new item with a different sort order.
+     */
+    private int mergeEqualRun(T[] newData, int newDataStart, int newDataSize) {
+        final T first = newData[newDataStart];
+        int newRunEnd = newDataStart + 1;
+        while (newRunEnd < newDataSize && mCallback.compare(first, newData[newRunEnd]) == 0) {
+            newRunEnd++;
+        }
+        while (mOldDataStart < mOldDataSize
+                && mCallback.compare(mOldData[mOldDataStart], first) == 0) {
+            final T oldItem = mOldData[mOldDataStart];
+            int samePos = INVALID_POSITION;
+            for (int pos = newDataStart; pos < newRunEnd; pos++) {
+                if (newData[pos] != null && mCallback.areItemsTheSame(oldItem, newData[pos])) {
+                    samePos = pos;
+                    break;
+                }
+            }
+            mOldDataStart++;
+            if (samePos == INVALID_POSITION) {
+                mData[mMergedSize++] = oldItem;
+            } else {
+                // Items are the same. Output the new item, but consume both.
+                final T newItem = newData[samePos];
+                newData[samePos] = null;
+                mData[mMergedSize++] = newItem;
+                if (!mCallback.areContentsTheSame(oldItem, newItem)) {
+                    mCallback.onChanged(mMergedSize - 1, 1);
+                }
+            }
+        }
+        for (int pos = newDataStart; pos < newRunEnd; pos++) {
+            final T newItem = newData[pos];
+            if (newItem != null) {
+                newData[pos] = null;
+                mData[mMergedSize++] = newItem;
+                mSize++;
+                mCallback.onInserted(mMergedSize - 1, 1);
+            }
+        }
+        return newRunEnd;
+    }
+
+    private void throwIfMerging() {
+        if (mOldData != null) {
+            throw new IllegalStateException("Cannot call this method from within addAll");
+        }
+    }
+
     /**
      * Batches adapter updates that happen between calling this method until calling
      * {@link #endBatchedUpdates()}. For example, if you add multiple items in a loop
@@ -203,6 +460,7 @@ public class SortedList<T> {
      * @return True if item is removed, false if item cannot be found in the list.
      */
     public boolean remove(T item) {
+        throwIfMerging();
         return remove(item, true);
     }
 
@@ -213,6 +471,7 @@ public class SortedList<T> {
      * @return The removed item.
      */
     public T removeItemAt(int index) {
+        throwIfMerging();
         T item = get(index);
         removeItemAtIndex(index, true);
         return item;
@@ -257,6 +516,7 @@ public class SortedList<T> {
      * @see #add(Object)
      */
     public void updateItemAt(int index, T item) {
+        throwIfMerging();
         final T existing = get(index);
         // assume changed if the same object is given back
         boolean contentsChanged = existing == item || !mCallback.areContentsTheSame(existing, item);
@@ -310,6 +570,7 @@ public class SortedList<T> {
      * @see #add(Object)
      */
     public void recalculatePositionOfItemAt(int index) {
+        throwIfMerging();
         // TODO can be improved
         final T item = get(index);
         removeItemAtIndex(index, false);
@@ -332,6 +593,13 @@ public class SortedList<T> {
             throw new IndexOutOfBoundsException("Asked to get item at " + index + " but size is "
                     + mSize);
         }
+        if (mOldData != null) {
+            // The call is made from a callback during addAll().
+            // Data is split across mData and mOldData.
+            if (index >= mMergedSize) {
+                return mOldData[index - mMergedSize + mOldDataStart];
+            }
+        }
         return mData[index];
     }
 
@@ -343,15 +611,28 @@ public class SortedList<T> {
      * list.
      */
     public int indexOf(T item) {
+        if (mOldData != null) {
+            int index = findIndexOf(item, mData, 0, mMergedSize, LOOKUP);
+            if (index != INVALID_POSITION) {
+                return index;
+            }
+            index = findIndexOf(item, mOldData, mOldDataStart, mOldDataSize, LOOKUP);
+            if (index != INVALID_POSITION) {
+                return index - mOldDataStart + mMergedSize;
+            }
+            return INVALID_POSITION;
+        }
         return findIndexOf(item, LOOKUP);
     }
 
     private int findIndexOf(T item, int reason) {
-        int left = 0;
-        int right = mSize;
+        return findIndexOf(item, mData, 0, mSize, reason);
+    }
+
+    private int findIndexOf(T item, T[] data, int left, int right, int reason) {
         while (left < right) {
             final int middle = (left + right) / 2;
-            T myItem = mData[middle];
+            T myItem = data[middle];
             final int cmp = mCallback.compare(myItem, item);
             if (cmp < 0) {
                 left = middle + 1;
@@ -359,7 +640,7 @@ public class SortedList<T> {
                 if (mCallback.areItemsTheSame(myItem, item)) {
                     return middle;
                 } else {
-                    int exact = linearEqualitySearch(item, middle, left, right);
+                    int exact = linearEqualitySearch(item, data, middle, left, right);
                     if (reason == INSERTION) {
                         return exact == INVALID_POSITION ? middle : exact;
                     } else {
@@ -373,10 +654,10 @@ public class SortedList<T> {
         return reason == INSERTION ? left : INVALID_POSITION;
     }
 
-    private int linearEqualitySearch(T item, int middle, int left, int right) {
+    private int linearEqualitySearch(T item, T[] data, int middle, int left, int right) {
         // go left
         for (int next = middle - 1; next >= left; next--) {
-            T nextItem = mData[next];
+            T nextItem = data[next];
             int cmp = mCallback.compare(nextItem, item);
             if (cmp != 0) {
                 break;
@@ -386,7 +667,7 @@ public class SortedList<T> {
             }
         }
         for (int next = middle + 1; next < right; next++) {
-            T nextItem = mData[next];
+            T nextItem = data[next];
             int cmp = mCallback.compare(nextItem, item);
             if (cmp != 0) {
                 break;
@@ -426,7 +707,7 @@ public class SortedList<T> {
      * SortedList calls the callback methods on this class to notify changes about the underlying
      * data.
      */
-    public static abstract class Callback<T2> {
+    public static abstract class Callback<T2> implements Comparator<T2> {
 
         /**
          * Similar to {@link java.util.Comparator#compare(Object, Object)}, should compare two and
@@ -438,6 +719,7 @@ public class SortedList<T> {
          * first argument is less than, equal to, or greater than the
          * second.
          */
+        @Override
         abstract public int compare(T2 o1, T2 o2);
 
         /**
@@ -0,0 +1,493 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.support.v7.widget;
+
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.RecyclerView.ViewHolder;
+import android.view.View;
+import android.view.ViewParent;
+import android.view.animation.AnimationUtils;
+
+import java.util.Arrays;
+
+/**
+ * An {@link RecyclerView.ItemAnimator} which runs the same remove, add, move and change
+ * animations as {@link DefaultItemAnimator} but drives all of them from a single callback per
+ * animation frame.
+ * <p>
+ * DefaultItemAnimator starts a separate view property animation, with its own listener and
+ * bookkeeping objects, for every animated ViewHolder. This class instead keeps the state of each
+ * running animation in primitive arrays and updates all of them in one pass per frame, which
+ * avoids allocations and animator overhead when a large number of items is animated at once,
+ * e.g. when a list is re-sorted.
+ *
+ * @see RecyclerView#setItemAnimator(RecyclerView.ItemAnimator)
+ */
+public class BatchedItemAnimator extends RecyclerView.ItemAnimator {
+
+    private static final int TYPE_REMOVE = 0;
+    private static final int TYPE_ADD = 1;
+    private static final int TYPE_MOVE = 2;
+    private static final int TYPE_CHANGE_OLD = 3;
+    private static final int TYPE_CHANGE_NEW = 4;
+
+    /**
+     * Start time of animations which are added but not yet started via
+     * {@link #runPendingAnimations()}.
+     */
+    private static final long PENDING = -1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Per animation state, only the first mCount entries are valid.
+    private ViewHolder[] mHolders = new ViewHolder[INITIAL_CAPACITY];
+    private int[] mTypes = new int[INITIAL_CAPACITY];
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    private boolean[] mStarted = new boolean[INITIAL_CAPACITY];
+    private float[] mFromTranslationX = new float[INITIAL_CAPACITY];
+    private float[] mFromTranslationY = new float[INITIAL_CAPACITY];
+    private float[] mFromAlpha = new float[INITIAL_CAPACITY];
+    private float[] mToTranslationX = new float[INITIAL_CAPACITY];
+    private float[] mToTranslationY = new float[INITIAL_CAPACITY];
+    private float[] mToAlpha = new float[INITIAL_CAPACITY];
+    private int mCount = 0;
+
+    // Holders and types of animations which have ended but whose callbacks are not dispatched
+    // yet. Callbacks are dispatched after the state arrays are compacted so that listeners can
+    // safely call back into the animator. Re-entrant calls append to and dispatch from the end.
+    private ViewHolder[] mFinishedHolders = new ViewHolder[INITIAL_CAPACITY];
+    private int[] mFinishedTypes = new int[INITIAL_CAPACITY];
+    private int mFinishedCount = 0;
+
+    /**
+     * View used to schedule the frame callback. It is the parent of the animated views, which
+     * stays attached for as long as the animations run.
+     */
+    private View mHost;
+    private boolean mFrameScheduled = false;
+
+    private final Runnable mFrameCallback = new Runnable() {
+        @Override
+        public void run() {
+            mFrameScheduled = false;
+            doFrame(AnimationUtils.currentAnimationTimeMillis());
+        }
+    };
+
+    @Override
+    public void runPendingAnimations() {
+        boolean removalsPending = false;
+        boolean movesPending = false;
+        boolean changesPending = false;
+        boolean additionsPending = false;
+        for (int i = 0; i < mCount; i++) {
+            if (mStartTimes[i] != PENDING) {
+                continue;
+            }
+            switch (mTypes[i]) {
+                case TYPE_REMOVE:
+                    removalsPending = true;
+                    break;
+                case TYPE_ADD:
+                    additionsPending = true;
+                    break;
+                case TYPE_MOVE:
+                    movesPending = true;
+                    break;
+                default:
+                    changesPending = true;
+                    break;
+            }
+        }
+        if (!removalsPending && !movesPending && !additionsPending && !changesPending) {
+            // nothing to animate
+            return;
+        }
+        // Same ordering as DefaultItemAnimator: removals first, then moves and changes in
+        // parallel and finally additions.
+        final long removeDelay = removalsPending ? getRemoveDuration() : 0;
+        final long addDelay = removeDelay + Math.max(movesPending ? getMoveDuration() : 0,
+                changesPending ? getChangeDuration() : 0);
+        final long now = AnimationUtils.currentAnimationTimeMillis();
+        for (int i = 0; i < mCount; i++) {
+            if (mStartTimes[i] != PENDING) {
+                continue;
+            }
+            switch (mTypes[i]) {
+                case TYPE_REMOVE:
+                    mStartTimes[i] = now;
+                    mDurations[i] = getRemoveDuration();
+                    break;
+                case TYPE_ADD:
+                    mStartTimes[i] = now + addDelay;
+                    mDurations[i] = getAddDuration();
+                    break;
+                case TYPE_MOVE:
+                    mStartTimes[i] = now + removeDelay;
+                    mDurations[i] = getMoveDuration();
+                    break;
+                default:
+                    mStartTimes[i] = now + removeDelay;
+                    mDurations[i] = getChangeDuration();
+                    break;
+            }
+            if (mHost == null) {
+                final View view = mHolders[i].itemView;
+                final ViewParent parent = view.getParent();
+                mHost = parent instanceof View ? (View) parent : view;
+            }
+        }
+        doFrame(now);
+    }
+
+    @Override
+    public boolean animateRemove(ViewHolder holder) {
+        endAnimation(holder);
+        addAnimation(holder, TYPE_REMOVE, 0, 0, 0);
+        return true;
+    }
+
+    @Override
+    public boolean animateAdd(ViewHolder holder) {
+        endAnimation(holder);
+        ViewCompat.setAlpha(holder.itemView, 0);
+        addAnimation(holder, TYPE_ADD, 0, 0, 1);
+        return true;
+    }
+
+    @Override
+    public boolean animateMove(ViewHolder holder, int fromX, int fromY, int toX, int toY) {
+        final View view = holder.itemView;
+        fromX += ViewCompat.getTranslationX(view);
+        fromY += ViewCompat.getTranslationY(view);
+        endAnimation(holder);
+        final int deltaX = toX - fromX;
+        final int deltaY = toY - fromY;
+        if (deltaX == 0 && deltaY == 0) {
+            dispatchMoveFinished(holder);
+            return false;
+        }
+        if (deltaX != 0) {
+            ViewCompat.setTranslationX(view, -deltaX);
+        }
+        if (deltaY != 0) {
+            ViewCompat.setTranslationY(view, -deltaY);
+        }
+        addAnimation(holder, TYPE_MOVE, 0, 0, 1);
+        return true;
+    }
+
+    @Override
+    public boolean animateChange(ViewHolder oldHolder, ViewHolder newHolder,
+            int fromX, int fromY, int toX, int toY) {
+        final float prevTranslationX = ViewCompat.getTranslationX(oldHolder.itemView);
+        final float prevTranslationY = ViewCompat.getTranslationY(oldHolder.itemView);
+        final float prevAlpha = ViewCompat.getAlpha(oldHolder.itemView);
+        endAnimation(oldHolder);
+        final int deltaX = (int) (toX - fromX - prevTranslationX);
+        final int deltaY = (int) (toY - fromY - prevTranslationY);
+        // recover prev translation state after ending animation
+        ViewCompat.setTranslationX(oldHolder.itemView, prevTranslationX);
+        ViewCompat.setTranslationY(oldHolder.itemView, prevTranslationY);
+        ViewCompat.setAlpha(oldHolder.itemView, prevAlpha);
+        addAnimation(oldHolder, TYPE_CHANGE_OLD, toX - fromX, toY - fromY, 0);
+        if (newHolder != null && newHolder.itemView != null) {
+            // carry over translation values
+            endAnimation(newHolder);
+            ViewCompat.setTranslationX(newHolder.itemView, -deltaX);
+            ViewCompat.setTranslationY(newHolder.itemView, -deltaY);
+            ViewCompat.setAlpha(newHolder.itemView, 0);
+            addAnimation(newHolder, TYPE_CHANGE_NEW, 0, 0, 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void endAnimation(ViewHolder item) {
+        final int finishedStart = mFinishedCount;
+        int write = 0;
+        for (int read = 0; read < mCount; read++) {
+            if (mHolders[read] == item) {
+                addFinished(read);
+            } else {
+                copyAnimation(read, write++);
+            }
+        }
+        clearAnimations(write);
+        dispatchFinished(finishedStart);
+        dispatchFinishedWhenDone();
+    }
+
+    @Override
+    public void endAnimations() {
+        if (mCount == 0) {
+            return;
+        }
+        final int finishedStart = mFinishedCount;
+        for (int i = 0; i < mCount; i++) {
+            addFinished(i);
+        }
+        clearAnimations(0);
+        dispatchFinished(finishedStart);
+        dispatchAnimationsFinished();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mCount > 0;
+    }
+
+    private void addAnimation(ViewHolder holder, int type, float toTranslationX,
+            float toTranslationY, float toAlpha) {
+        if (mCount == mHolders.length) {
+            grow();
+        }
+        final int index = mCount++;
+        mHolders[index] = holder;
+        mTypes[index] = type;
+        mStartTimes[index] = PENDING;
+        mDurations[index] = 0;
+        mStarted[index] = false;
+        mToTranslationX[index] = toTranslationX;
+        mToTranslationY[index] = toTranslationY;
+        mToAlpha[index] = toAlpha;
+    }
+
+    private void grow() {
+        final int size = mHolders.length * 2;
+        final ViewHolder[] holders = new ViewHolder[size];
+        System.arraycopy(mHolders, 0, holders, 0, mCount);
+        mHolders = holders;
+        mTypes = grow(mTypes, mCount, size);
+        mStartTimes = grow(mStartTimes, mCount, size);
+        mDurations = grow(mDurations, mCount, size);
+        final boolean[] started = new boolean[size];
+        System.arraycopy(mStarted, 0, started, 0, mCount);
+        mStarted = started;
+        mFromTranslationX = grow(mFromTranslationX, mCount, size);
+        mFromTranslationY = grow(mFromTranslationY, mCount, size);
+        mFromAlpha = grow(mFromAlpha, mCount, size);
+        mToTranslationX = grow(mToTranslationX, mCount, size);
+        mToTranslationY = grow(mToTranslationY, mCount, size);
+        mToAlpha = grow(mToAlpha, mCount, size);
+    }
+
+    private static int[] grow(int[] array, int count, int size) {
+        final int[] result = new int[size];
+        System.arraycopy(array, 0, result, 0, count);
+        return result;
+    }
+
+    private static long[] grow(long[] array, int count, int size) {
+        final long[] result = new long[size];
+        System.arraycopy(array, 0, result, 0, count);
+        return result;
+    }
+
+    private static float[] grow(float[] array, int count, int size) {
+        final float[] result = new float[size];
+        System.arraycopy(array, 0, result, 0, count);
+        return result;
+    }
+
+    private void copyAnimation(int from, int to) {
+        if (from == to) {
+            return;
+        }
+        mHolders[to] = mHolders[from];
+        mTypes[to] = mTypes[from];
+        mStartTimes[to] = mStartTimes[from];
+        mDurations[to] = mDurations[from];
+        mStarted[to] = mStarted[from];
+        mFromTranslationX[to] = mFromTranslationX[from];
+        mFromTranslationY[to] = mFromTranslationY[from];
+        mFromAlpha[to] = mFromAlpha[from];
+        mToTranslationX[to] = mToTranslationX[from];
+        mToTranslationY[to] = mToTranslationY[from];
+        mToAlpha[to] = mToAlpha[from];
+    }
+
+    /**
+     * Drops all animations at or after the given index.
+     */
+    private void clearAnimations(int count) {
+        Arrays.fill(mHolders, count, mCount, null);
+        mCount = count;
+        if (count == 0) {
+            mHost = null;
+        }
+    }
+
+    /**
+     * Resets the view of the animation at the given index to its resting state and records it
+     * to be dispatched by {@link #dispatchFinished(int)}.
+     */
+    private void addFinished(int index) {
+        final View view = mHolders[index].itemView;
+        ViewCompat.setAlpha(view, 1);
+        ViewCompat.setTranslationX(view, 0);
+        ViewCompat.setTranslationY(view, 0);
+        if (mFinishedCount == mFinishedHolders.length) {
+            final int size = mFinishedCount * 2;
+            final ViewHolder[] holders = new ViewHolder[size];
+            System.arraycopy(mFinishedHolders, 0, holders, 0, mFinishedCount);
+            mFinishedHolders = holders;
+            mFinishedTypes = grow(mFinishedTypes, mFinishedCount, size);
+        }
+        mFinishedHolders[mFinishedCount] = mHolders[index];
+        mFinishedTypes[mFinishedCount] = mTypes[index];
+        mFinishedCount++;
+    }
+
+    /**
+     * Dispatches the finish callbacks recorded since the given index.
+     */
+    private void dispatchFinished(int start) {
+        final int end = mFinishedCount;
+        for (int i = start; i < end; i++) {
+            final ViewHolder holder = mFinishedHolders[i];
+            final int type = mFinishedTypes[i];
+            mFinishedHolders[i] = null;
+            switch (type) {
+                case TYPE_REMOVE:
+                    dispatchRemoveFinished(holder);
+                    break;
+                case TYPE_ADD:
+                    dispatchAddFinished(holder);
+                    break;
+                case TYPE_MOVE:
+                    dispatchMoveFinished(holder);
+                    break;
+                case TYPE_CHANGE_OLD:
+                    dispatchChangeFinished(holder, true);
+                    break;
+                case TYPE_CHANGE_NEW:
+                    dispatchChangeFinished(holder, false);
+                    break;
+            }
+        }
+        mFinishedCount = start;
+    }
+
+    private void dispatchStarting(int index) {
+        final ViewHolder holder = mHolders[index];
+        switch (mTypes[index]) {
+            case TYPE_REMOVE:
+                dispatchRemoveStarting(holder);
+                break;
+            case TYPE_ADD:
+                dispatchAddStarting(holder);
+                break;
+            case TYPE_MOVE:
+                dispatchMoveStarting(holder);
+                break;
+            case TYPE_CHANGE_OLD:
+                dispatchChangeStarting(holder, true);
+                break;
+            case TYPE_CHANGE_NEW:
+                dispatchChangeStarting(holder, false);
+                break;
+        }
+    }
+
+    /**
+     * Advances all started animations to the given time, finishes the completed ones and
+     * schedules the next frame if any animation is still running or waiting for its delay.
+     */
+    private void doFrame(long now) {
+        if (mCount == 0) {
+            return;
+        }
+        final int finishedStart = mFinishedCount;
+        boolean hasRunning = false;
+        int write = 0;
+        for (int read = 0; read < mCount; read++) {
+            final long startTime = mStartTimes[read];
+            if (startTime == PENDING) {
+                copyAnimation(read, write++);
+                continue;
+            }
+            hasRunning = true;
+            if (now < startTime) {
+                copyAnimation(read, write++);
+                continue;
+            }
+            final View view = mHolders[read].itemView;
+            if (!mStarted[read]) {
+                // animations start from the current state of the view
+                mStarted[read] = true;
+                mFromTranslationX[read] = ViewCompat.getTranslationX(view);
+                mFromTranslationY[read] = ViewCompat.getTranslationY(view);
+                mFromAlpha[read] = ViewCompat.getAlpha(view);
+                final int type = mTypes[read];
+                if (type == TYPE_REMOVE || type == TYPE_ADD) {
+                    // only alpha is animated
+                    mToTranslationX[read] = mFromTranslationX[read];
+                    mToTranslationY[read] = mFromTranslationY[read];
+                } else if (type == TYPE_MOVE) {
+                    // only translation is animated
+                    mToAlpha[read] = mFromAlpha[read];
+                }
+                dispatchStarting(read);
+            }
+            final long duration = mDurations[read];
+            final long elapsed = now - startTime;
+            if (elapsed >= duration) {
+                addFinished(read);
+                continue;
+            }
+            final float fraction = interpolate((float) elapsed / duration);
+            ViewCompat.setTranslationX(view, lerp(mFromTranslationX[read],
+                    mToTranslationX[read], fraction));
+            ViewCompat.setTranslationY(view, lerp(mFromTranslationY[read],
+                    mToTranslationY[read], fraction));
+            ViewCompat.setAlpha(view, lerp(mFromAlpha[read], mToAlpha[read], fraction));
+            copyAnimation(read, write++);
+        }
+        final View host = mHost;
+        clearAnimations(write);
+        dispatchFinished(finishedStart);
+        if (mCount == 0) {
+            dispatchAnimationsFinished();
+        } else if (hasRunning && !mFrameScheduled) {
+            // pending animations wait for runPendingAnimations, which runs the next frame
+            if (mHost == null) {
+                mHost = host;
+            }
+            mFrameScheduled = true;
+            ViewCompat.postOnAnimation(mHost, mFrameCallback);
+        }
+    }
+
+    private void dispatchFinishedWhenDone() {
+        if (!isRunning()) {
+            dispatchAnimationsFinished();
+        }
+    }
+
+    private static float lerp(float from, float to, float fraction) {
+        return from + (to - from) * fraction;
+    }
+
+    /**
+     * Same curve as {@link android.view.animation.AccelerateDecelerateInterpolator}, which is
+     * the default interpolator of view property animations.
+     */
+    private static float interpolate(float input) {
+        return (float) (Math.cos((input + 1) * Math.PI) / 2.0f) + 0.5f;
+    }
+}
@@ -345,6 +345,10 @@ class ChildHelper {
 
     /**
      * Bitset implementation that provides methods to offset indices.
+     * <p>
+     * Bits are kept in an array of words together with the number of set bits before each word,
+     * so {@link #countOnesBefore(int)} does not need to visit every word. These counts are
+     * recalculated lazily, starting from the first word modified since the last query.
      */
     static class Bucket {
 
@@ -352,115 +356,153 @@ class ChildHelper {
 
         final static long LAST_BIT = 1L << (Long.SIZE - 1);
 
-        long mData = 0;
+        private static final int INITIAL_WORD_COUNT = 4;
 
-        Bucket next;
+        long[] mWords = new long[INITIAL_WORD_COUNT];
+
+        // mOnesBefore[i] is the number of set bits in the words before word i. Only the first
+        // mValidOnesBeforeCount entries are up to date.
+        int[] mOnesBefore = new int[INITIAL_WORD_COUNT + 1];
+
+        int mValidOnesBeforeCount = 0;
+
+        // words starting from mWordsInUse are all 0
+        int mWordsInUse = 0;
 
         void set(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                next.set(index - BITS_PER_WORD);
-            } else {
-                mData |= 1L << index;
+            final int word = index / BITS_PER_WORD;
+            ensureCapacity(word + 1);
+            mWords[word] |= 1L << index;
+            if (word >= mWordsInUse) {
+                mWordsInUse = word + 1;
             }
+            invalidateOnesBefore(word);
         }
 
-        private void ensureNext() {
-            if (next == null) {
-                next = new Bucket();
+        private void ensureCapacity(int wordCount) {
+            if (wordCount <= mWords.length) {
+                return;
+            }
+            final int newLength = Math.max(wordCount, mWords.length * 2);
+            final long[] words = new long[newLength];
+            System.arraycopy(mWords, 0, words, 0, mWordsInUse);
+            mWords = words;
+            final int[] onesBefore = new int[newLength + 1];
+            System.arraycopy(mOnesBefore, 0, onesBefore, 0, mValidOnesBeforeCount);
+            mOnesBefore = onesBefore;
+        }
+
+        private void invalidateOnesBefore(int word) {
+            // counts up to and including this word do not depend on its bits
+            if (mValidOnesBeforeCount > word + 1) {
+                mValidOnesBeforeCount = word + 1;
             }
         }
 
-        void clear(int index) {
-            if (index >= BITS_PER_WORD) {
-                if (next != null) {
-                    next.clear(index - BITS_PER_WORD);
-                }
-            } else {
-                mData &= ~(1L << index);
+        private void updateOnesBefore(int word) {
+            if (mValidOnesBeforeCount == 0) {
+                mOnesBefore[0] = 0;
+                mValidOnesBeforeCount = 1;
+            }
+            for (int i = mValidOnesBeforeCount; i <= word; i++) {
+                mOnesBefore[i] = mOnesBefore[i - 1] + Long.bitCount(mWords[i - 1]);
             }
+            if (mValidOnesBeforeCount <= word) {
+                mValidOnesBeforeCount = word + 1;
+            }
+        }
 
+        void clear(int index) {
+            final int word = index / BITS_PER_WORD;
+            if (word < mWordsInUse) {
+                mWords[word] &= ~(1L << index);
+                invalidateOnesBefore(word);
+            }
         }
 
         boolean get(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                return next.get(index - BITS_PER_WORD);
-            } else {
-                return (mData & (1L << index)) != 0;
-            }
+            final int word = index / BITS_PER_WORD;
+            return word < mWordsInUse && (mWords[word] & (1L << index)) != 0;
         }
 
         void reset() {
-            mData = 0;
-            if (next != null) {
-                next.reset();
+            for (int i = 0; i < mWordsInUse; i++) {
+                mWords[i] = 0;
             }
+            mWordsInUse = 0;
+            mValidOnesBeforeCount = 0;
         }
 
         void insert(int index, boolean value) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                next.insert(index - BITS_PER_WORD, value);
-            } else {
-                final boolean lastBit = (mData & LAST_BIT) != 0;
-                long mask = (1L << index) - 1;
-                final long before = mData & mask;
-                final long after = ((mData & ~mask)) << 1;
-                mData = before | after;
+            final int word = index / BITS_PER_WORD;
+            if (word >= mWordsInUse) {
+                // nothing to shift
                 if (value) {
                     set(index);
-                } else {
-                    clear(index);
-                }
-                if (lastBit || next != null) {
-                    ensureNext();
-                    next.insert(0, lastBit);
                 }
+                return;
+            }
+            if ((mWords[mWordsInUse - 1] & LAST_BIT) != 0) {
+                ensureCapacity(mWordsInUse + 1);
+                mWordsInUse++;
             }
+            // shift the following words by one, carrying the last bit of the previous word
+            for (int i = mWordsInUse - 1; i > word; i--) {
+                mWords[i] = (mWords[i] << 1) | (mWords[i - 1] >>> (BITS_PER_WORD - 1));
+            }
+            final long data = mWords[word];
+            final long mask = (1L << index) - 1;
+            final long before = data & mask;
+            final long after = (data & ~mask) << 1;
+            mWords[word] = value ? before | after | (1L << index) : before | after;
+            invalidateOnesBefore(word);
         }
 
         boolean remove(int index) {
-            if (index >= BITS_PER_WORD) {
-                ensureNext();
-                return next.remove(index - BITS_PER_WORD);
-            } else {
-                long mask = (1L << index);
-                final boolean value = (mData & mask) != 0;
-                mData &= ~mask;
-                mask = mask - 1;
-                final long before = mData & mask;
-                // cannot use >> because it adds one.
-                final long after = Long.rotateRight(mData & ~mask, 1);
-                mData = before | after;
-                if (next != null) {
-                    if (next.get(0)) {
-                        set(BITS_PER_WORD - 1);
-                    }
-                    next.remove(0);
-                }
-                return value;
+            final int word = index / BITS_PER_WORD;
+            if (word >= mWordsInUse) {
+                return false;
             }
+            final long bit = 1L << index;
+            final long data = mWords[word];
+            final boolean value = (data & bit) != 0;
+            final long mask = bit - 1;
+            final long before = data & mask;
+            final long after = (data & ~mask & ~bit) >>> 1;
+            mWords[word] = before | after;
+            // shift the following words by one, carrying their first bit to the previous word
+            final int last = mWordsInUse - 1;
+            for (int i = word; i < last; i++) {
+                mWords[i] |= mWords[i + 1] << (BITS_PER_WORD - 1);
+                mWords[i + 1] >>>= 1;
+            }
+            invalidateOnesBefore(word);
+            return value;
         }
 
         int countOnesBefore(int index) {
-            if (next == null) {
-                if (index >= BITS_PER_WORD) {
-                    return Long.bitCount(mData);
-                }
-                return Long.bitCount(mData & ((1L << index) - 1));
-            }
-            if (index < BITS_PER_WORD) {
-                return Long.bitCount(mData & ((1L << index) - 1));
-            } else {
-                return next.countOnesBefore(index - BITS_PER_WORD) + Long.bitCount(mData);
+            final int word = index / BITS_PER_WORD;
+            if (word >= mWordsInUse) {
+                updateOnesBefore(mWordsInUse);
+                return mOnesBefore[mWordsInUse];
             }
+            updateOnesBefore(word);
+            return mOnesBefore[word] + Long.bitCount(mWords[word] & ((1L << index) - 1));
         }
 
         @Override
         public String toString() {
-            return next == null ? Long.toBinaryString(mData)
-                    : next.toString() + "xx" + Long.toBinaryString(mData);
+            if (mWordsInUse == 0) {
+                return Long.toBinaryString(0);
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (int i = mWordsInUse - 1; i >= 0; i--) {
+                sb.append(Long.toBinaryString(mWords[i]));
+                if (i > 0) {
+                    sb.append("xx");
+                }
+            }
+            return sb.toString();
         }
     }
 
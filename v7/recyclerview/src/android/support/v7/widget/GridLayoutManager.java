@@ -17,10 +17,10 @@ package android.support.v7.widget;
 
 import android.content.Context;
 import android.graphics.Rect;
+import android.support.v4.util.SparseIntArrayCompat;
 import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.util.AttributeSet;
 import android.util.Log;
-import android.util.SparseIntArray;
 import android.view.View;
 import android.view.ViewGroup;
 
@@ -54,8 +54,8 @@ public class GridLayoutManager extends LinearLayoutManager {
      * Temporary array to keep views in layoutChunk method
      */
     View[] mSet;
-    final SparseIntArray mPreLayoutSpanSizeCache = new SparseIntArray();
-    final SparseIntArray mPreLayoutSpanIndexCache = new SparseIntArray();
+    final SparseIntArrayCompat mPreLayoutSpanSizeCache = new SparseIntArrayCompat();
+    final SparseIntArrayCompat mPreLayoutSpanIndexCache = new SparseIntArrayCompat();
     SpanSizeLookup mSpanSizeLookup = new DefaultSpanSizeLookup();
     // re-used variable to acquire decor insets from RecyclerView
     final Rect mDecorInsets = new Rect();
@@ -98,6 +98,19 @@ public class GridLayoutManager extends LinearLayoutManager {
         super.setStackFromEnd(false);
     }
 
+    /**
+     * Uniform item extent is not supported by GridLayoutManager since several items share a
+     * row. Only {@link #NO_UNIFORM_EXTENT} is accepted.
+     */
+    @Override
+    public void setUniformItemExtent(int extent) {
+        if (extent != NO_UNIFORM_EXTENT) {
+            throw new UnsupportedOperationException(
+                    "GridLayoutManager does not support uniform item extent");
+        }
+        super.setUniformItemExtent(NO_UNIFORM_EXTENT);
+    }
+
     @Override
     public int getRowCountForAccessibility(RecyclerView.Recycler recycler,
             RecyclerView.State state) {
@@ -172,29 +185,33 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
     }
 
+    // Span indices and group indices of a position only depend on the items before it, so
+    // adapter changes only invalidate the cached values starting from the first affected position.
+
     @Override
     public void onItemsAdded(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsChanged(RecyclerView recyclerView) {
         mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateSpanGroupIndexCache();
     }
 
     @Override
     public void onItemsRemoved(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsUpdated(RecyclerView recyclerView, int positionStart, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(positionStart);
     }
 
     @Override
     public void onItemsMoved(RecyclerView recyclerView, int from, int to, int itemCount) {
-        mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateCachesFrom(Math.min(from, to));
     }
 
     @Override
@@ -586,6 +603,15 @@ public class GridLayoutManager extends LinearLayoutManager {
         }
         mSpanCount = spanCount;
         mSpanSizeLookup.invalidateSpanIndexCache();
+        mSpanSizeLookup.invalidateSpanGroupIndexCache();
+        if (mRecyclerView != null) {
+            mRecyclerView.mRecycler.updateViewCacheSize();
+        }
+    }
+
+    @Override
+    public int getItemPrefetchCount() {
+        return mSpanCount * super.getItemPrefetchCount();
     }
 
     /**
@@ -597,10 +623,34 @@ public class GridLayoutManager extends LinearLayoutManager {
      */
     public static abstract class SpanSizeLookup {
 
-        final SparseIntArray mSpanIndexCache = new SparseIntArray();
+        /**
+         * Distance between two checkpoints of the span group index cache.
+         */
+        static final int SPAN_GROUP_CHECKPOINT_INTERVAL = 32;
+
+        final SparseIntArrayCompat mSpanIndexCache = new SparseIntArrayCompat();
 
         private boolean mCacheSpanIndices = false;
 
+        private boolean mCacheSpanGroupIndices = false;
+
+        /**
+         * Span offset and span group index before the position
+         * <code>i * SPAN_GROUP_CHECKPOINT_INTERVAL</code> for each checkpoint <code>i</code>.
+         */
+        private int[] mCheckpointSpans;
+        private int[] mCheckpointGroups;
+
+        /**
+         * Number of valid entries in the checkpoint arrays.
+         */
+        private int mCheckpointCount = 0;
+
+        /**
+         * Span count the checkpoints were calculated for.
+         */
+        private int mCheckpointSpanCount = -1;
+
         /**
          * Returns the number of span occupied by the item at <code>position</code>.
          *
@@ -637,6 +687,114 @@ public class GridLayoutManager extends LinearLayoutManager {
             return mCacheSpanIndices;
         }
 
+        /**
+         * Sets whether the results of {@link #getSpanGroupIndex(int, int)} method should be cached
+         * or not. By default these values are not cached.
+         * <p>
+         * When enabled, the default implementations of {@link #getSpanGroupIndex(int, int)} and
+         * {@link #getSpanIndex(int, int)} record the state of their traversal at regular
+         * intervals, so that any later call traverses at most a few dozen items instead of
+         * every item before the position. This makes accessibility row counts and scrolling
+         * far into large grids with mixed span sizes much cheaper. If you are overriding
+         * {@link #getSpanGroupIndex(int, int)}, this setting has no effect on it.
+         *
+         * @param cacheSpanGroupIndices Whether results of getSpanGroupIndex should be cached or
+         *                              not.
+         */
+        public void setSpanGroupIndexCacheEnabled(boolean cacheSpanGroupIndices) {
+            if (!cacheSpanGroupIndices) {
+                invalidateSpanGroupIndexCache();
+            }
+            mCacheSpanGroupIndices = cacheSpanGroupIndices;
+        }
+
+        /**
+         * Clears the span group index cache. GridLayoutManager automatically calls this method
+         * when adapter changes occur.
+         */
+        public void invalidateSpanGroupIndexCache() {
+            mCheckpointCount = 0;
+        }
+
+        /**
+         * Returns whether results of {@link #getSpanGroupIndex(int, int)} method are cached or
+         * not.
+         *
+         * @return True if results of {@link #getSpanGroupIndex(int, int)} are cached.
+         */
+        public boolean isSpanGroupIndexCacheEnabled() {
+            return mCacheSpanGroupIndices;
+        }
+
+        /**
+         * Invalidates the cached span indices and span group indices of the given position and
+         * all positions after it. Values for the positions before it do not depend on the
+         * changed items and stay valid.
+         */
+        void invalidateCachesFrom(int position) {
+            int index = mSpanIndexCache.indexOfKey(position);
+            if (index < 0) {
+                index = ~index;
+            }
+            mSpanIndexCache.removeAtRange(index, mSpanIndexCache.size() - index);
+            // checkpoint i only depends on the items before i * SPAN_GROUP_CHECKPOINT_INTERVAL
+            mCheckpointCount = Math.min(mCheckpointCount,
+                    position / SPAN_GROUP_CHECKPOINT_INTERVAL + 1);
+        }
+
+        /**
+         * Makes sure the checkpoints up to the one right before the given position are
+         * calculated.
+         *
+         * @return The index of the closest checkpoint before or at the given position.
+         */
+        private int ensureCheckpoints(int position, int spanCount) {
+            if (mCheckpointSpanCount != spanCount) {
+                mCheckpointCount = 0;
+                mCheckpointSpanCount = spanCount;
+            }
+            final int target = position / SPAN_GROUP_CHECKPOINT_INTERVAL;
+            if (mCheckpointSpans == null || mCheckpointSpans.length <= target) {
+                final int newLength = Math.max(target + 1,
+                        mCheckpointSpans == null ? 0 : mCheckpointSpans.length * 2);
+                final int[] spans = new int[newLength];
+                final int[] groups = new int[newLength];
+                if (mCheckpointSpans != null) {
+                    System.arraycopy(mCheckpointSpans, 0, spans, 0, mCheckpointCount);
+                    System.arraycopy(mCheckpointGroups, 0, groups, 0, mCheckpointCount);
+                }
+                mCheckpointSpans = spans;
+                mCheckpointGroups = groups;
+            }
+            if (mCheckpointCount == 0) {
+                mCheckpointSpans[0] = 0;
+                mCheckpointGroups[0] = 0;
+                mCheckpointCount = 1;
+            }
+            while (mCheckpointCount <= target) {
+                final int last = mCheckpointCount - 1;
+                int span = mCheckpointSpans[last];
+                int group = mCheckpointGroups[last];
+                final int end = mCheckpointCount * SPAN_GROUP_CHECKPOINT_INTERVAL;
+                for (int i = last * SPAN_GROUP_CHECKPOINT_INTERVAL; i < end; i++) {
+                    int size = getSpanSize(i);
+                    span += size;
+                    if (span == spanCount) {
+                        span = 0;
+                        group++;
+                    } else if (span > spanCount) {
+                        // did not fit, moving to next row / column
+                        span = size;
+                        group++;
+                    }
+                }
+                mCheckpointSpans[mCheckpointCount] = span;
+                mCheckpointGroups[mCheckpointCount] = group;
+                mCheckpointCount++;
+            }
+            return target;
+        }
+
         int getCachedSpanIndex(int position, int spanCount) {
             if (!mCacheSpanIndices) {
                 return getSpanIndex(position, spanCount);
@@ -658,7 +816,9 @@ public class GridLayoutManager extends LinearLayoutManager {
          * ({@link #setSpanIndexCacheEnabled(boolean)}) for better performance. When caching is
          * disabled, default implementation traverses all items from 0 to
          * <code>position</code>. When caching is enabled, it calculates from the closest cached
-         * value before the <code>position</code>.
+         * value before the <code>position</code>. When span group index cache is enabled
+         * ({@link #setSpanGroupIndexCacheEnabled(boolean)}), it never traverses more than a
+         * few dozen items.
          * <p>
          * If you override this method, you need to make sure it is consistent with
          * {@link #getSpanSize(int)}. GridLayoutManager does not call this method for
@@ -680,10 +840,15 @@ public class GridLayoutManager extends LinearLayoutManager {
             }
             int span = 0;
             int startPos = 0;
+            if (mCacheSpanGroupIndices) {
+                final int checkpoint = ensureCheckpoints(position, spanCount);
+                span = mCheckpointSpans[checkpoint];
+                startPos = checkpoint * SPAN_GROUP_CHECKPOINT_INTERVAL;
+            }
             // If caching is enabled, try to jump
             if (mCacheSpanIndices && mSpanIndexCache.size() > 0) {
                 int prevKey = findReferenceIndexFromCache(position);
-                if (prevKey >= 0) {
+                if (prevKey >= startPos) {
                     span = mSpanIndexCache.get(prevKey) + getSpanSize(prevKey);
                     startPos = prevKey + 1;
                 }
@@ -737,8 +902,15 @@ public class GridLayoutManager extends LinearLayoutManager {
         public int getSpanGroupIndex(int adapterPosition, int spanCount) {
             int span = 0;
             int group = 0;
+            int startPos = 0;
+            if (mCacheSpanGroupIndices) {
+                final int checkpoint = ensureCheckpoints(adapterPosition, spanCount);
+                span = mCheckpointSpans[checkpoint];
+                group = mCheckpointGroups[checkpoint];
+                startPos = checkpoint * SPAN_GROUP_CHECKPOINT_INTERVAL;
+            }
             int positionSpanSize = getSpanSize(adapterPosition);
-            for (int i = 0; i < adapterPosition; i++) {
+            for (int i = startPos; i < adapterPosition; i++) {
                 int size = getSpanSize(i);
                 span += size;
                 if (span == spanCount) {
@@ -776,6 +948,11 @@ public class GridLayoutManager extends LinearLayoutManager {
         public int getSpanIndex(int position, int spanCount) {
             return position % spanCount;
         }
+
+        @Override
+        public int getSpanGroupIndex(int adapterPosition, int spanCount) {
+            return adapterPosition / spanCount;
+        }
     }
 
     /**
@@ -48,6 +48,11 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 
     public static final int INVALID_OFFSET = Integer.MIN_VALUE;
 
+    /**
+     * Used with {@link #setUniformItemExtent(int)} when items may have different sizes.
+     */
+    public static final int NO_UNIFORM_EXTENT = 0;
+
 
     /**
      * While trying to find next view to focus, LayoutManager will not try to scroll more
@@ -110,6 +115,12 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
      */
     private boolean mSmoothScrollbarEnabled = true;
 
+    /**
+     * Decorated size of every item along the layout orientation or {@link #NO_UNIFORM_EXTENT}.
+     * see {@link #setUniformItemExtent(int)}
+     */
+    private int mUniformItemExtent = NO_UNIFORM_EXTENT;
+
     /**
      * When LayoutManager needs to scroll to a position, it sets this variable and requests a
      * layout which will check this variable and re-layout accordingly.
@@ -124,6 +135,11 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
 
     private boolean mRecycleChildrenOnDetach;
 
+    /**
+     * Number of rows (or columns in horizontal orientation) to prefetch while scrolling.
+     */
+    private int mItemPrefetchCount = 1;
+
     SavedState mPendingSavedState = null;
 
     /**
@@ -190,6 +206,53 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
         mRecycleChildrenOnDetach = recycleChildrenOnDetach;
     }
 
+    /**
+     * Sets how many rows (or columns in horizontal orientation) ahead of the current scroll
+     * direction are created and bound in the idle time between frames while the RecyclerView is
+     * scrolling. GridLayoutManager prefetches every item of these rows.
+     * <p>
+     * Defaults to 1. Larger values hide more creation and bind work from the frames which bring
+     * these items on screen at the cost of a larger view cache.
+     *
+     * @param itemPrefetchCount Number of rows to prefetch, 0 disables prefetching
+     * @see RecyclerView.LayoutManager#setItemPrefetchEnabled(boolean)
+     */
+    public void setItemPrefetchCount(int itemPrefetchCount) {
+        if (itemPrefetchCount < 0) {
+            throw new IllegalArgumentException("Item prefetch count cannot be negative: "
+                    + itemPrefetchCount);
+        }
+        mItemPrefetchCount = itemPrefetchCount;
+        if (mRecyclerView != null) {
+            mRecyclerView.mRecycler.updateViewCacheSize();
+        }
+    }
+
+    @Override
+    public int getItemPrefetchCount() {
+        return mItemPrefetchCount;
+    }
+
+    @Override
+    public int gatherPrefetchIndices(int dx, int dy, RecyclerView.State state,
+            int[] outIndices) {
+        final int delta = (mOrientation == HORIZONTAL) ? dx : dy;
+        if (getChildCount() == 0 || delta == 0) {
+            return 0;
+        }
+        ensureLayoutState();
+        final int layoutDirection = delta > 0 ? LayoutState.LAYOUT_END : LayoutState.LAYOUT_START;
+        updateLayoutState(layoutDirection, Math.abs(delta), true, state);
+        final int maxCount = getItemPrefetchCount();
+        int count = 0;
+        int position = mLayoutState.mCurrentPosition;
+        while (count < maxCount && position >= 0 && position < state.getItemCount()) {
+            outIndices[count++] = position;
+            position += mLayoutState.mItemDirection;
+        }
+        return count;
+    }
+
     @Override
     public void onDetachedFromWindow(RecyclerView view, RecyclerView.Recycler recycler) {
         super.onDetachedFromWindow(view, recycler);
@@ -734,6 +797,13 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
             return true;
         }
 
+        if (mUniformItemExtent != NO_UNIFORM_EXTENT
+                && mPendingScrollPositionOffset != INVALID_OFFSET
+                && updateAnchorFromUniformExtent(state, anchorInfo, mPendingScrollPosition,
+                        mPendingScrollPositionOffset)) {
+            return true;
+        }
+
         if (mPendingScrollPositionOffset == INVALID_OFFSET) {
             View child = findViewByPosition(mPendingScrollPosition);
             if (child != null) {
@@ -784,6 +854,34 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
         return true;
     }
 
+    /**
+     * Resolves the anchor for {@link #scrollToPositionWithOffset(int, int)} when all items have
+     * the same size. The requested offset is clamped so that the list does not scroll past its
+     * edges and the first item in the layout direction becomes the anchor. This way, the layout
+     * pass does not need to fix gaps by scrolling afterwards.
+     *
+     * @return True if the anchor is resolved, false if the items do not fill the RecyclerView
+     */
+    private boolean updateAnchorFromUniformExtent(RecyclerView.State state,
+            AnchorInfo anchorInfo, int position, int offset) {
+        final long contentSize = (long) state.getItemCount() * mUniformItemExtent;
+        final long maxScrollOffset = contentSize - mOrientationHelper.getTotalSpace();
+        if (maxScrollOffset <= 0) {
+            return false;
+        }
+        final long scrollOffset = Math.max(0, Math.min(maxScrollOffset,
+                (long) position * mUniformItemExtent - offset));
+        final int anchorOffset = (int) (scrollOffset % mUniformItemExtent);
+        anchorInfo.mPosition = (int) (scrollOffset / mUniformItemExtent);
+        anchorInfo.mLayoutFromEnd = mShouldReverseLayout;
+        if (mShouldReverseLayout) {
+            anchorInfo.mCoordinate = mOrientationHelper.getEndAfterPadding() + anchorOffset;
+        } else {
+            anchorInfo.mCoordinate = mOrientationHelper.getStartAfterPadding() - anchorOffset;
+        }
+        return true;
+    }
+
     /**
      * @return The final offset amount for children
      */
@@ -989,6 +1087,12 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
             return 0;
         }
         ensureLayoutState();
+        if (mSmoothScrollbarEnabled && mUniformItemExtent != NO_UNIFORM_EXTENT) {
+            return ScrollbarHelper.computeUniformScrollOffset(state, mOrientationHelper,
+                    findFirstVisibleChildClosestToStart(false, true),
+                    findFirstVisibleChildClosestToEnd(false, true),
+                    this, mUniformItemExtent, mShouldReverseLayout);
+        }
         return ScrollbarHelper.computeScrollOffset(state, mOrientationHelper,
                 findFirstVisibleChildClosestToStart(!mSmoothScrollbarEnabled, true),
                 findFirstVisibleChildClosestToEnd(!mSmoothScrollbarEnabled, true),
@@ -1007,6 +1111,9 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
     }
 
     private int computeScrollRange(RecyclerView.State state) {
+        if (mSmoothScrollbarEnabled && mUniformItemExtent != NO_UNIFORM_EXTENT) {
+            return ScrollbarHelper.computeUniformScrollRange(state, mUniformItemExtent);
+        }
         if (getChildCount() == 0) {
             return 0;
         }
@@ -1049,6 +1156,43 @@ public class LinearLayoutManager extends RecyclerView.LayoutManager {
         return mSmoothScrollbarEnabled;
     }
 
+    /**
+     * Tells the LayoutManager that every item has the given size along the layout orientation,
+     * including its decorations and margins.
+     * <p>
+     * When set, {@link #scrollToPositionWithOffset(int, int)} resolves its anchor without
+     * having to fix gaps after the layout pass and, if smooth scrollbar is enabled, the
+     * scrollbar offset and range are computed exactly instead of being estimated from the
+     * visible children. This keeps the scrollbar thumb stable in very long lists.
+     * <p>
+     * The results are wrong if any item has a different size, so only use this when the size
+     * of items does not depend on their content. Not supported by {@link GridLayoutManager}.
+     *
+     * @param extent The decorated height (for {@link #VERTICAL}) or width (for
+     *               {@link #HORIZONTAL}) of every item or {@link #NO_UNIFORM_EXTENT}
+     * @see #getUniformItemExtent()
+     */
+    public void setUniformItemExtent(int extent) {
+        if (extent < 0) {
+            throw new IllegalArgumentException("invalid item extent:" + extent);
+        }
+        if (extent == mUniformItemExtent) {
+            return;
+        }
+        mUniformItemExtent = extent;
+        requestLayout();
+    }
+
+    /**
+     * Returns the size set via {@link #setUniformItemExtent(int)}.
+     *
+     * @return The size of every item or {@link #NO_UNIFORM_EXTENT} if items may have different
+     * sizes
+     */
+    public int getUniformItemExtent() {
+        return mUniformItemExtent;
+    }
+
     private void updateLayoutState(int layoutDirection, int requiredSpace,
             boolean canUseExistingSpace, RecyclerView.State state) {
         mLayoutState.mExtra = getExtraLayoutSpace(state);
@@ -32,6 +32,71 @@ class OpReorderer {
         mCallback = callback;
     }
 
+    /**
+     * Merges consecutive ops of the same type whose ranges are adjacent or overlapping so that a
+     * burst of single item notifications is processed as a few range operations. The resulting
+     * list has the same effect on the adapter as the original one.
+     */
+    void coalesceOps(List<UpdateOp> ops) {
+        final int size = ops.size();
+        if (size < 2) {
+            return;
+        }
+        int last = 0;
+        for (int i = 1; i < size; i++) {
+            final UpdateOp op = ops.get(i);
+            if (mergeInto(ops.get(last), op)) {
+                mCallback.recycleUpdateOp(op);
+            } else {
+                last++;
+                ops.set(last, op);
+            }
+        }
+        for (int i = size - 1; i > last; i--) {
+            ops.remove(i);
+        }
+    }
+
+    /**
+     * @return True if the effect of op is merged into previous, which is the op right before it.
+     */
+    private boolean mergeInto(UpdateOp previous, UpdateOp op) {
+        if (previous.cmd != op.cmd) {
+            return false;
+        }
+        switch (op.cmd) {
+            case ADD:
+                // only appends keep the order of the added items
+                if (op.positionStart == previous.positionStart + previous.itemCount) {
+                    previous.itemCount += op.itemCount;
+                    return true;
+                }
+                break;
+            case REMOVE:
+                // the range after previous removal touches the position where it happened
+                if (op.positionStart <= previous.positionStart
+                        && previous.positionStart <= op.positionStart + op.itemCount) {
+                    previous.positionStart = op.positionStart;
+                    previous.itemCount += op.itemCount;
+                    return true;
+                }
+                break;
+            case UPDATE:
+                // payloads are merged per ViewHolder, ops can share only the same payload
+                if (previous.payload == op.payload
+                        && op.positionStart <= previous.positionStart + previous.itemCount
+                        && previous.positionStart <= op.positionStart + op.itemCount) {
+                    final int end = Math.max(previous.positionStart + previous.itemCount,
+                            op.positionStart + op.itemCount);
+                    previous.positionStart = Math.min(previous.positionStart, op.positionStart);
+                    previous.itemCount = end - previous.positionStart;
+                    return true;
+                }
+                break;
+        }
+        return false;
+    }
+
     void reorderOps(List<UpdateOp> ops) {
         // since move operations breaks continuity, their effects on ADD/RM are hard to handle.
         // we push them to the end of the list so that they can be handled easily.
@@ -100,7 +165,7 @@ class OpReorderer {
         } else if (moveOp.positionStart < removeOp.positionStart + removeOp.itemCount) {
             final int remaining = removeOp.positionStart + removeOp.itemCount
                     - moveOp.positionStart;
-            extraRm = mCallback.obtainUpdateOp(REMOVE, moveOp.positionStart + 1, remaining);
+            extraRm = mCallback.obtainUpdateOp(REMOVE, moveOp.positionStart + 1, remaining, null);
             removeOp.itemCount = moveOp.positionStart - removeOp.positionStart;
         }
 
@@ -187,7 +252,8 @@ class OpReorderer {
         } else if (moveOp.itemCount < updateOp.positionStart + updateOp.itemCount) {
             // moved item is updated. add an update for it
             updateOp.itemCount--;
-            extraUp1 = mCallback.obtainUpdateOp(UPDATE, moveOp.positionStart, 1);
+            extraUp1 = mCallback.obtainUpdateOp(UPDATE, moveOp.positionStart, 1,
+                    updateOp.payload);
         }
         // now affect of add is consumed. now apply effect of first remove
         if (moveOp.positionStart <= updateOp.positionStart) {
@@ -195,7 +261,8 @@ class OpReorderer {
         } else if (moveOp.positionStart < updateOp.positionStart + updateOp.itemCount) {
             final int remaining = updateOp.positionStart + updateOp.itemCount
                     - moveOp.positionStart;
-            extraUp2 = mCallback.obtainUpdateOp(UPDATE, moveOp.positionStart + 1, remaining);
+            extraUp2 = mCallback.obtainUpdateOp(UPDATE, moveOp.positionStart + 1, remaining,
+                    updateOp.payload);
             updateOp.itemCount -= remaining;
         }
         list.set(update, moveOp);
@@ -230,7 +297,7 @@ class OpReorderer {
 
     static interface Callback {
 
-        UpdateOp obtainUpdateOp(int cmd, int startPosition, int itemCount);
+        UpdateOp obtainUpdateOp(int cmd, int startPosition, int itemCount, Object payload);
 
         void recycleUpdateOp(UpdateOp op);
     }
@@ -17,6 +17,7 @@
 
 package android.support.v7.widget;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.database.Observable;
 import android.graphics.Canvas;
@@ -24,8 +25,13 @@ import android.graphics.PointF;
 import android.graphics.Rect;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.os.Process;
 import android.support.annotation.Nullable;
 import android.support.v4.util.ArrayMap;
 import android.support.v4.view.InputDeviceCompat;
@@ -54,6 +60,7 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewParent;
+import android.view.WindowManager;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityManager;
 import android.view.animation.Interpolator;
@@ -166,6 +173,17 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
     private static final int MAX_SCROLL_DURATION = 2000;
 
+    /**
+     * Minimum time that has to be left until the next frame for a prefetch to be started.
+     */
+    private static final long MIN_PREFETCH_TIME_NANOS = 4000000;
+
+    /**
+     * Time between two frames, calculated from the display refresh rate when the first
+     * RecyclerView is attached to a window.
+     */
+    private static long sFrameIntervalNanos = 0;
+
     private final RecyclerViewDataObserver mObserver = new RecyclerViewDataObserver();
 
     final Recycler mRecycler = new Recycler();
@@ -216,6 +234,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
     private Adapter mAdapter;
     private LayoutManager mLayout;
     private RecyclerListener mRecyclerListener;
+
+    private FrameStatsListener mFrameStatsListener;
+
+    /**
+     * Stats collected since the last call to {@link FrameStatsListener}. Null when no listener is
+     * set so that the instrumentation hooks are skipped.
+     */
+    FrameStats mFrameStats;
     private final ArrayList<ItemDecoration> mItemDecorations = new ArrayList<ItemDecoration>();
     private final ArrayList<OnItemTouchListener> mOnItemTouchListeners =
             new ArrayList<OnItemTouchListener>();
@@ -287,6 +313,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
     private final ViewFlinger mViewFlinger = new ViewFlinger();
 
+    private final ViewPrefetcher mViewPrefetcher = new ViewPrefetcher();
+
     final State mState = new State();
 
     private OnScrollListener mScrollListener;
@@ -307,7 +335,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         @Override
         public void run() {
             if (mItemAnimator != null) {
-                mItemAnimator.runPendingAnimations();
+                if (mFrameStats != null) {
+                    final long start = System.nanoTime();
+                    mItemAnimator.runPendingAnimations();
+                    mFrameStats.mItemAnimatorTimeNanos += System.nanoTime() - start;
+                    dispatchFrameStats(FrameStats.PASS_ANIMATION);
+                } else {
+                    mItemAnimator.runPendingAnimations();
+                }
             }
             mPostedAnimatorRunner = false;
         }
@@ -489,8 +524,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             }
 
             @Override
-            public void markViewHoldersUpdated(int positionStart, int itemCount) {
-                viewRangeUpdate(positionStart, itemCount);
+            public void markViewHoldersUpdated(int positionStart, int itemCount, Object payload) {
+                viewRangeUpdate(positionStart, itemCount, payload);
                 mItemsChanged = true;
             }
 
@@ -696,6 +731,38 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         mRecyclerListener = listener;
     }
 
+    /**
+     * Register a listener that will receive the timing and recycling statistics of each layout,
+     * scroll and item animation pass of this RecyclerView.
+     * <p>
+     * When no listener is set, RecyclerView does not collect these statistics.
+     *
+     * @param listener Listener to register, or null to clear
+     * @see FrameStats
+     */
+    public void setFrameStatsListener(FrameStatsListener listener) {
+        mFrameStatsListener = listener;
+        if (listener == null) {
+            mFrameStats = null;
+        } else if (mFrameStats == null) {
+            mFrameStats = new FrameStats();
+        }
+    }
+
+    /**
+     * Sends the statistics collected since the last pass to the {@link FrameStatsListener} and
+     * resets them.
+     */
+    private void dispatchFrameStats(int passType) {
+        final FrameStats stats = mFrameStats;
+        if (stats == null || mFrameStatsListener == null) {
+            return;
+        }
+        stats.mPassType = passType;
+        mFrameStatsListener.onFrameStats(this, stats);
+        stats.reset();
+    }
+
     /**
      * Set the {@link LayoutManager} that this RecyclerView will use.
      *
@@ -733,6 +800,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 mLayout.onAttachedToWindow(this);
             }
         }
+        mRecycler.updateViewCacheSize();
         requestLayout();
     }
 
@@ -1056,6 +1124,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         if (mAdapter != null) {
             eatRequestLayout();
             mRunningLayoutOrScroll = true;
+            final long start = mFrameStats != null ? System.nanoTime() : 0;
             if (x != 0) {
                 hresult = mLayout.scrollHorizontallyBy(x, mRecycler, mState);
                 overscrollX = x - hresult;
@@ -1064,6 +1133,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 vresult = mLayout.scrollVerticallyBy(y, mRecycler, mState);
                 overscrollY = y - vresult;
             }
+            if (mFrameStats != null) {
+                mFrameStats.mScrollTimeNanos += System.nanoTime() - start;
+            }
             if (supportsChangeAnimations()) {
                 // Fix up shadow views used by changing animations
                 int count = mChildHelper.getChildCount();
@@ -1087,6 +1159,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             }
             mRunningLayoutOrScroll = false;
             resumeRequestLayout(false);
+            dispatchFrameStats(FrameStats.PASS_SCROLL);
         }
         if (!mItemDecorations.isEmpty()) {
             invalidate();
@@ -1531,6 +1604,20 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mLayout.onAttachedToWindow(this);
         }
         mPostedAnimatorRunner = false;
+        if (sFrameIntervalNanos == 0) {
+            // refresh rate does not change, so compute it only once
+            float refreshRate = 60.0f;
+            if (!isInEditMode()) {
+                final WindowManager windowManager = (WindowManager) getContext()
+                        .getSystemService(Context.WINDOW_SERVICE);
+                final float displayRefreshRate = windowManager.getDefaultDisplay()
+                        .getRefreshRate();
+                if (displayRefreshRate >= 30.0f) {
+                    refreshRate = displayRefreshRate;
+                }
+            }
+            sFrameIntervalNanos = (long) (1000000000 / refreshRate);
+        }
     }
 
     @Override
@@ -1547,6 +1634,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mLayout.onDetachedFromWindow(this, mRecycler);
         }
         removeCallbacks(mItemAnimatorRunner);
+        removeCallbacks(mViewPrefetcher);
     }
 
     /**
@@ -1803,6 +1891,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                             canScrollHorizontally ? -dx : 0, canScrollVertically ? -dy : 0)) {
                         getParent().requestDisallowInterceptTouchEvent(true);
                     }
+                    if (dx != 0 || dy != 0) {
+                        mViewPrefetcher.postFromTraversal(canScrollHorizontally ? -dx : 0,
+                                canScrollVertically ? -dy : 0);
+                    }
                 }
                 mLastTouchX = x;
                 mLastTouchY = y;
@@ -2098,6 +2190,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             Log.e(TAG, "No layout manager attached; skipping layout");
             return;
         }
+        final long layoutStart = mFrameStats != null ? System.nanoTime() : 0;
         mDisappearingViewsInLayoutPass.clear();
         eatRequestLayout();
         mRunningLayoutOrScroll = true;
@@ -2194,6 +2287,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
         mState.mItemCount = mAdapter.getItemCount();
         mState.mDeletedInvisibleItemCountSincePreviousLayout = 0;
+        final long preLayoutEnd = mFrameStats != null ? System.nanoTime() : 0;
 
         // Step 2: Run layout
         mState.mInPreLayout = false;
@@ -2310,6 +2404,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         if (didChildRangeChange(mMinMaxLayoutPositions[0], mMinMaxLayoutPositions[1])) {
             notifyOnScrolled(0, 0);
         }
+        if (mFrameStats != null) {
+            mFrameStats.mPreLayoutTimeNanos += preLayoutEnd - layoutStart;
+            mFrameStats.mPostLayoutTimeNanos += System.nanoTime() - preLayoutEnd;
+            dispatchFrameStats(FrameStats.PASS_LAYOUT);
+        }
     }
 
     private void findMinMaxChildLayoutPositions(int[] into) {
@@ -2728,8 +2827,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
      *
      * @param positionStart Adapter position to start at
      * @param itemCount Number of views that must explicitly be rebound
+     * @param payload Partial update payload, or null for a full rebind
      */
-    void viewRangeUpdate(int positionStart, int itemCount) {
+    void viewRangeUpdate(int positionStart, int itemCount, Object payload) {
         final int childCount = mChildHelper.getUnfilteredChildCount();
         final int positionEnd = positionStart + itemCount;
 
@@ -2743,7 +2843,10 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 // We re-bind these view holders after pre-processing is complete so that
                 // ViewHolders have their final positions assigned.
                 holder.addFlags(ViewHolder.FLAG_UPDATE);
-                if (supportsChangeAnimations()) {
+                holder.addChangePayload(payload);
+                // Partial updates are bound to the existing ViewHolder so they do not run a
+                // change animation.
+                if (payload == null && supportsChangeAnimations()) {
                     holder.addFlags(ViewHolder.FLAG_CHANGED);
                 }
                 // lp cannot be null since we get ViewHolder from it.
@@ -3136,6 +3239,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 if (mAdapter != null) {
                     eatRequestLayout();
                     mRunningLayoutOrScroll = true;
+                    final long start = mFrameStats != null ? System.nanoTime() : 0;
                     if (dx != 0) {
                         hresult = mLayout.scrollHorizontallyBy(dx, mRecycler, mState);
                         overscrollX = dx - hresult;
@@ -3144,6 +3248,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                         vresult = mLayout.scrollVerticallyBy(dy, mRecycler, mState);
                         overscrollY = dy - vresult;
                     }
+                    if (mFrameStats != null) {
+                        mFrameStats.mScrollTimeNanos += System.nanoTime() - start;
+                    }
                     if (supportsChangeAnimations()) {
                         // Fix up shadow views used by changing animations
                         int count = mChildHelper.getChildCount();
@@ -3178,6 +3285,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     }
                     mRunningLayoutOrScroll = false;
                     resumeRequestLayout(false);
+                    dispatchFrameStats(FrameStats.PASS_SCROLL);
                 }
                 if (!mItemDecorations.isEmpty()) {
                     invalidate();
@@ -3227,6 +3335,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     setScrollState(SCROLL_STATE_IDLE); // setting state to idle will stop this.
                 } else {
                     postOnAnimation();
+                    mViewPrefetcher.postFromTraversal(dx, dy);
                 }
             }
             // call this after the onAnimation is complete not to have inconsistent callbacks etc.
@@ -3331,6 +3440,62 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
     }
 
+    /**
+     * Creates and binds the Views which will become visible next while the RecyclerView is
+     * scrolling.
+     * <p>
+     * It is posted after each scroll step and runs once the current frame has been drawn. If
+     * there is enough time left before the next frame, it asks the LayoutManager which positions
+     * will be laid out next in the scroll direction and puts their Views into the Recycler's
+     * view cache so that the next scroll step does not have to create or bind them.
+     */
+    private class ViewPrefetcher implements Runnable {
+        private long mPostTimeNanos;
+        private int mDx;
+        private int mDy;
+        private int[] mItemPrefetchArray;
+
+        void postFromTraversal(int dx, int dy) {
+            if (mAdapter != null && mLayout != null && mLayout.isItemPrefetchEnabled()
+                    && mLayout.getItemPrefetchCount() > 0) {
+                mDx = dx;
+                mDy = dy;
+                mPostTimeNanos = System.nanoTime();
+                RecyclerView.this.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if (mAdapter == null || mLayout == null || !mLayout.isItemPrefetchEnabled()
+                    || mAdapterHelper.hasPendingUpdates() || mRunningLayoutOrScroll) {
+                return;
+            }
+            final int prefetchCount = mLayout.getItemPrefetchCount();
+            if (prefetchCount < 1) {
+                return;
+            }
+            // Drawing time is the vsync time of the last frame, use it to predict the next one.
+            final long lastFrameNanos = getDrawingTime() * 1000000;
+            if (lastFrameNanos == 0 || sFrameIntervalNanos == 0) {
+                return;
+            }
+            final long nowNanos = System.nanoTime();
+            final long nextFrameNanos = lastFrameNanos + sFrameIntervalNanos;
+            if (nowNanos - mPostTimeNanos > sFrameIntervalNanos
+                    || nextFrameNanos - nowNanos < MIN_PREFETCH_TIME_NANOS) {
+                // either we are running too late or there is not enough time left in this frame
+                return;
+            }
+            if (mItemPrefetchArray == null || mItemPrefetchArray.length < prefetchCount) {
+                mItemPrefetchArray = new int[prefetchCount];
+            }
+            final int viewCount = mLayout.gatherPrefetchIndices(mDx, mDy, mState,
+                    mItemPrefetchArray);
+            mRecycler.prefetch(mItemPrefetchArray, viewCount);
+        }
+    }
+
     private class RecyclerViewDataObserver extends AdapterDataObserver {
         @Override
         public void onChanged() {
@@ -3351,9 +3516,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         @Override
-        public void onItemRangeChanged(int positionStart, int itemCount) {
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
             assertNotInLayoutOrScroll(null);
-            if (mAdapterHelper.onItemRangeChanged(positionStart, itemCount)) {
+            if (mAdapterHelper.onItemRangeChanged(positionStart, itemCount, payload)) {
                 triggerUpdateProcessor();
             }
         }
@@ -3399,18 +3564,61 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
      * and use {@link RecyclerView#setRecycledViewPool(RecycledViewPool)}.
      * <p>
      * RecyclerView automatically creates a pool for itself if you don't provide one.
-     *
+     * <p>
+     * The pool keeps per view type statistics about how long it takes to create and bind
+     * ViewHolders and how often a request could be served from the pool. You can use these
+     * numbers to pick values for {@link #setMaxRecycledViews(int, int)} or to decide how many
+     * ViewHolders to {@link #prewarm(RecyclerView, int, int) prewarm}.
+     * <p>
+     * A pool shared by many RecyclerViews can additionally be bounded by a
+     * {@link #setMemoryBudget(long) memory budget}. Each pooled ViewHolder is assigned a weight by
+     * a {@link Weigher} and, when the total weight exceeds the budget, the least recently pooled
+     * ViewHolders are dropped regardless of their view type. Call {@link #onTrimMemory(int)} from
+     * your {@link ComponentCallbacks2} to shed pooled ViewHolders when the system
+     * runs low on memory.
      */
     public static class RecycledViewPool {
         private SparseArray<ArrayList<ViewHolder>> mScrap =
                 new SparseArray<ArrayList<ViewHolder>>();
         private SparseIntArray mMaxScrap = new SparseIntArray();
+        private SparseArray<ViewTypeStats> mStats = new SparseArray<ViewTypeStats>();
         private int mAttachCount = 0;
 
+        /**
+         * Incremented whenever the pool is cleared so that pending prewarm requests which were
+         * started for the previous contents can be dropped.
+         */
+        private int mPrewarmGeneration = 0;
+
+        /**
+         * Maximum total weight of the pooled ViewHolders or {@link #NO_MEMORY_BUDGET}.
+         */
+        private long mMemoryBudget = NO_MEMORY_BUDGET;
+        private long mCurrentWeight = 0;
+        private long mNextSequence = 0;
+        private Weigher mWeigher = DEFAULT_WEIGHER;
+
         private static final int DEFAULT_MAX_SCRAP = 5;
 
+        /**
+         * Budget value used when the pool is only bounded by the per view type limits.
+         */
+        public static final long NO_MEMORY_BUDGET = -1;
+
+        private static final Weigher DEFAULT_WEIGHER = new Weigher() {
+            @Override
+            public int getWeight(ViewHolder holder) {
+                return Math.max(1, holder.itemView.getWidth() * holder.itemView.getHeight());
+            }
+        };
+
+        private static HandlerThread sPrewarmThread;
+        private static Handler sPrewarmHandler;
+
         public void clear() {
             mScrap.clear();
+            mCurrentWeight = 0;
+            mPrewarmGeneration++;
         }
 
         public void setMaxRecycledViews(int viewType, int max) {
@@ -3418,19 +3626,181 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
             if (scrapHeap != null) {
                 while (scrapHeap.size() > max) {
-                    scrapHeap.remove(scrapHeap.size() - 1);
+                    mCurrentWeight -= scrapHeap.remove(scrapHeap.size() - 1).mPoolWeight;
+                }
+            }
+        }
+
+        /**
+         * Sets the maximum total weight of the ViewHolders kept by this pool, in the units
+         * returned by the {@link #setWeigher(Weigher) Weigher}. When a recycled ViewHolder
+         * pushes the total over the budget, the least recently pooled ViewHolders of any view
+         * type are dropped until the pool fits again. ViewHolders heavier than the whole budget
+         * are never pooled.
+         * <p>
+         * The per view type limits set via {@link #setMaxRecycledViews(int, int)} still apply.
+         * ViewHolders which were pooled while no budget was set are weighed when the budget is
+         * turned on.
+         *
+         * @param budget The maximum total weight or {@link #NO_MEMORY_BUDGET} to disable the
+         *               budget
+         */
+        public void setMemoryBudget(long budget) {
+            if (budget < 0 && budget != NO_MEMORY_BUDGET) {
+                throw new IllegalArgumentException("Memory budget cannot be negative");
+            }
+            final boolean wasEnabled = mMemoryBudget != NO_MEMORY_BUDGET;
+            mMemoryBudget = budget;
+            if (wasEnabled != (budget != NO_MEMORY_BUDGET)) {
+                // holders pooled without a budget have no weight and vice versa
+                updatePoolWeights();
+            }
+            if (budget != NO_MEMORY_BUDGET) {
+                trimToWeight(budget);
+            }
+        }
+
+        /**
+         * Weighs every pooled ViewHolder again when the memory budget is turned on and resets
+         * the weights to 0 when it is turned off. ViewHolders heavier than the whole budget are
+         * dropped.
+         */
+        private void updatePoolWeights() {
+            mCurrentWeight = 0;
+            for (int i = 0; i < mScrap.size(); i++) {
+                final ArrayList<ViewHolder> scrapHeap = mScrap.valueAt(i);
+                if (scrapHeap == null) {
+                    continue;
+                }
+                for (int j = scrapHeap.size() - 1; j >= 0; j--) {
+                    final ViewHolder holder = scrapHeap.get(j);
+                    if (mMemoryBudget == NO_MEMORY_BUDGET) {
+                        holder.mPoolWeight = 0;
+                        continue;
+                    }
+                    final int weight = mWeigher.getWeight(holder);
+                    if (weight > mMemoryBudget) {
+                        scrapHeap.remove(j);
+                    } else {
+                        holder.mPoolWeight = weight;
+                        mCurrentWeight += weight;
+                    }
+                }
+            }
+        }
+
+        /**
+         * @return The maximum total weight of the pooled ViewHolders or {@link #NO_MEMORY_BUDGET}
+         * @see #setMemoryBudget(long)
+         */
+        public long getMemoryBudget() {
+            return mMemoryBudget;
+        }
+
+        /**
+         * Returns the total weight of the ViewHolders currently held by this pool. It is always
+         * 0 unless a {@link #setMemoryBudget(long) memory budget} is set.
+         *
+         * @return The total weight of the pooled ViewHolders
+         */
+        public long getCurrentWeight() {
+            return mCurrentWeight;
+        }
+
+        /**
+         * Sets the {@link Weigher} used to assign a weight to ViewHolders as they enter the pool.
+         * By default, the weight of a ViewHolder is the pixel area of its item view.
+         * <p>
+         * The weigher is only consulted while a {@link #setMemoryBudget(long) memory budget} is
+         * set and only affects ViewHolders pooled after this call.
+         *
+         * @param weigher The weigher to use or <code>null</code> to restore the default one
+         */
+        public void setWeigher(Weigher weigher) {
+            mWeigher = weigher == null ? DEFAULT_WEIGHER : weigher;
+        }
+
+        /**
+         * Drops the least recently pooled ViewHolders until the total weight of the pool is at
+         * most the given weight.
+         *
+         * @param maxWeight The maximum total weight to keep
+         */
+        public void trimToWeight(long maxWeight) {
+            while (mCurrentWeight > maxWeight) {
+                if (!removeLeastRecentlyPooled()) {
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Releases pooled ViewHolders in response to
+         * {@link ComponentCallbacks2#onTrimMemory(int)}.
+         * <p>
+         * While the app is running, half of the pool (or a quarter for
+         * {@link ComponentCallbacks2#TRIM_MEMORY_RUNNING_MODERATE}) is released, least recently
+         * pooled first. Once the app is in the background or memory is critically low, the pool
+         * is cleared.
+         *
+         * @param level The trim level passed to <code>onTrimMemory</code>
+         */
+        public void onTrimMemory(int level) {
+            if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+                    || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+                clear();
+                return;
+            }
+            final boolean moderate = level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW;
+            if (mMemoryBudget == NO_MEMORY_BUDGET) {
+                trimToSize(moderate ? size() * 3 / 4 : size() / 2);
+            } else {
+                trimToWeight(moderate ? mCurrentWeight * 3 / 4 : mCurrentWeight / 2);
+            }
+        }
+
+        private void trimToSize(int maxSize) {
+            int size = size();
+            while (size > maxSize && removeLeastRecentlyPooled()) {
+                size--;
+            }
+        }
+
+        /**
+         * Removes the ViewHolder which was added to the pool before all others. Each scrap heap
+         * is ordered by insertion, so only the first entry of every heap has to be checked.
+         */
+        private boolean removeLeastRecentlyPooled() {
+            ArrayList<ViewHolder> oldestHeap = null;
+            long oldestSequence = Long.MAX_VALUE;
+            for (int i = 0; i < mScrap.size(); i++) {
+                final ArrayList<ViewHolder> scrapHeap = mScrap.valueAt(i);
+                if (scrapHeap != null && !scrapHeap.isEmpty()
+                        && scrapHeap.get(0).mPoolSequence < oldestSequence) {
+                    oldestHeap = scrapHeap;
+                    oldestSequence = scrapHeap.get(0).mPoolSequence;
                 }
             }
+            if (oldestHeap == null) {
+                return false;
+            }
+            mCurrentWeight -= oldestHeap.remove(0).mPoolWeight;
+            return true;
         }
 
         public ViewHolder getRecycledView(int viewType) {
             final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
+            final ViewTypeStats stats = getStatsForType(viewType);
             if (scrapHeap != null && !scrapHeap.isEmpty()) {
                 final int index = scrapHeap.size() - 1;
                 final ViewHolder scrap = scrapHeap.get(index);
                 scrapHeap.remove(index);
+                mCurrentWeight -= scrap.mPoolWeight;
+                scrap.mPoolWeight = 0;
+                stats.mHitCount++;
                 return scrap;
             }
+            stats.mMissCount++;
             return null;
         }
 
@@ -3445,14 +3815,176 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             return count;
         }
 
+        /**
+         * Returns the number of ViewHolders of the given type which are currently held by this
+         * pool.
+         *
+         * @param viewType The view type to query
+         * @return Number of recycled ViewHolders of the given type
+         */
+        public int getRecycledViewCount(int viewType) {
+            final ArrayList<ViewHolder> scrapHeap = mScrap.get(viewType);
+            return scrapHeap == null ? 0 : scrapHeap.size();
+        }
+
         public void putRecycledView(ViewHolder scrap) {
+            addToPool(scrap);
+        }
+
+        /**
+         * Adds the given ViewHolder to the pool unless its scrap heap is full or it does not fit
+         * into the memory budget.
+         *
+         * @return True if the ViewHolder was pooled
+         */
+        private boolean addToPool(ViewHolder scrap) {
             final int viewType = scrap.getItemViewType();
             final ArrayList scrapHeap = getScrapHeapForType(viewType);
             if (mMaxScrap.get(viewType) <= scrapHeap.size()) {
-                return;
+                return false;
             }
             scrap.resetInternal();
+            if (mMemoryBudget != NO_MEMORY_BUDGET) {
+                final int weight = mWeigher.getWeight(scrap);
+                if (weight > mMemoryBudget) {
+                    return false;
+                }
+                scrap.mPoolWeight = weight;
+                mCurrentWeight += weight;
+            } else {
+                scrap.mPoolWeight = 0;
+            }
+            scrap.mPoolSequence = mNextSequence++;
             scrapHeap.add(scrap);
+            if (mMemoryBudget != NO_MEMORY_BUDGET) {
+                trimToWeight(mMemoryBudget);
+            }
+            return true;
+        }
+
+        /**
+         * Assigns a weight to ViewHolders entering a {@link RecycledViewPool} with a
+         * {@link #setMemoryBudget(long) memory budget}.
+         */
+        public interface Weigher {
+            /**
+             * Returns the weight of the given ViewHolder, e.g. an estimate of the memory its views
+             * use. The weight of a ViewHolder must not change while it is in the pool.
+             *
+             * @param holder The ViewHolder being added to the pool
+             * @return A non-negative weight
+             */
+            int getWeight(ViewHolder holder);
+        }
+
+        /**
+         * Creates ViewHolders of the given type ahead of time and adds them to this pool so that
+         * the first layout or scroll which needs them does not have to create them.
+         * <p>
+         * The number of ViewHolders created is limited by the maximum set via
+         * {@link #setMaxRecycledViews(int, int)} (5 by default) and ViewHolders which are already
+         * in the pool count towards the requested number.
+         * <p>
+         * If the Adapter of the given RecyclerView returns <code>true</code> from
+         * {@link Adapter#canCreateViewHolderInBackground(int)}, ViewHolders are created on a
+         * shared background thread and handed to the pool on the main thread. Otherwise, they
+         * are created one at a time on the main thread whenever its message queue is idle.
+         * <p>
+         * This method must be called on the main thread. Pending requests are dropped if the pool
+         * is {@link #clear() cleared} before they complete.
+         *
+         * @param parent The RecyclerView whose Adapter should create the ViewHolders. It is also
+         *               passed as the parent to {@link Adapter#onCreateViewHolder(ViewGroup, int)}.
+         * @param viewType The view type of the ViewHolders to create
+         * @param count The number of ViewHolders of this type the pool should contain
+         */
+        public void prewarm(RecyclerView parent, int viewType, int count) {
+            final Adapter adapter = parent.getAdapter();
+            if (adapter == null) {
+                throw new IllegalStateException("Cannot prewarm a RecycledViewPool for a "
+                        + "RecyclerView without an adapter.");
+            }
+            getScrapHeapForType(viewType);
+            final int missing = Math.min(count, mMaxScrap.get(viewType))
+                    - getRecycledViewCount(viewType);
+            if (missing <= 0) {
+                return;
+            }
+            final PrewarmTask task = new PrewarmTask(parent, adapter, viewType, missing);
+            if (adapter.canCreateViewHolderInBackground(viewType)) {
+                getPrewarmHandler().post(task);
+            } else {
+                Looper.myQueue().addIdleHandler(task);
+            }
+        }
+
+        /**
+         * Returns the average time it took to create a ViewHolder of the given type, in
+         * nanoseconds.
+         *
+         * @param viewType The view type to query
+         * @return Average creation time or 0 if no ViewHolder of this type has been created yet
+         */
+        public long getAverageCreateTimeNanos(int viewType) {
+            final ViewTypeStats stats = mStats.get(viewType);
+            return stats == null || stats.mCreateCount == 0
+                    ? 0 : stats.mCreateTimeNanos / stats.mCreateCount;
+        }
+
+        /**
+         * Returns the average time it took to bind a ViewHolder of the given type, in
+         * nanoseconds.
+         *
+         * @param viewType The view type to query
+         * @return Average bind time or 0 if no ViewHolder of this type has been bound yet
+         */
+        public long getAverageBindTimeNanos(int viewType) {
+            final ViewTypeStats stats = mStats.get(viewType);
+            return stats == null || stats.mBindCount == 0
+                    ? 0 : stats.mBindTimeNanos / stats.mBindCount;
+        }
+
+        /**
+         * Returns the number of times {@link #getRecycledView(int)} returned a ViewHolder of the
+         * given type.
+         *
+         * @param viewType The view type to query
+         * @return The number of pool hits
+         */
+        public int getHitCount(int viewType) {
+            final ViewTypeStats stats = mStats.get(viewType);
+            return stats == null ? 0 : stats.mHitCount;
+        }
+
+        /**
+         * Returns the number of times {@link #getRecycledView(int)} could not return a
+         * ViewHolder of the given type.
+         *
+         * @param viewType The view type to query
+         * @return The number of pool misses
+         */
+        public int getMissCount(int viewType) {
+            final ViewTypeStats stats = mStats.get(viewType);
+            return stats == null ? 0 : stats.mMissCount;
+        }
+
+        /**
+         * Resets all statistics collected by this pool.
+         */
+        public void resetStats() {
+            mStats.clear();
+        }
+
+        void factorInCreateTime(int viewType, long createTimeNanos) {
+            final ViewTypeStats stats = getStatsForType(viewType);
+            stats.mCreateCount++;
+            stats.mCreateTimeNanos += createTimeNanos;
+        }
+
+        void factorInBindTime(int viewType, long bindTimeNanos) {
+            final ViewTypeStats stats = getStatsForType(viewType);
+            stats.mBindCount++;
+            stats.mBindTimeNanos += bindTimeNanos;
         }
 
         void attach(Adapter adapter) {
@@ -3499,6 +4031,122 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             }
             return scrap;
         }
+
+        private ViewTypeStats getStatsForType(int viewType) {
+            ViewTypeStats stats = mStats.get(viewType);
+            if (stats == null) {
+                stats = new ViewTypeStats();
+                mStats.put(viewType, stats);
+            }
+            return stats;
+        }
+
+        private static synchronized Handler getPrewarmHandler() {
+            if (sPrewarmHandler == null) {
+                sPrewarmThread = new HandlerThread("RecyclerView.prewarm",
+                        Process.THREAD_PRIORITY_BACKGROUND);
+                sPrewarmThread.start();
+                sPrewarmHandler = new Handler(sPrewarmThread.getLooper());
+            }
+            return sPrewarmHandler;
+        }
+
+        private static class ViewTypeStats {
+            int mHitCount;
+            int mMissCount;
+            int mCreateCount;
+            int mBindCount;
+            long mCreateTimeNanos;
+            long mBindTimeNanos;
+        }
+
+        /**
+         * Creates ViewHolders for {@link #prewarm(RecyclerView, int, int)}. When posted to the
+         * background thread, it creates all ViewHolders at once and posts itself back to the main
+         * thread to add them to the pool. When used as an idle handler, it creates and adds one
+         * ViewHolder per idle callback.
+         */
+        class PrewarmTask implements Runnable, MessageQueue.IdleHandler {
+            final RecyclerView mParent;
+            final Adapter mAdapter;
+            final int mViewType;
+            final int mGeneration;
+            final Handler mMainHandler;
+            int mRemaining;
+            ArrayList<ViewHolder> mCreated;
+            long mCreateTimeNanos;
+
+            PrewarmTask(RecyclerView parent, Adapter adapter, int viewType, int count) {
+                mParent = parent;
+                mAdapter = adapter;
+                mViewType = viewType;
+                mRemaining = count;
+                mGeneration = mPrewarmGeneration;
+                mMainHandler = new Handler(Looper.getMainLooper());
+            }
+
+            @Override
+            public void run() {
+                if (mCreated == null) {
+                    // on the background thread
+                    createViewHolders();
+                    mMainHandler.post(this);
+                } else {
+                    // back on the main thread
+                    addCreatedToPool();
+                }
+            }
+
+            void createViewHolders() {
+                mCreated = new ArrayList<ViewHolder>(mRemaining);
+                final long start = System.nanoTime();
+                for (int i = 0; i < mRemaining; i++) {
+                    mCreated.add(mAdapter.createViewHolder(mParent, mViewType));
+                }
+                mCreateTimeNanos = System.nanoTime() - start;
+            }
+
+            /**
+             * Adds the ViewHolders created by {@link #createViewHolders()} to the pool unless the
+             * pool was cleared or the RecyclerView switched to a different Adapter in the
+             * meantime. Only the ViewHolders which are actually pooled count towards the create
+             * statistics.
+             */
+            void addCreatedToPool() {
+                final ArrayList<ViewHolder> created = mCreated;
+                mCreated = null;
+                if (mGeneration != mPrewarmGeneration || mParent.getAdapter() != mAdapter) {
+                    return;
+                }
+                final int count = created.size();
+                int pooled = 0;
+                for (int i = 0; i < count; i++) {
+                    if (addToPool(created.get(i))) {
+                        pooled++;
+                    }
+                }
+                if (pooled > 0) {
+                    final ViewTypeStats stats = getStatsForType(mViewType);
+                    stats.mCreateCount += pooled;
+                    stats.mCreateTimeNanos += mCreateTimeNanos * pooled / count;
+                }
+            }
+
+            @Override
+            public boolean queueIdle() {
+                if (mGeneration != mPrewarmGeneration || mParent.getAdapter() != mAdapter
+                        || getRecycledViewCount(mViewType) >= mMaxScrap.get(mViewType)) {
+                    return false;
+                }
+                final long start = System.nanoTime();
+                final ViewHolder holder = mAdapter.createViewHolder(mParent, mViewType);
+                final long createTimeNanos = System.nanoTime() - start;
+                if (addToPool(holder)) {
+                    factorInCreateTime(mViewType, createTimeNanos);
+                }
+                return --mRemaining > 0;
+            }
+        }
     }
 
     /**
@@ -3523,13 +4171,14 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         private final List<ViewHolder>
                 mUnmodifiableAttachedScrap = Collections.unmodifiableList(mAttachedScrap);
 
-        private int mViewCacheMax = DEFAULT_CACHE_SIZE;
+        private int mRequestedCacheMax = DEFAULT_CACHE_SIZE;
+        int mViewCacheMax = DEFAULT_CACHE_SIZE;
 
         private RecycledViewPool mRecyclerPool;
 
         private ViewCacheExtension mViewCacheExtension;
 
-        private static final int DEFAULT_CACHE_SIZE = 2;
+        static final int DEFAULT_CACHE_SIZE = 2;
 
         /**
          * Clear scrap views out of this recycler. Detached views contained within a
@@ -3546,13 +4195,66 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          * @param viewCount Number of views to keep before sending views to the shared pool
          */
         public void setViewCacheSize(int viewCount) {
-            mViewCacheMax = viewCount;
+            mRequestedCacheMax = viewCount;
+            updateViewCacheSize();
+        }
+
+        /**
+         * Recalculates the cache size, which is the requested size plus room for the Views the
+         * LayoutManager prefetches.
+         */
+        void updateViewCacheSize() {
+            final int extraCache = mLayout != null && mLayout.isItemPrefetchEnabled()
+                    ? mLayout.getItemPrefetchCount() : 0;
+            mViewCacheMax = mRequestedCacheMax + extraCache;
             // first, try the views that can be recycled
-            for (int i = mCachedViews.size() - 1; i >= 0 && mCachedViews.size() > viewCount; i--) {
+            for (int i = mCachedViews.size() - 1;
+                    i >= 0 && mCachedViews.size() > mViewCacheMax; i--) {
                 recycleCachedViewAt(i);
             }
         }
 
+        /**
+         * Creates and binds the Views for the given adapter positions and moves them into the
+         * view cache, unless they are already attached.
+         *
+         * @param itemPrefetchArray The positions to prefetch
+         * @param viewCount The number of valid positions in the array
+         */
+        void prefetch(int[] itemPrefetchArray, int viewCount) {
+            if (viewCount == 0) {
+                return;
+            }
+            final int childPosition = itemPrefetchArray[viewCount - 1];
+            if (childPosition < 0) {
+                throw new IllegalArgumentException("Recycler requested to prefetch invalid view "
+                        + childPosition);
+            }
+            View prefetchView = null;
+            if (!isPrefetchPositionAttached(childPosition)) {
+                prefetchView = getViewForPosition(childPosition);
+            }
+            if (viewCount > 1) {
+                prefetch(itemPrefetchArray, viewCount - 1);
+            }
+            if (prefetchView != null) {
+                recycleView(prefetchView);
+            }
+        }
+
+        private boolean isPrefetchPositionAttached(int position) {
+            final int childCount = mChildHelper.getUnfilteredChildCount();
+            for (int i = 0; i < childCount; i++) {
+                final View attachedView = mChildHelper.getUnfilteredChildAt(i);
+                final ViewHolder holder = getChildViewHolderInt(attachedView);
+                // Note: can use mPosition since adapter updates can't be pending
+                if (holder.mPosition == position) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
         /**
          * Returns an unmodifiable list of ViewHolders that are currently in the scrap list.
          *
@@ -3622,7 +4324,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                         + "state:" + mState.getItemCount());
             }
             holder.mOwnerRecyclerView = RecyclerView.this;
+            final long start = System.nanoTime();
             mAdapter.bindViewHolder(holder, offsetPosition);
+            final long bindTime = System.nanoTime() - start;
+            getRecycledViewPool().factorInBindTime(holder.getItemViewType(), bindTime);
+            if (mFrameStats != null) {
+                mFrameStats.addBindTime(holder.getItemViewType(), bindTime);
+            }
             attachAccessibilityDelegate(view);
             if (mState.isPreLayout()) {
                 holder.mPreLayoutPosition = position;
@@ -3772,6 +4480,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     }
                     holder = getRecycledViewPool().getRecycledView(type);
                     if (holder != null) {
+                        if (mFrameStats != null && !dryRun) {
+                            mFrameStats.mPoolHitCount++;
+                        }
                         holder.resetInternal();
                         if (FORCE_INVALIDATE_DISPLAY_LIST) {
                             invalidateDisplayListInt(holder);
@@ -3779,12 +4490,28 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                     }
                 }
                 if (holder == null) {
+                    final long start = System.nanoTime();
                     holder = mAdapter.createViewHolder(RecyclerView.this, type);
+                    final long createTime = System.nanoTime() - start;
+                    getRecycledViewPool().factorInCreateTime(type, createTime);
+                    if (mFrameStats != null) {
+                        mFrameStats.addCreateTime(type, createTime);
+                    }
                     if (DEBUG) {
                         Log.d(TAG, "getViewForPosition created new ViewHolder");
                     }
                 }
             }
+            if (mFrameStats != null && !dryRun) {
+                mFrameStats.mViewRequestCount++;
+                if (fromScrap) {
+                    if (holder.wasReturnedFromScrap()) {
+                        mFrameStats.mScrapHitCount++;
+                    } else {
+                        mFrameStats.mCacheHitCount++;
+                    }
+                }
+            }
             boolean bound = false;
             if (mState.isPreLayout() && holder.isBound()) {
                 // do not update unless we absolutely have to.
@@ -3796,7 +4523,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 }
                 final int offsetPosition = mAdapterHelper.findPositionOffset(position);
                 holder.mOwnerRecyclerView = RecyclerView.this;
+                final long start = System.nanoTime();
                 mAdapter.bindViewHolder(holder, offsetPosition);
+                final long bindTime = System.nanoTime() - start;
+                getRecycledViewPool().factorInBindTime(holder.getItemViewType(), bindTime);
+                if (mFrameStats != null) {
+                    mFrameStats.addBindTime(holder.getItemViewType(), bindTime);
+                }
                 attachAccessibilityDelegate(holder.itemView);
                 bound = true;
                 if (mState.isPreLayout()) {
@@ -4319,6 +5052,9 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
                 final int pos = holder.getLayoutPosition();
                 if (pos >= positionStart && pos < positionEnd) {
                     holder.addFlags(ViewHolder.FLAG_UPDATE);
+                    // payloads are only useful for the views on screen, fully rebind the cached
+                    // ones
+                    holder.addChangePayload(null);
                     // cached views should not be flagged as changed because this will cause them
                     // to animate when they are returned from cache.
                 }
@@ -4466,6 +5202,31 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          */
         public abstract void onBindViewHolder(VH holder, int position);
 
+        /**
+         * Called by RecyclerView to display the data at the specified position. This method
+         * should update the contents of the {@link ViewHolder#itemView} to reflect the item at
+         * the given position.
+         * <p>
+         * The payloads parameter is a merged list of the payloads passed to
+         * {@link #notifyItemChanged(int, Object)} or
+         * {@link #notifyItemRangeChanged(int, int, Object)} for this item since it was last
+         * bound. If the payloads list is not empty, the ViewHolder is currently bound to the old
+         * data of the same item and the Adapter may run an efficient partial update using the
+         * payload info. If the payloads list is empty, the Adapter must run a full bind.
+         * <p>
+         * The default implementation ignores the payloads and calls
+         * {@link #onBindViewHolder(ViewHolder, int)}.
+         *
+         * @param holder The ViewHolder which should be updated to represent the contents of the
+         *               item at the given position in the data set.
+         * @param position The position of the item within the adapter's data set.
+         * @param payloads A non-null list of merged payloads. Can be an empty list if requires
+         *                 full update.
+         */
+        public void onBindViewHolder(VH holder, int position, List<Object> payloads) {
+            onBindViewHolder(holder, position);
+        }
+
         /**
          * This method calls {@link #onCreateViewHolder(ViewGroup, int)} to create a new
          * {@link ViewHolder} and initializes some private fields to be used by RecyclerView.
@@ -4479,11 +5240,11 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         /**
-         * This method internally calls {@link #onBindViewHolder(ViewHolder, int)} to update the
-         * {@link ViewHolder} contents with the item at the given position and also sets up some
-         * private fields to be used by RecyclerView.
+         * This method internally calls {@link #onBindViewHolder(ViewHolder, int, List)} to update
+         * the {@link ViewHolder} contents with the item at the given position and also sets up
+         * some private fields to be used by RecyclerView.
          *
-         * @see #onBindViewHolder(ViewHolder, int)
+         * @see #onBindViewHolder(ViewHolder, int, List)
          */
         public final void bindViewHolder(VH holder, int position) {
             holder.mPosition = position;
@@ -4493,7 +5254,24 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             holder.setFlags(ViewHolder.FLAG_BOUND,
                     ViewHolder.FLAG_BOUND | ViewHolder.FLAG_UPDATE | ViewHolder.FLAG_INVALID
                             | ViewHolder.FLAG_ADAPTER_POSITION_UNKNOWN);
-            onBindViewHolder(holder, position);
+            onBindViewHolder(holder, position, holder.getUnmodifiedPayloads());
+            holder.clearPayload();
+        }
+
+        /**
+         * Returns whether {@link #onCreateViewHolder(ViewGroup, int)} can be called on a
+         * background thread for the given view type.
+         * <p>
+         * This is used by {@link RecycledViewPool#prewarm(RecyclerView, int, int)} to create
+         * ViewHolders off the main thread. Only return <code>true</code> if creating the
+         * ViewHolder does not touch any state which is confined to the main thread. The default
+         * implementation returns <code>false</code>.
+         *
+         * @param viewType The view type of the ViewHolders to be created
+         * @return True if ViewHolders of this type can be created on a background thread
+         */
+        public boolean canCreateViewHolderInBackground(int viewType) {
+            return false;
         }
 
         /**
@@ -4752,6 +5530,32 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mObservable.notifyItemRangeChanged(position, 1);
         }
 
+        /**
+         * Notify any registered observers that the item at <code>position</code> has changed with
+         * an optional payload object.
+         *
+         * <p>This is an item change event, not a structural change event. It indicates that any
+         * reflection of the data at <code>position</code> is out of date and should be updated.
+         * The item at <code>position</code> retains the same identity.</p>
+         *
+         * <p>Client can optionally pass a payload for partial change. These payloads will be
+         * merged and passed to {@link #onBindViewHolder(ViewHolder, int, List)} if the item is
+         * already represented by a ViewHolder and it will be rebound to the same ViewHolder.
+         * A notifyItemRangeChanged() with a null payload will clear all existing payloads on
+         * that item and prevent future payloads until
+         * {@link #onBindViewHolder(ViewHolder, int, List)} is called. Adapter should not assume
+         * that the payload will always be passed to onBindViewHolder(), e.g. when the view is
+         * not attached, the payload will be simply dropped.</p>
+         *
+         * @param position Position of the item that has changed
+         * @param payload Optional parameter, use null to identify a "full" update
+         *
+         * @see #notifyItemRangeChanged(int, int, Object)
+         */
+        public final void notifyItemChanged(int position, Object payload) {
+            mObservable.notifyItemRangeChanged(position, 1, payload);
+        }
+
         /**
          * Notify any registered observers that the <code>itemCount</code> items starting at
          * position <code>positionStart</code> have changed.
@@ -4769,6 +5573,31 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mObservable.notifyItemRangeChanged(positionStart, itemCount);
         }
 
+        /**
+         * Notify any registered observers that the <code>itemCount</code> items starting at
+         * position <code>positionStart</code> have changed. An optional payload can be
+         * passed to each changed item.
+         *
+         * <p>This is an item change event, not a structural change event. It indicates that any
+         * reflection of the data in the given position range is out of date and should be updated.
+         * The items in the given range retain the same identity.</p>
+         *
+         * <p>Client can optionally pass a payload for partial change. These payloads will be
+         * merged and passed to {@link #onBindViewHolder(ViewHolder, int, List)} if the item is
+         * already represented by a ViewHolder and it will be rebound to the same ViewHolder.
+         * See {@link #notifyItemChanged(int, Object)} for details.</p>
+         *
+         * @param positionStart Position of the first item that has changed
+         * @param itemCount Number of items that have changed
+         * @param payload  Optional parameter, use null to identify a "full" update
+         *
+         * @see #notifyItemChanged(int, Object)
+         */
+        public final void notifyItemRangeChanged(int positionStart, int itemCount,
+                Object payload) {
+            mObservable.notifyItemRangeChanged(positionStart, itemCount, payload);
+        }
+
         /**
          * Notify any registered observers that the item reflected at <code>position</code>
          * has been newly inserted. The item previously at <code>position</code> is now at
@@ -4886,6 +5715,8 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
 
         private boolean mRequestedSimpleAnimations = false;
 
+        private boolean mItemPrefetchEnabled = true;
+
         void setRecyclerView(RecyclerView recyclerView) {
             if (recyclerView == null) {
                 mRecyclerView = null;
@@ -4956,6 +5787,73 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             return false;
         }
 
+        /**
+         * Sets whether the LayoutManager should be queried for views outside of its viewport
+         * while the RecyclerView is scrolling.
+         * <p>
+         * When enabled, RecyclerView uses the time left in a frame after it is drawn to create
+         * and bind the Views returned by
+         * {@link #gatherPrefetchIndices(int, int, State, int[])} and keeps them in its view
+         * cache, so the frame which makes them visible does not have to do this work.
+         * <p>
+         * Enabled by default. Prefetching has no effect unless the LayoutManager returns a
+         * positive value from {@link #getItemPrefetchCount()}.
+         *
+         * @param enabled True if items should be prefetched while scrolling
+         * @see #isItemPrefetchEnabled()
+         */
+        public final void setItemPrefetchEnabled(boolean enabled) {
+            if (enabled != mItemPrefetchEnabled) {
+                mItemPrefetchEnabled = enabled;
+                if (mRecyclerView != null) {
+                    mRecyclerView.mRecycler.updateViewCacheSize();
+                }
+            }
+        }
+
+        /**
+         * Returns whether the LayoutManager prefetches items while the RecyclerView is
+         * scrolling.
+         *
+         * @return True if items are prefetched
+         * @see #setItemPrefetchEnabled(boolean)
+         */
+        public final boolean isItemPrefetchEnabled() {
+            return mItemPrefetchEnabled;
+        }
+
+        /**
+         * Returns the maximum number of positions
+         * {@link #gatherPrefetchIndices(int, int, State, int[])} may return. RecyclerView grows
+         * its view cache by this amount so that prefetched Views are not evicted before they are
+         * used.
+         * <p>
+         * The default implementation returns 0, which disables prefetching.
+         *
+         * @return Maximum number of items to prefetch
+         */
+        public int getItemPrefetchCount() {
+            return 0;
+        }
+
+        /**
+         * Called while the RecyclerView is scrolling to find the adapter positions which will be
+         * laid out next if the scroll continues by the given amount.
+         * <p>
+         * Implementations should put the positions in the order they are expected to become
+         * visible and must not add or remove any Views.
+         *
+         * @param dx Horizontal distance of the last scroll step
+         * @param dy Vertical distance of the last scroll step
+         * @param state Current state of RecyclerView
+         * @param outIndices Array to fill with the positions to prefetch. It has at least
+         *                   {@link #getItemPrefetchCount()} elements.
+         * @return The number of positions written to <code>outIndices</code>
+         */
+        public int gatherPrefetchIndices(int dx, int dy, State state, int[] outIndices) {
+            return 0;
+        }
+
         /**
          * Called when this LayoutManager is both attached to a RecyclerView and that RecyclerView
          * is attached to a window.
@@ -7077,6 +7975,262 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         public void onViewRecycled(ViewHolder holder);
     }
 
+    /**
+     * A FrameStatsListener can be set on a RecyclerView to receive where the time of its layout,
+     * scroll and item animation passes is spent.
+     *
+     * @see RecyclerView#setFrameStatsListener(FrameStatsListener)
+     */
+    public interface FrameStatsListener {
+
+        /**
+         * Called at the end of each layout, scroll or item animation pass of the RecyclerView.
+         * <p>
+         * The provided FrameStats object is reused for the next pass and is reset as soon as
+         * this method returns, so you should copy the values you need instead of keeping a
+         * reference to it.
+         *
+         * @param recyclerView The RecyclerView which completed the pass
+         * @param stats        The statistics collected since the previous pass
+         */
+        public void onFrameStats(RecyclerView recyclerView, FrameStats stats);
+    }
+
+    /**
+     * Timing and recycling statistics collected by RecyclerView between two calls to its
+     * {@link FrameStatsListener}.
+     * <p>
+     * Each pass reports the work done since the previous report, so create and bind calls
+     * triggered outside of a layout or scroll (e.g. while prefetching) are attributed to the
+     * next pass.
+     */
+    public static class FrameStats {
+
+        /**
+         * The pass was a layout of the RecyclerView's children.
+         */
+        public static final int PASS_LAYOUT = 0;
+
+        /**
+         * The pass was a scroll step, either from a touch event, a fling or a smooth scroll.
+         */
+        public static final int PASS_SCROLL = 1;
+
+        /**
+         * The pass was the {@link ItemAnimator#runPendingAnimations()} call following a layout.
+         */
+        public static final int PASS_ANIMATION = 2;
+
+        int mPassType;
+
+        long mPreLayoutTimeNanos;
+
+        long mPostLayoutTimeNanos;
+
+        long mScrollTimeNanos;
+
+        long mItemAnimatorTimeNanos;
+
+        int mViewRequestCount;
+
+        int mScrapHitCount;
+
+        int mCacheHitCount;
+
+        int mPoolHitCount;
+
+        // per view type timings, kept in parallel arrays to avoid allocations once all view
+        // types have been seen
+        private int mViewTypeCount;
+
+        private int[] mViewTypes = new int[4];
+
+        private int[] mCreateCounts = new int[4];
+
+        private long[] mCreateTimesNanos = new long[4];
+
+        private int[] mBindCounts = new int[4];
+
+        private long[] mBindTimesNanos = new long[4];
+
+        FrameStats() {
+        }
+
+        void reset() {
+            mPreLayoutTimeNanos = mPostLayoutTimeNanos = mScrollTimeNanos = 0;
+            mItemAnimatorTimeNanos = 0;
+            mViewRequestCount = mScrapHitCount = mCacheHitCount = mPoolHitCount = 0;
+            mViewTypeCount = 0;
+        }
+
+        void addCreateTime(int viewType, long nanos) {
+            final int index = indexForViewType(viewType);
+            mCreateCounts[index]++;
+            mCreateTimesNanos[index] += nanos;
+        }
+
+        void addBindTime(int viewType, long nanos) {
+            final int index = indexForViewType(viewType);
+            mBindCounts[index]++;
+            mBindTimesNanos[index] += nanos;
+        }
+
+        private int indexForViewType(int viewType) {
+            for (int i = 0; i < mViewTypeCount; i++) {
+                if (mViewTypes[i] == viewType) {
+                    return i;
+                }
+            }
+            if (mViewTypeCount == mViewTypes.length) {
+                final int newLength = mViewTypeCount * 2;
+                int[] viewTypes = new int[newLength];
+                System.arraycopy(mViewTypes, 0, viewTypes, 0, mViewTypeCount);
+                mViewTypes = viewTypes;
+                int[] createCounts = new int[newLength];
+                System.arraycopy(mCreateCounts, 0, createCounts, 0, mViewTypeCount);
+                mCreateCounts = createCounts;
+                long[] createTimes = new long[newLength];
+                System.arraycopy(mCreateTimesNanos, 0, createTimes, 0, mViewTypeCount);
+                mCreateTimesNanos = createTimes;
+                int[] bindCounts = new int[newLength];
+                System.arraycopy(mBindCounts, 0, bindCounts, 0, mViewTypeCount);
+                mBindCounts = bindCounts;
+                long[] bindTimes = new long[newLength];
+                System.arraycopy(mBindTimesNanos, 0, bindTimes, 0, mViewTypeCount);
+                mBindTimesNanos = bindTimes;
+            }
+            final int index = mViewTypeCount++;
+            mViewTypes[index] = viewType;
+            mCreateCounts[index] = 0;
+            mCreateTimesNanos[index] = 0;
+            mBindCounts[index] = 0;
+            mBindTimesNanos[index] = 0;
+            return index;
+        }
+
+        /**
+         * @return One of {@link #PASS_LAYOUT}, {@link #PASS_SCROLL} or {@link #PASS_ANIMATION}.
+         */
+        public int getPassType() {
+            return mPassType;
+        }
+
+        /**
+         * Returns the time spent in the layout pass before the real layout, which includes
+         * processing adapter updates and the pre-layout pass used for predictive animations.
+         *
+         * @return Pre-layout time in nanoseconds, 0 if this is not a layout pass.
+         */
+        public long getPreLayoutTimeNanos() {
+            return mPreLayoutTimeNanos;
+        }
+
+        /**
+         * Returns the time spent in the real layout and in dispatching the item animations.
+         *
+         * @return Post-layout time in nanoseconds, 0 if this is not a layout pass.
+         */
+        public long getPostLayoutTimeNanos() {
+            return mPostLayoutTimeNanos;
+        }
+
+        /**
+         * @return Time spent in the LayoutManager's scroll methods in nanoseconds, 0 if this is
+         * not a scroll pass.
+         */
+        public long getScrollTimeNanos() {
+            return mScrollTimeNanos;
+        }
+
+        /**
+         * @return Time spent in {@link ItemAnimator#runPendingAnimations()} in nanoseconds, 0 if
+         * this is not an animation pass.
+         */
+        public long getItemAnimatorTimeNanos() {
+            return mItemAnimatorTimeNanos;
+        }
+
+        /**
+         * @return The number of views the LayoutManager requested from the {@link Recycler}.
+         */
+        public int getViewRequestCount() {
+            return mViewRequestCount;
+        }
+
+        /**
+         * @return The number of requested views which were found in the scrap of the
+         * {@link Recycler}.
+         */
+        public int getScrapHitCount() {
+            return mScrapHitCount;
+        }
+
+        /**
+         * @return The number of requested views which were found in the view cache of the
+         * {@link Recycler}.
+         */
+        public int getCacheHitCount() {
+            return mCacheHitCount;
+        }
+
+        /**
+         * @return The number of requested views which were found in the
+         * {@link RecycledViewPool}.
+         */
+        public int getPoolHitCount() {
+            return mPoolHitCount;
+        }
+
+        /**
+         * @return The number of view types which have been created or bound in this pass.
+         */
+        public int getViewTypeCount() {
+            return mViewTypeCount;
+        }
+
+        /**
+         * @param index Index between 0 and {@link #getViewTypeCount()}
+         * @return The view type at the given index
+         */
+        public int getViewTypeAt(int index) {
+            return mViewTypes[index];
+        }
+
+        /**
+         * @param index Index between 0 and {@link #getViewTypeCount()}
+         * @return The number of ViewHolders created for the view type at the given index
+         */
+        public int getCreateCountAt(int index) {
+            return mCreateCounts[index];
+        }
+
+        /**
+         * @param index Index between 0 and {@link #getViewTypeCount()}
+         * @return Total time spent in {@link Adapter#onCreateViewHolder(ViewGroup, int)} for the
+         * view type at the given index, in nanoseconds
+         */
+        public long getCreateTimeNanosAt(int index) {
+            return mCreateTimesNanos[index];
+        }
+
+        /**
+         * @param index Index between 0 and {@link #getViewTypeCount()}
+         * @return The number of ViewHolders bound for the view type at the given index
+         */
+        public int getBindCountAt(int index) {
+            return mBindCounts[index];
+        }
+
+        /**
+         * @param index Index between 0 and {@link #getViewTypeCount()}
+         * @return Total time spent in {@link Adapter#onBindViewHolder(ViewHolder, int)} for the
+         * view type at the given index, in nanoseconds
+         */
+        public long getBindTimeNanosAt(int index) {
+            return mBindTimesNanos[index];
+        }
+    }
+
     /**
      * A ViewHolder describes an item view and metadata about its place within the RecyclerView.
      *
@@ -7170,8 +8324,19 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          */
         static final int FLAG_ADAPTER_POSITION_UNKNOWN = 1 << 9;
 
+        /**
+         * Set when a addChangePayload(null) is called
+         */
+        static final int FLAG_ADAPTER_FULLUPDATE = 1 << 10;
+
         private int mFlags;
 
+        private static final List<Object> FULLUPDATE_PAYLOADS = Collections.emptyList();
+
+        List<Object> mPayloads = null;
+
+        List<Object> mUnmodifiedPayloads = null;
+
         private int mIsRecyclableCount = 0;
 
         // If non-null, view is currently considered scrap and may be reused for other data by the
@@ -7184,6 +8349,13 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
          */
         RecyclerView mOwnerRecyclerView;
 
+        /**
+         * Weight and insertion order assigned by a {@link RecycledViewPool} with a memory budget
+         * while this ViewHolder is in the pool.
+         */
+        int mPoolWeight;
+        long mPoolSequence;
+
         public ViewHolder(View itemView) {
             if (itemView == null) {
                 throw new IllegalArgumentException("itemView may not be null");
@@ -7396,6 +8568,43 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mFlags |= flags;
         }
 
+        void addChangePayload(Object payload) {
+            if (payload == null) {
+                addFlags(FLAG_ADAPTER_FULLUPDATE);
+            } else if ((mFlags & FLAG_ADAPTER_FULLUPDATE) == 0) {
+                createPayloadsIfNeeded();
+                mPayloads.add(payload);
+            }
+        }
+
+        private void createPayloadsIfNeeded() {
+            if (mPayloads == null) {
+                mPayloads = new ArrayList<Object>();
+                mUnmodifiedPayloads = Collections.unmodifiableList(mPayloads);
+            }
+        }
+
+        void clearPayload() {
+            if (mPayloads != null) {
+                mPayloads.clear();
+            }
+            mFlags = mFlags & ~FLAG_ADAPTER_FULLUPDATE;
+        }
+
+        List<Object> getUnmodifiedPayloads() {
+            if ((mFlags & (FLAG_ADAPTER_FULLUPDATE | FLAG_INVALID)) == 0) {
+                if (mPayloads == null || mPayloads.size() == 0) {
+                    // Initial state,  no update being called.
+                    return FULLUPDATE_PAYLOADS;
+                }
+                // there are none-null payloads
+                return mUnmodifiedPayloads;
+            } else {
+                // a full update has been called.
+                return FULLUPDATE_PAYLOADS;
+            }
+        }
+
         void resetInternal() {
             mFlags = 0;
             mPosition = NO_POSITION;
@@ -7405,6 +8614,7 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             mIsRecyclableCount = 0;
             mShadowedHolder = null;
             mShadowingHolder = null;
+            clearPayload();
         }
 
         @Override
@@ -7615,6 +8825,12 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
             // do nothing
         }
 
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            // fallback to onItemRangeChanged(positionStart, itemCount) if app
+            // does not override this method.
+            onItemRangeChanged(positionStart, itemCount);
+        }
+
         public void onItemRangeInserted(int positionStart, int itemCount) {
             // do nothing
         }
@@ -8010,12 +9226,16 @@ public class RecyclerView extends ViewGroup implements ScrollingView {
         }
 
         public void notifyItemRangeChanged(int positionStart, int itemCount) {
+            notifyItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        public void notifyItemRangeChanged(int positionStart, int itemCount, Object payload) {
             // since onItemRangeChanged() is implemented by the app, it could do anything, including
             // removing itself from {@link mObservers} - and that could cause problems if
             // an iterator is used on the ArrayList {@link mObservers}.
             // to avoid such problems, just march thru the list in the reverse order.
             for (int i = mObservers.size() - 1; i >= 0; i--) {
-                mObservers.get(i).onItemRangeChanged(positionStart, itemCount);
+                mObservers.get(i).onItemRangeChanged(positionStart, itemCount, payload);
             }
         }
 
@@ -95,4 +95,37 @@ class ScrollbarHelper {
         // estimate a size for full list.
         return (int) ((float) laidOutArea / laidOutRange * state.getItemCount());
     }
+
+    /**
+     * Computes the exact scroll offset for a list in which every item has the same size.
+     *
+     * @param startChild View closest to start of the list. (top or left)
+     * @param endChild   View closest to end of the list (bottom or right)
+     * @param itemExtent The decorated size of every item
+     */
+    static int computeUniformScrollOffset(RecyclerView.State state,
+            OrientationHelper orientation, View startChild, View endChild,
+            RecyclerView.LayoutManager lm, int itemExtent, boolean reverseLayout) {
+        if (lm.getChildCount() == 0 || state.getItemCount() == 0 || startChild == null ||
+                endChild == null) {
+            return 0;
+        }
+        final int itemsBefore = reverseLayout
+                ? Math.max(0, state.getItemCount() - Math.max(lm.getPosition(startChild),
+                        lm.getPosition(endChild)) - 1)
+                : Math.max(0, Math.min(lm.getPosition(startChild), lm.getPosition(endChild)));
+        final long offset = (long) itemsBefore * itemExtent
+                + orientation.getStartAfterPadding() - orientation.getDecoratedStart(startChild);
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, offset));
+    }
+
+    /**
+     * Computes the exact scroll range for a list in which every item has the same size. Unlike
+     * the other methods, it does not need any laid out children.
+     *
+     * @param itemExtent The decorated size of every item
+     */
+    static int computeUniformScrollRange(RecyclerView.State state, int itemExtent) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) state.getItemCount() * itemExtent);
+    }
 }
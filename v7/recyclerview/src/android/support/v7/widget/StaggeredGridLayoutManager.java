@@ -647,7 +647,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         }
         if (mPendingSavedState.mSpanLookupSize > 1) {
             mLazySpanLookup.mData = mPendingSavedState.mSpanLookup;
-            mLazySpanLookup.mFullSpanItems = mPendingSavedState.mFullSpanItems;
+            mLazySpanLookup.setFullSpanItems(mPendingSavedState.mFullSpanItems);
         }
     }
 
@@ -1040,7 +1040,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         if (mLazySpanLookup != null && mLazySpanLookup.mData != null) {
             state.mSpanLookup = mLazySpanLookup.mData;
             state.mSpanLookupSize = state.mSpanLookup.length;
-            state.mFullSpanItems = mLazySpanLookup.mFullSpanItems;
+            state.mFullSpanItems = mLazySpanLookup.getFullSpanItems();
         } else {
             state.mSpanLookupSize = 0;
         }
@@ -2291,20 +2291,24 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
 
         private static final int MIN_SIZE = 10;
         int[] mData;
-        List<FullSpanItem> mFullSpanItems;
 
+        /**
+         * Positions of the full span items, sorted in ascending order. The item for each position
+         * is kept at the same index in {@link #mFullSpanItems}. Only the first
+         * {@link #mFullSpanCount} entries of both arrays are valid.
+         */
+        int[] mFullSpanPositions;
+        FullSpanItem[] mFullSpanItems;
+        int mFullSpanCount;
 
         /**
          * Invalidates everything after this position, including full span information
          */
         int forceInvalidateAfter(int position) {
-            if (mFullSpanItems != null) {
-                for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                    FullSpanItem fsi = mFullSpanItems.get(i);
-                    if (fsi.mPosition >= position) {
-                        mFullSpanItems.remove(i);
-                    }
-                }
+            if (mFullSpanCount > 0) {
+                final int index = findFirstFullSpanIndex(position);
+                Arrays.fill(mFullSpanItems, index, mFullSpanCount, null);
+                mFullSpanCount = index;
             }
             return invalidateAfter(position);
         }
@@ -2367,7 +2371,9 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
             if (mData != null) {
                 Arrays.fill(mData, LayoutParams.INVALID_SPAN_ID);
             }
+            mFullSpanPositions = null;
             mFullSpanItems = null;
+            mFullSpanCount = 0;
         }
 
         void offsetForRemoval(int positionStart, int itemCount) {
@@ -2383,21 +2389,13 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         }
 
         private void offsetFullSpansForRemoval(int positionStart, int itemCount) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanCount == 0) {
                 return;
             }
-            final int end = positionStart + itemCount;
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition < positionStart) {
-                    continue;
-                }
-                if (fsi.mPosition < end) {
-                    mFullSpanItems.remove(i);
-                } else {
-                    fsi.mPosition -= itemCount;
-                }
-            }
+            final int start = findFirstFullSpanIndex(positionStart);
+            final int end = findFirstFullSpanIndex(positionStart + itemCount);
+            removeFullSpanItems(start, end - start);
+            offsetFullSpanPositions(start, -itemCount);
         }
 
         void offsetForAddition(int positionStart, int itemCount) {
@@ -2413,15 +2411,16 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
         }
 
         private void offsetFullSpansForAddition(int positionStart, int itemCount) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanCount == 0) {
                 return;
             }
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition < positionStart) {
-                    continue;
-                }
-                fsi.mPosition += itemCount;
+            offsetFullSpanPositions(findFirstFullSpanIndex(positionStart), itemCount);
+        }
+
+        private void offsetFullSpanPositions(int startIndex, int offset) {
+            for (int i = startIndex; i < mFullSpanCount; i++) {
+                mFullSpanPositions[i] += offset;
+                mFullSpanItems[i].mPosition += offset;
             }
         }
 
@@ -2430,65 +2429,59 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
          * Returned position SHOULD BE invalidated.
          */
         private int invalidateFullSpansAfter(int position) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanCount == 0) {
                 return RecyclerView.NO_POSITION;
             }
-            final FullSpanItem item = getFullSpanItem(position);
+            final int index = findFirstFullSpanIndex(position);
             // if there is an fsi at this position, get rid of it.
-            if (item != null) {
-                mFullSpanItems.remove(item);
-            }
-            int nextFsiIndex = -1;
-            final int count = mFullSpanItems.size();
-            for (int i = 0; i < count; i++) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition >= position) {
-                    nextFsiIndex = i;
-                    break;
-                }
+            if (index < mFullSpanCount && mFullSpanPositions[index] == position) {
+                removeFullSpanItems(index, 1);
             }
-            if (nextFsiIndex != -1) {
-                FullSpanItem fsi = mFullSpanItems.get(nextFsiIndex);
-                mFullSpanItems.remove(nextFsiIndex);
-                return fsi.mPosition;
+            if (index < mFullSpanCount) {
+                final int nextPosition = mFullSpanPositions[index];
+                removeFullSpanItems(index, 1);
+                return nextPosition;
             }
             return RecyclerView.NO_POSITION;
         }
 
         public void addFullSpanItem(FullSpanItem fullSpanItem) {
-            if (mFullSpanItems == null) {
-                mFullSpanItems = new ArrayList<FullSpanItem>();
-            }
-            final int size = mFullSpanItems.size();
-            for (int i = 0; i < size; i++) {
-                FullSpanItem other = mFullSpanItems.get(i);
-                if (other.mPosition == fullSpanItem.mPosition) {
-                    if (DEBUG) {
-                        throw new IllegalStateException("two fsis for same position");
-                    } else {
-                        mFullSpanItems.remove(i);
-                    }
-                }
-                if (other.mPosition >= fullSpanItem.mPosition) {
-                    mFullSpanItems.add(i, fullSpanItem);
-                    return;
+            final int index = binarySearchFullSpans(fullSpanItem.mPosition);
+            if (index >= 0) {
+                if (DEBUG) {
+                    throw new IllegalStateException("two fsis for same position");
                 }
+                mFullSpanItems[index] = fullSpanItem;
+                return;
             }
-            // if it is not added to a position.
-            mFullSpanItems.add(fullSpanItem);
+            final int insertIndex = ~index;
+            if (mFullSpanItems == null) {
+                mFullSpanPositions = new int[MIN_SIZE];
+                mFullSpanItems = new FullSpanItem[MIN_SIZE];
+            } else if (mFullSpanCount == mFullSpanItems.length) {
+                final int newSize = mFullSpanCount * 2;
+                final int[] oldPositions = mFullSpanPositions;
+                final FullSpanItem[] oldItems = mFullSpanItems;
+                mFullSpanPositions = new int[newSize];
+                mFullSpanItems = new FullSpanItem[newSize];
+                System.arraycopy(oldPositions, 0, mFullSpanPositions, 0, mFullSpanCount);
+                System.arraycopy(oldItems, 0, mFullSpanItems, 0, mFullSpanCount);
+            }
+            System.arraycopy(mFullSpanPositions, insertIndex, mFullSpanPositions,
+                    insertIndex + 1, mFullSpanCount - insertIndex);
+            System.arraycopy(mFullSpanItems, insertIndex, mFullSpanItems, insertIndex + 1,
+                    mFullSpanCount - insertIndex);
+            mFullSpanPositions[insertIndex] = fullSpanItem.mPosition;
+            mFullSpanItems[insertIndex] = fullSpanItem;
+            mFullSpanCount++;
         }
 
         public FullSpanItem getFullSpanItem(int position) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanCount == 0) {
                 return null;
             }
-            for (int i = mFullSpanItems.size() - 1; i >= 0; i--) {
-                final FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition == position) {
-                    return fsi;
-                }
-            }
-            return null;
+            final int index = binarySearchFullSpans(position);
+            return index < 0 ? null : mFullSpanItems[index];
         }
 
         /**
@@ -2500,24 +2493,139 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
          */
         public FullSpanItem getFirstFullSpanItemInRange(int minPos, int maxPos, int gapDir,
                 boolean hasUnwantedGapAfter) {
-            if (mFullSpanItems == null) {
+            if (mFullSpanCount == 0) {
                 return null;
             }
-            final int limit = mFullSpanItems.size();
-            for (int i = 0; i < limit; i++) {
-                FullSpanItem fsi = mFullSpanItems.get(i);
-                if (fsi.mPosition >= maxPos) {
+            for (int i = findFirstFullSpanIndex(minPos); i < mFullSpanCount; i++) {
+                if (mFullSpanPositions[i] >= maxPos) {
                     return null;
                 }
-                if (fsi.mPosition >= minPos
-                        && (gapDir == 0 || fsi.mGapDir == gapDir ||
-                        (hasUnwantedGapAfter && fsi.mHasUnwantedGapAfter))) {
+                final FullSpanItem fsi = mFullSpanItems[i];
+                if (gapDir == 0 || fsi.mGapDir == gapDir ||
+                        (hasUnwantedGapAfter && fsi.mHasUnwantedGapAfter)) {
                     return fsi;
                 }
             }
             return null;
         }
 
+        /**
+         * Returns the full span items in position order to be saved, or null if there are none.
+         */
+        List<FullSpanItem> getFullSpanItems() {
+            if (mFullSpanCount == 0) {
+                return null;
+            }
+            final List<FullSpanItem> items = new ArrayList<FullSpanItem>(mFullSpanCount);
+            for (int i = 0; i < mFullSpanCount; i++) {
+                items.add(mFullSpanItems[i]);
+            }
+            return items;
+        }
+
+        void setFullSpanItems(List<FullSpanItem> items) {
+            mFullSpanPositions = null;
+            mFullSpanItems = null;
+            mFullSpanCount = 0;
+            if (items != null) {
+                final int size = items.size();
+                for (int i = 0; i < size; i++) {
+                    addFullSpanItem(items.get(i));
+                }
+            }
+        }
+
+        private void removeFullSpanItems(int index, int count) {
+            if (count <= 0) {
+                return;
+            }
+            final int tail = mFullSpanCount - index - count;
+            System.arraycopy(mFullSpanPositions, index + count, mFullSpanPositions, index, tail);
+            System.arraycopy(mFullSpanItems, index + count, mFullSpanItems, index, tail);
+            Arrays.fill(mFullSpanItems, mFullSpanCount - count, mFullSpanCount, null);
+            mFullSpanCount -= count;
+        }
+
+        /**
+         * Returns the index of the first full span item at or after the given position.
+         */
+        private int findFirstFullSpanIndex(int position) {
+            final int index = binarySearchFullSpans(position);
+            return index < 0 ? ~index : index;
+        }
+
+        /**
+         * Same contract as {@link Arrays#binarySearch(int[], int)}, limited to the valid full span
+         * positions.
+         */
+        private int binarySearchFullSpans(int position) {
+            int lo = 0;
+            int hi = mFullSpanCount - 1;
+            while (lo <= hi) {
+                final int mid = (lo + hi) >>> 1;
+                final int midVal = mFullSpanPositions[mid];
+                if (midVal < position) {
+                    lo = mid + 1;
+                } else if (midVal > position) {
+                    hi = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return ~lo;
+        }
+
+        /**
+         * Writes the given full span items in a compact form: the positions as a single int
+         * array followed by the gap direction, unwanted gap flag and span gaps of each item.
+         * This avoids writing the class name of every item as {@link Parcel#writeList(List)}
+         * would do.
+         */
+        static void writeFullSpanItems(Parcel dest, List<FullSpanItem> items) {
+            final int size = items == null ? 0 : items.size();
+            dest.writeInt(size);
+            if (size == 0) {
+                return;
+            }
+            final int[] positions = new int[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = items.get(i).mPosition;
+            }
+            dest.writeIntArray(positions);
+            for (int i = 0; i < size; i++) {
+                final FullSpanItem fsi = items.get(i);
+                dest.writeInt((fsi.mGapDir << 1) | (fsi.mHasUnwantedGapAfter ? 1 : 0));
+                if (fsi.mGapPerSpan != null && fsi.mGapPerSpan.length > 0) {
+                    dest.writeIntArray(fsi.mGapPerSpan);
+                } else {
+                    dest.writeInt(0);
+                }
+            }
+        }
+
+        /**
+         * Reads full span items written by {@link #writeFullSpanItems(Parcel, List)}.
+         */
+        static List<FullSpanItem> readFullSpanItems(Parcel in) {
+            final int size = in.readInt();
+            if (size == 0) {
+                return null;
+            }
+            final int[] positions = in.createIntArray();
+            final List<FullSpanItem> items = new ArrayList<FullSpanItem>(size);
+            for (int i = 0; i < size; i++) {
+                final FullSpanItem fsi = new FullSpanItem();
+                fsi.mPosition = positions[i];
+                final int flags = in.readInt();
+                fsi.mGapDir = flags >> 1;
+                fsi.mHasUnwantedGapAfter = (flags & 1) != 0;
+                final int[] gaps = in.createIntArray();
+                fsi.mGapPerSpan = gaps.length > 0 ? gaps : null;
+                items.add(fsi);
+            }
+            return items;
+        }
+
         /**
          * We keep information about full span items because they may create gaps in the UI.
          */
@@ -2629,8 +2737,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
             mReverseLayout = in.readInt() == 1;
             mAnchorLayoutFromEnd = in.readInt() == 1;
             mLastLayoutRTL = in.readInt() == 1;
-            mFullSpanItems = in.readArrayList(
-                    LazySpanLookup.FullSpanItem.class.getClassLoader());
+            mFullSpanItems = LazySpanLookup.readFullSpanItems(in);
         }
 
         public SavedState(SavedState other) {
@@ -2681,7 +2788,7 @@ public class StaggeredGridLayoutManager extends RecyclerView.LayoutManager {
             dest.writeInt(mReverseLayout ? 1 : 0);
             dest.writeInt(mAnchorLayoutFromEnd ? 1 : 0);
             dest.writeInt(mLastLayoutRTL ? 1 : 0);
-            dest.writeList(mFullSpanItems);
+            LazySpanLookup.writeFullSpanItems(dest, mFullSpanItems);
         }
 
         public static final Parcelable.Creator<SavedState> CREATOR
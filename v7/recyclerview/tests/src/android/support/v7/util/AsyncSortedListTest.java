@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class AsyncSortedListTest extends TestCase {
+
+    QueueExecutor mMainThread;
+    QueueExecutor mBackground;
+    AsyncSortedList<Integer> mList;
+    List<String> mEvents = new ArrayList<String>();
+    List<Integer> mContents = new ArrayList<Integer>();
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mMainThread = new QueueExecutor();
+        mBackground = new QueueExecutor();
+        mList = new AsyncSortedList<Integer>(Integer.class, new SortedList.Callback<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return o1.compareTo(o2);
+            }
+
+            @Override
+            public void onInserted(int position, int count) {
+                mEvents.add("add " + position + " " + count);
+                // the whole batch is visible before the first event
+                checkContents();
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                mEvents.add("remove " + position + " " + count);
+                checkContents();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                mEvents.add("move " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                mEvents.add("change " + position + " " + count);
+            }
+
+            @Override
+            public boolean areContentsTheSame(Integer oldItem, Integer newItem) {
+                return oldItem.equals(newItem);
+            }
+
+            @Override
+            public boolean areItemsTheSame(Integer item1, Integer item2) {
+                return item1.equals(item2);
+            }
+        }, mMainThread, mBackground);
+    }
+
+    void checkContents() {
+        assertEquals(mContents.size(), mList.size());
+        for (int i = 0; i < mContents.size(); i++) {
+            assertEquals(mContents.get(i), mList.get(i));
+        }
+    }
+
+    public void testAddAllIsPublishedAtOnce() {
+        mList.addAll(Arrays.asList(5, 1, 3));
+        assertEquals(0, mList.size());
+        mBackground.runAll();
+        // applied but not published yet
+        assertEquals(0, mList.size());
+        assertTrue(mEvents.isEmpty());
+        mContents.addAll(Arrays.asList(1, 3, 5));
+        mMainThread.runAll();
+        assertEquals(Arrays.asList("add 0 3"), mEvents);
+        checkContents();
+    }
+
+    public void testQueuedBatchesAreCoalesced() {
+        mList.addAll(Arrays.asList(2, 4));
+        mList.addAll(Arrays.asList(6, 8));
+        mList.submit(new AsyncSortedList.Batch<Integer>() {
+            @Override
+            public void apply(SortedList<Integer> list) {
+                list.add(10);
+            }
+        });
+        assertEquals(1, mBackground.size());
+        mBackground.runAll();
+        assertEquals(1, mMainThread.size());
+        mContents.addAll(Arrays.asList(2, 4, 6, 8, 10));
+        mMainThread.runAll();
+        assertEquals(Arrays.asList("add 0 5"), mEvents);
+    }
+
+    public void testRemoveAll() {
+        mList.addAll(Arrays.asList(1, 2, 3, 4, 5));
+        mBackground.runAll();
+        mContents.addAll(Arrays.asList(1, 2, 3, 4, 5));
+        mMainThread.runAll();
+        mEvents.clear();
+
+        mList.removeAll(Arrays.asList(2, 3, 5));
+        mBackground.runAll();
+        checkContents();
+        mContents.clear();
+        mContents.addAll(Arrays.asList(1, 4));
+        mMainThread.runAll();
+        assertEquals(Arrays.asList("remove 1 2", "remove 2 1"), mEvents);
+        checkContents();
+    }
+
+    public void testBatchSubmittedWhileApplying() {
+        mList.submit(new AsyncSortedList.Batch<Integer>() {
+            @Override
+            public void apply(SortedList<Integer> list) {
+                list.add(1);
+                mList.addAll(Arrays.asList(2));
+            }
+        });
+        mBackground.runAll();
+        assertEquals(2, mMainThread.size());
+        mContents.add(1);
+        mMainThread.runNext();
+        mContents.add(2);
+        mMainThread.runNext();
+        assertEquals(Arrays.asList("add 0 1", "add 1 1"), mEvents);
+    }
+
+    public void testFailingBatch() {
+        mList.addAll(Arrays.asList(5));
+        mBackground.runAll();
+        mContents.add(5);
+        mMainThread.runAll();
+        mEvents.clear();
+
+        mList.addAll(Arrays.asList(3));
+        mList.submit(new AsyncSortedList.Batch<Integer>() {
+            @Override
+            public void apply(SortedList<Integer> list) {
+                list.add(7);
+                throw new IllegalStateException("failing batch");
+            }
+        });
+        mBackground.runAll();
+        // the batch before the failing one is still published
+        assertEquals(2, mMainThread.size());
+        mContents.add(0, 3);
+        mMainThread.runNext();
+        assertEquals(Arrays.asList("add 0 1"), mEvents);
+        try {
+            mMainThread.runNext();
+            fail("the failure should be rethrown on the main thread");
+        } catch (IllegalStateException e) {
+            assertEquals("failing batch", e.getMessage());
+        }
+        checkContents();
+        mEvents.clear();
+
+        mList.addAll(Arrays.asList(9));
+        assertEquals(1, mBackground.size());
+        mBackground.runAll();
+        mContents.add(9);
+        mMainThread.runAll();
+        // nothing the failing batch did leaks into the next update
+        assertEquals(Arrays.asList("add 2 1"), mEvents);
+        checkContents();
+    }
+
+    public void testFailingComparator() {
+        mList.addAll(Arrays.asList(1, 2));
+        mBackground.runAll();
+        mContents.addAll(Arrays.asList(1, 2));
+        mMainThread.runAll();
+        mEvents.clear();
+
+        mList.submit(new AsyncSortedList.Batch<Integer>() {
+            @Override
+            public void apply(SortedList<Integer> list) {
+                list.addAll(3, null);
+            }
+        });
+        mBackground.runAll();
+        assertEquals(2, mMainThread.size());
+        mMainThread.runNext();
+        assertTrue(mEvents.isEmpty());
+        checkContents();
+        try {
+            mMainThread.runNext();
+            fail("the failure should be rethrown on the main thread");
+        } catch (NullPointerException e) {
+            // expected
+        }
+
+        mList.addAll(Arrays.asList(0));
+        mBackground.runAll();
+        mContents.add(0, 0);
+        mMainThread.runAll();
+        assertEquals(Arrays.asList("add 0 1"), mEvents);
+        checkContents();
+    }
+
+    static class QueueExecutor implements Executor {
+        final List<Runnable> mQueue = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            mQueue.add(command);
+        }
+
+        int size() {
+            return mQueue.size();
+        }
+
+        void runNext() {
+            mQueue.remove(0).run();
+        }
+
+        void runAll() {
+            while (!mQueue.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.support.v7.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class DiffUtilTest extends TestCase {
+
+    private static Random sRand = new Random(System.nanoTime());
+
+    private List<Item> mBefore = new ArrayList<Item>();
+
+    private List<Item> mAfter = new ArrayList<Item>();
+
+    private StringBuilder mLog = new StringBuilder();
+
+    private DiffUtil.Callback mCallback = new DiffUtil.Callback() {
+        @Override
+        public int getOldListSize() {
+            return mBefore.size();
+        }
+
+        @Override
+        public int getNewListSize() {
+            return mAfter.size();
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemIndex, int newItemIndex) {
+            return mBefore.get(oldItemIndex).id == mAfter.get(newItemIndex).id;
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemIndex, int newItemIndex) {
+            return mBefore.get(oldItemIndex).data.equals(mAfter.get(newItemIndex).data);
+        }
+
+        @Override
+        public Object getChangePayload(int oldItemIndex, int newItemIndex) {
+            return mAfter.get(newItemIndex).data;
+        }
+    };
+
+    public void testNoChange() {
+        initWithSize(5);
+        check();
+    }
+
+    public void testAddItems() {
+        initWithSize(2);
+        add(1);
+        check();
+    }
+
+    public void testAddToEmpty() {
+        initWithSize(0);
+        add(0);
+        check();
+    }
+
+    public void testRemoveAll() {
+        initWithSize(5);
+        while (mAfter.size() > 0) {
+            remove(0);
+        }
+        check();
+    }
+
+    public void testRemoveOne() {
+        initWithSize(1);
+        remove(0);
+        check();
+    }
+
+    public void testMove() {
+        initWithSize(5);
+        move(0, 4);
+        check();
+    }
+
+    public void testMoveAndChange() {
+        initWithSize(5);
+        move(1, 3);
+        update(3);
+        check();
+    }
+
+    public void testUpdate() {
+        initWithSize(5);
+        update(2);
+        update(3);
+        check();
+    }
+
+    public void testBatchesConsecutiveInserts() {
+        initWithSize(3);
+        for (int i = 0; i < 10; i++) {
+            add(1);
+        }
+        final List<String> events = new ArrayList<String>();
+        DiffUtil.calculateDiff(mCallback).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                events.add("add " + position + " " + count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                events.add("remove " + position + " " + count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                events.add("move " + fromPosition + " " + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                events.add("change " + position + " " + count);
+            }
+        });
+        assertEquals(1, events.size());
+        assertEquals("add 1 10", events.get(0));
+    }
+
+    public void testRandom() {
+        for (int x = 0; x < 10; x++) {
+            for (int i = 0; i < 100; i++) {
+                for (int j = 2; j < 40; j++) {
+                    testRandom(i, j);
+                }
+            }
+        }
+    }
+
+    private void testRandom(int initialSize, int operationCount) {
+        mLog.setLength(0);
+        initWithSize(initialSize);
+        for (int i = 0; i < operationCount; i++) {
+            int op = sRand.nextInt(5);
+            switch (op) {
+                case 0:
+                    add(sRand.nextInt(mAfter.size() + 1));
+                    break;
+                case 1:
+                    if (!mAfter.isEmpty()) {
+                        remove(sRand.nextInt(mAfter.size()));
+                    }
+                    break;
+                case 2:
+                    // move
+                    if (mAfter.size() > 0) {
+                        move(sRand.nextInt(mAfter.size()), sRand.nextInt(mAfter.size()));
+                    }
+                    break;
+                case 3:
+                    // update
+                    if (mAfter.size() > 0) {
+                        update(sRand.nextInt(mAfter.size()));
+                    }
+                    break;
+                case 4:
+                    // update with same contents
+                    if (mAfter.size() > 0) {
+                        updateWithSameContents(sRand.nextInt(mAfter.size()));
+                    }
+                    break;
+            }
+        }
+        check();
+    }
+
+    private void check() {
+        DiffUtil.DiffResult result = DiffUtil.calculateDiff(mCallback);
+        log("before", mBefore);
+        log("after", mAfter);
+        final List<Item> applied = new ArrayList<Item>(mBefore);
+        result.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.add(position + i, null);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    applied.remove(position);
+                }
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                applied.add(toPosition, applied.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                for (int i = 0; i < count; i++) {
+                    final Item item = applied.get(position + i);
+                    assertNotNull(mLog.toString(), item);
+                    item.changed = true;
+                    item.changePayload = payload;
+                }
+            }
+        });
+        assertEquals(mLog.toString(), mAfter.size(), applied.size());
+        for (int i = 0; i < mAfter.size(); i++) {
+            final Item expected = mAfter.get(i);
+            final Item actual = applied.get(i);
+            if (actual == null) {
+                assertTrue(mLog.toString(), expected.newItem);
+            } else {
+                assertEquals(mLog.toString(), expected.id, actual.id);
+                assertEquals(mLog.toString(), !expected.data.equals(actual.data), actual.changed);
+                if (actual.changed) {
+                    assertEquals(mLog.toString(), expected.data, actual.changePayload);
+                }
+            }
+        }
+        // same result without move detection
+        final List<Item> appliedNoMoves = new ArrayList<Item>(mBefore);
+        DiffUtil.calculateDiff(mCallback, false).dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    appliedNoMoves.add(position + i, null);
+                }
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                for (int i = 0; i < count; i++) {
+                    appliedNoMoves.remove(position);
+                }
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                fail("should not dispatch moves when move detection is disabled");
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+            }
+        });
+        assertEquals(mLog.toString(), mAfter.size(), appliedNoMoves.size());
+        for (Item item : mBefore) {
+            item.changed = false;
+            item.changePayload = null;
+        }
+    }
+
+    private void initWithSize(int size) {
+        mBefore.clear();
+        mAfter.clear();
+        for (int i = 0; i < size; i++) {
+            mBefore.add(new Item(false));
+        }
+        mAfter.addAll(mBefore);
+        mLog.append("initWithSize(" + size + ");\n");
+    }
+
+    private void log(String title, List<?> items) {
+        mLog.append(title).append(":").append(items.size()).append("\n");
+        for (Object item : items) {
+            mLog.append("  ").append(item).append("\n");
+        }
+    }
+
+    private void add(int index) {
+        mAfter.add(index, new Item(true));
+        mLog.append("add(").append(index).append(");\n");
+    }
+
+    private void move(int from, int to) {
+        mAfter.add(to, mAfter.remove(from));
+        mLog.append("move(").append(from).append(",").append(to).append(");\n");
+    }
+
+    private void remove(int index) {
+        mAfter.remove(index);
+        mLog.append("remove(").append(index).append(");\n");
+    }
+
+    private void update(int index) {
+        final Item existing = mAfter.get(index);
+        if (existing.newItem) {
+            return; // new item cannot be changed
+        }
+        final Item replacement = new Item(existing);
+        replacement.data = existing.data + "_changed";
+        mAfter.set(index, replacement);
+        mLog.append("update(").append(index).append(");\n");
+    }
+
+    private void updateWithSameContents(int index) {
+        final Item existing = mAfter.get(index);
+        if (existing.newItem) {
+            return; // new item cannot be changed
+        }
+        final Item replacement = new Item(existing);
+        mAfter.set(index, replacement);
+        mLog.append("updateWithSameContents(").append(index).append(");\n");
+    }
+
+    static class Item {
+        static long idCounter = 0;
+        final long id;
+        final boolean newItem;
+        boolean changed = false;
+        Object changePayload;
+        String data;
+
+        public Item(boolean newItem) {
+            id = idCounter++;
+            this.newItem = newItem;
+            data = "data" + id;
+        }
+
+        public Item(Item other) {
+            id = other.id;
+            newItem = other.newItem;
+            changed = other.changed;
+            data = other.data;
+        }
+
+        @Override
+        public String toString() {
+            return "Item{" + "id=" + id + ", newItem=" + newItem + ", changed=" + changed
+                    + ", data='" + data + '\'' + '}';
+        }
+    }
+}
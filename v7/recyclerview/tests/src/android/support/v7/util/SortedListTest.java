@@ -23,7 +23,9 @@ import android.support.v7.util.SortedList;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 public class SortedListTest extends TestCase {
@@ -148,6 +150,146 @@ public class SortedListTest extends TestCase {
         assertTrue(mAdditions.contains(new Pair(0, 5)));
     }
 
+    public void testAddAllToEmpty() {
+        Item[] items = new Item[]{new Item(5), new Item(1), new Item(3)};
+        mList.addAll(items);
+        assertEquals(3, size());
+        assertEquals(1, mList.get(0).cmpField);
+        assertEquals(3, mList.get(1).cmpField);
+        assertEquals(5, mList.get(2).cmpField);
+        assertEquals(1, mAdditions.size());
+        assertTrue(mAdditions.contains(new Pair(0, 3)));
+        // input should not be modified
+        assertEquals(5, items[0].cmpField);
+    }
+
+    public void testAddAllMerge() {
+        insert(new Item(2));
+        insert(new Item(6));
+        mAdditions.clear();
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 0; i < 5; i++) {
+            items.add(new Item(i * 2 + 1));
+        }
+        mList.addAll(items);
+        assertEquals(7, size());
+        for (int i = 1; i < size(); i++) {
+            assertTrue(mList.get(i - 1).cmpField <= mList.get(i).cmpField);
+        }
+        // 1 2 3 5 6 7 9 -> 1 at 0, 3 5 at 2, 7 9 at 5
+        assertEquals(3, mAdditions.size());
+        assertTrue(mAdditions.contains(new Pair(0, 1)));
+        assertTrue(mAdditions.contains(new Pair(2, 2)));
+        assertTrue(mAdditions.contains(new Pair(5, 2)));
+    }
+
+    public void testAddAllDuplicates() {
+        Item existing = new Item(3);
+        insert(existing);
+        mAdditions.clear();
+        Item sameContents = new Item(existing.id, existing.cmpField);
+        sameContents.data = existing.data;
+        Item duplicate1 = new Item(7);
+        Item duplicate2 = new Item(duplicate1.id, duplicate1.cmpField);
+        mList.addAll(sameContents, duplicate1, duplicate2);
+        assertEquals(2, size());
+        assertSame(sameContents, mList.get(0));
+        assertSame(duplicate2, mList.get(1));
+        assertEquals(0, mUpdates.size());
+        assertTrue(mAdditions.contains(new Pair(1, 1)));
+
+        Item changed = new Item(existing.id, existing.cmpField);
+        changed.data = existing.data + 1;
+        mList.addAll(changed);
+        assertEquals(2, size());
+        assertSame(changed, mList.get(0));
+        assertTrue(mUpdates.contains(new Pair(0, 1)));
+    }
+
+    public void testAddAllSharedSortKey() {
+        Item a = new Item(1, 5);
+        insert(a);
+        mAdditions.clear();
+        Item c = new Item(3, 5);
+        Item a2 = new Item(1, 5);
+        a2.data = a.data;
+        mList.addAll(c, a2);
+        assertEquals(2, size());
+        assertSame(a2, mList.get(0));
+        assertSame(c, mList.get(1));
+        assertEquals(0, mUpdates.size());
+        assertTrue(mAdditions.contains(new Pair(1, 1)));
+
+        Item b = new Item(2, 5);
+        Item d = new Item(4, 7);
+        mList.addAll(b, d);
+        mAdditions.clear();
+        Item b2 = new Item(2, 5);
+        b2.data = b.data + 1;
+        Item e = new Item(5, 5);
+        Item a3 = new Item(1, 5);
+        a3.data = a2.data;
+        Item c2 = new Item(3, 5);
+        c2.data = c.data;
+        Item d2 = new Item(4, 7);
+        d2.data = d.data;
+        mList.addAll(b2, e, c2, a3, d2);
+        assertEquals(5, size());
+        assertSame(a3, mList.get(0));
+        assertSame(c2, mList.get(1));
+        assertSame(b2, mList.get(2));
+        assertSame(e, mList.get(3));
+        assertSame(d2, mList.get(4));
+        assertEquals(1, mUpdates.size());
+        assertTrue(mUpdates.contains(new Pair(2, 1)));
+        assertEquals(1, mAdditions.size());
+        assertTrue(mAdditions.contains(new Pair(3, 1)));
+    }
+
+    public void testAddAllSharedSortKeyRandom() {
+        Random random = new Random(System.nanoTime());
+        Map<Integer, Item> expected = new HashMap<Integer, Item>();
+        for (int round = 0; round < 50; round++) {
+            Item[] batch = new Item[random.nextInt(20) + 1];
+            for (int i = 0; i < batch.length; i++) {
+                final int id = random.nextInt(30);
+                // only a few sort keys so that many items compare equal
+                batch[i] = new Item(id, id % 4);
+                expected.put(id, batch[i]);
+            }
+            mList.addAll(batch, random.nextBoolean());
+            assertEquals(expected.size(), size());
+            for (int i = 0; i < size(); i++) {
+                Item item = mList.get(i);
+                assertSame(expected.get(item.id), item);
+                if (i > 0) {
+                    assertTrue(mList.get(i - 1).cmpField <= item.cmpField);
+                }
+            }
+        }
+    }
+
+    public void testAddAllMatchesAdd() {
+        Random random = new Random(System.nanoTime());
+        SortedList<Item> reference = new SortedList<Item>(Item.class, mCallback);
+        for (int round = 0; round < 50; round++) {
+            Item[] batch = new Item[random.nextInt(100)];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = new Item(random.nextInt(200));
+                reference.add(batch[i]);
+            }
+            mList.addAll(batch, random.nextBoolean());
+            assertEquals(reference.size(), size());
+            for (int i = 0; i < size(); i++) {
+                assertEquals(reference.get(i).cmpField, mList.get(i).cmpField);
+                assertTrue(mList.indexOf(reference.get(i)) != SortedList.INVALID_POSITION);
+            }
+            for (int index = mList.size(); index < mList.mData.length; index++) {
+                assertNull(mList.mData[index]);
+            }
+        }
+    }
+
     public void testRandom() throws Throwable {
         Random random = new Random(System.nanoTime());
         List<Item> copy = new ArrayList<Item>();
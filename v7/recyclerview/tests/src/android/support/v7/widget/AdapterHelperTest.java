@@ -112,11 +112,12 @@ public class AdapterHelperTest extends AndroidTestCase {
             }
 
             @Override
-            public void markViewHoldersUpdated(int positionStart, int itemCount) {
+            public void markViewHoldersUpdated(int positionStart, int itemCount, Object payload) {
                 final int positionEnd = positionStart + itemCount;
                 for (ViewHolder holder : mViewHolders) {
                     if (holder.mPosition >= positionStart && holder.mPosition < positionEnd) {
                         holder.addFlags(ViewHolder.FLAG_UPDATE);
+                        holder.addChangePayload(payload);
                     }
                 }
             }
@@ -238,6 +239,79 @@ public class AdapterHelperTest extends AndroidTestCase {
                 25, mAdapterHelper.findPositionOffset(29));
     }
 
+    public void testPayloads() {
+        setupBasic(10, 2, 2);
+        up(0, 6, "payload");
+        preProcess();
+        assertOps(mFirstPassUpdates, upOp(0, 2, "payload"), upOp(4, 2, "payload"));
+        assertOps(mSecondPassUpdates, upOp(2, 2, "payload"));
+        for (ViewHolder holder : mViewHolders) {
+            assertEquals(1, holder.getUnmodifiedPayloads().size());
+            assertEquals("payload", holder.getUnmodifiedPayloads().get(0));
+        }
+    }
+
+    public void testPayloadsMergedInViewHolder() {
+        setupBasic(10, 2, 2);
+        up(2, 1, "a");
+        up(2, 2, "b");
+        preProcess();
+        ViewHolder first = mViewHolders.get(0);
+        assertEquals(2, first.getUnmodifiedPayloads().size());
+        assertEquals("a", first.getUnmodifiedPayloads().get(0));
+        assertEquals("b", first.getUnmodifiedPayloads().get(1));
+        assertEquals(1, mViewHolders.get(1).getUnmodifiedPayloads().size());
+    }
+
+    public void testNullPayloadForcesFullUpdate() {
+        setupBasic(10, 2, 2);
+        up(2, 1, "a");
+        up(2, 1);
+        up(2, 1, "b");
+        preProcess();
+        assertTrue(mViewHolders.get(0).getUnmodifiedPayloads().isEmpty());
+    }
+
+    public void testCoalesceInvisibleAdds() {
+        setupBasic(30, 0, 5);
+        for (int i = 0; i < 10; i++) {
+            add(20 + i, 1);
+        }
+        preProcess();
+        assertDispatch(0, 1);
+        assertOps(mSecondPassUpdates, addOp(20, 10));
+    }
+
+    public void testCoalesceInvisibleRemoves() {
+        setupBasic(30, 0, 5);
+        for (int i = 0; i < 10; i++) {
+            rm(20, 1);
+        }
+        preProcess();
+        assertDispatch(1, 0);
+        assertOps(mFirstPassUpdates, rmOp(20, 10));
+    }
+
+    public void testCoalesceVisibleRemoves() {
+        setupBasic(30, 5, 5);
+        rm(8, 1);
+        rm(7, 1);
+        rm(6, 1);
+        preProcess();
+        assertDispatch(0, 1);
+        assertOps(mSecondPassUpdates, rmOp(6, 3));
+    }
+
+    public void testCoalescePartiallyVisibleUpdates() {
+        setupBasic(30, 5, 5);
+        for (int i = 0; i < 10; i++) {
+            up(i, 1);
+        }
+        preProcess();
+        assertOps(mFirstPassUpdates, upOp(0, 5));
+        assertOps(mSecondPassUpdates, upOp(5, 5));
+    }
+
     public void testSinglePass() {
         setupBasic(10, 2, 3);
         add(2, 1);
@@ -885,7 +959,7 @@ public class AdapterHelperTest extends AndroidTestCase {
     }
 
     AdapterHelper.UpdateOp op(int cmd, int start, int count) {
-        return new AdapterHelper.UpdateOp(cmd, start, count);
+        return new AdapterHelper.UpdateOp(cmd, start, count, null);
     }
 
     AdapterHelper.UpdateOp addOp(int start, int count) {
@@ -900,6 +974,10 @@ public class AdapterHelperTest extends AndroidTestCase {
         return op(AdapterHelper.UpdateOp.UPDATE, start, count);
     }
 
+    AdapterHelper.UpdateOp upOp(int start, int count, Object payload) {
+        return new AdapterHelper.UpdateOp(AdapterHelper.UpdateOp.UPDATE, start, count, payload);
+    }
+
     void add(int start, int count) {
         if (DEBUG) {
             log("add(" + start + "," + count + ");");
@@ -943,6 +1021,13 @@ public class AdapterHelperTest extends AndroidTestCase {
         mTestAdapter.update(start, count);
     }
 
+    void up(int start, int count, Object payload) {
+        if (DEBUG) {
+            log("up(" + start + "," + count + "," + payload + ");");
+        }
+        mTestAdapter.update(start, count, payload);
+    }
+
     static class TestAdapter {
 
         List<Item> mItems;
@@ -967,14 +1052,14 @@ public class AdapterHelperTest extends AndroidTestCase {
                 mItems.add(index + i, item);
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.ADD, index, count
+                    AdapterHelper.UpdateOp.ADD, index, count, null
             ));
         }
 
         public void move(int from, int to) {
             mItems.add(to, mItems.remove(from));
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.MOVE, from, to
+                    AdapterHelper.UpdateOp.MOVE, from, to, null
             ));
         }
         public void remove(int index, int count) {
@@ -982,16 +1067,20 @@ public class AdapterHelperTest extends AndroidTestCase {
                 mItems.remove(index);
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.REMOVE, index, count
+                    AdapterHelper.UpdateOp.REMOVE, index, count, null
             ));
         }
 
         public void update(int index, int count) {
+            update(index, count, null);
+        }
+
+        public void update(int index, int count, Object payload) {
             for (int i = 0; i < count; i++) {
                 mItems.get(index + i).update();
             }
             mAdapterHelper.addUpdateOp(new AdapterHelper.UpdateOp(
-                    AdapterHelper.UpdateOp.UPDATE, index, count
+                    AdapterHelper.UpdateOp.UPDATE, index, count, payload
             ));
         }
 
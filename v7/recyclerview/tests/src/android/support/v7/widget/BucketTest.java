@@ -21,6 +21,7 @@ import android.test.AndroidTestCase;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Random;
 import java.util.Set;
 
 public class BucketTest extends AndroidTestCase {
@@ -123,6 +124,50 @@ public class BucketTest extends AndroidTestCase {
     }
 
 
+    public void testMatchesLinkedBucket() {
+        final Random random = new Random(1);
+        for (int run = 0; run < 50; run++) {
+            ChildHelper.Bucket bucket = new ChildHelper.Bucket();
+            LinkedBucket reference = new LinkedBucket();
+            int size = 0;
+            for (int i = 0; i < 500; i++) {
+                final int index = random.nextInt(size + ChildHelper.Bucket.BITS_PER_WORD);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        bucket.set(index);
+                        reference.set(index);
+                        size = Math.max(size, index + 1);
+                        break;
+                    case 1:
+                        bucket.clear(index);
+                        reference.clear(index);
+                        break;
+                    case 2:
+                    case 3:
+                        final boolean value = random.nextBoolean();
+                        bucket.insert(index, value);
+                        reference.insert(index, value);
+                        size = Math.max(size + 1, index + 1);
+                        break;
+                    case 4:
+                        assertEquals(reference.remove(index), bucket.remove(index));
+                        break;
+                    case 5:
+                        if (random.nextInt(50) == 0) {
+                            bucket.reset();
+                            reference.reset();
+                        }
+                        break;
+                }
+                for (int j = 0; j < size + ChildHelper.Bucket.BITS_PER_WORD; j++) {
+                    assertEquals("bit " + j, reference.get(j), bucket.get(j));
+                    assertEquals("ones before " + j, reference.countOnesBefore(j),
+                            bucket.countOnesBefore(j));
+                }
+            }
+        }
+    }
+
     public void testCountOnesBefore() {
         assertEquals(mBucket.countOnesBefore(0), 0);
         for (int i : mArr) {
@@ -140,4 +185,117 @@ public class BucketTest extends AndroidTestCase {
             assertEquals(count, mBucket.countOnesBefore(i));
         }
     }
+
+    /**
+     * The linked list based implementation the Bucket used to have, kept as a reference.
+     */
+    static class LinkedBucket {
+
+        final static int BITS_PER_WORD = Long.SIZE;
+
+        final static long LAST_BIT = 1L << (Long.SIZE - 1);
+
+        long mData = 0;
+
+        LinkedBucket next;
+
+        void set(int index) {
+            if (index >= BITS_PER_WORD) {
+                ensureNext();
+                next.set(index - BITS_PER_WORD);
+            } else {
+                mData |= 1L << index;
+            }
+        }
+
+        private void ensureNext() {
+            if (next == null) {
+                next = new LinkedBucket();
+            }
+        }
+
+        void clear(int index) {
+            if (index >= BITS_PER_WORD) {
+                if (next != null) {
+                    next.clear(index - BITS_PER_WORD);
+                }
+            } else {
+                mData &= ~(1L << index);
+            }
+        }
+
+        boolean get(int index) {
+            if (index >= BITS_PER_WORD) {
+                ensureNext();
+                return next.get(index - BITS_PER_WORD);
+            } else {
+                return (mData & (1L << index)) != 0;
+            }
+        }
+
+        void reset() {
+            mData = 0;
+            if (next != null) {
+                next.reset();
+            }
+        }
+
+        void insert(int index, boolean value) {
+            if (index >= BITS_PER_WORD) {
+                ensureNext();
+                next.insert(index - BITS_PER_WORD, value);
+            } else {
+                final boolean lastBit = (mData & LAST_BIT) != 0;
+                long mask = (1L << index) - 1;
+                final long before = mData & mask;
+                final long after = ((mData & ~mask)) << 1;
+                mData = before | after;
+                if (value) {
+                    set(index);
+                } else {
+                    clear(index);
+                }
+                if (lastBit || next != null) {
+                    ensureNext();
+                    next.insert(0, lastBit);
+                }
+            }
+        }
+
+        boolean remove(int index) {
+            if (index >= BITS_PER_WORD) {
+                ensureNext();
+                return next.remove(index - BITS_PER_WORD);
+            } else {
+                long mask = (1L << index);
+                final boolean value = (mData & mask) != 0;
+                mData &= ~mask;
+                mask = mask - 1;
+                final long before = mData & mask;
+                final long after = Long.rotateRight(mData & ~mask, 1);
+                mData = before | after;
+                if (next != null) {
+                    if (next.get(0)) {
+                        set(BITS_PER_WORD - 1);
+                    }
+                    next.remove(0);
+                }
+                return value;
+            }
+        }
+
+        int countOnesBefore(int index) {
+            if (next == null) {
+                if (index >= BITS_PER_WORD) {
+                    return Long.bitCount(mData);
+                }
+                return Long.bitCount(mData & ((1L << index) - 1));
+            }
+            if (index < BITS_PER_WORD) {
+                return Long.bitCount(mData & ((1L << index) - 1));
+            } else {
+                return next.countOnesBefore(index - BITS_PER_WORD) + Long.bitCount(mData);
+            }
+        }
+    }
 }
@@ -39,7 +39,7 @@ public class DefaultItemAnimatorTest extends ActivityInstrumentationTestCase2<Te
     private static final String TAG = "DefaultItemAnimatorTest";
     Throwable mainThreadException;
 
-    DefaultItemAnimator mAnimator;
+    RecyclerView.ItemAnimator mAnimator;
     Adapter mAdapter;
     ViewGroup mDummyParent;
     List<RecyclerView.ViewHolder> mExpectedItems = new ArrayList<RecyclerView.ViewHolder>();
@@ -58,7 +58,7 @@ public class DefaultItemAnimatorTest extends ActivityInstrumentationTestCase2<Te
     @Override
     protected void setUp() throws Exception {
         super.setUp();
-        mAnimator = new DefaultItemAnimator();
+        mAnimator = createItemAnimator();
         mAdapter = new Adapter(20);
         mDummyParent = getActivity().mContainer;
         mAnimator.setListener(new RecyclerView.ItemAnimator.ItemAnimatorListener() {
@@ -109,6 +109,10 @@ public class DefaultItemAnimatorTest extends ActivityInstrumentationTestCase2<Te
         });
     }
 
+    RecyclerView.ItemAnimator createItemAnimator() {
+        return new DefaultItemAnimator();
+    }
+
     void checkForMainThreadException() throws Throwable {
         if (mainThreadException != null) {
             throw mainThreadException;
@@ -330,6 +330,17 @@ public class GridLayoutManagerTest extends BaseRecyclerViewInstrumentationTest {
         assertEquals("gm should move anchor to first span", 31, glm.mAnchorInfo.mPosition);
     }
 
+    public void testUniformItemExtentNotSupported() {
+        GridLayoutManager glm = new GridLayoutManager(getActivity(), 3);
+        glm.setUniformItemExtent(GridLayoutManager.NO_UNIFORM_EXTENT);
+        try {
+            glm.setUniformItemExtent(10);
+            fail("grid layout manager should not accept a uniform item extent");
+        } catch (UnsupportedOperationException expected) {
+        }
+        assertEquals(GridLayoutManager.NO_UNIFORM_EXTENT, glm.getUniformItemExtent());
+    }
+
     public void testSpanLookup() {
         spanLookupTest(false);
     }
@@ -423,6 +434,51 @@ public class GridLayoutManagerTest extends BaseRecyclerViewInstrumentationTest {
         assertEquals(2, ssl.getSpanGroupIndex(8, 5));
     }
 
+    public void testSpanGroupIndexCache() {
+        final int[] spanSizes = new int[500];
+        for (int i = 0; i < spanSizes.length; i++) {
+            spanSizes[i] = 1 + (i * 7) % 4;
+        }
+        final GridLayoutManager.SpanSizeLookup ssl
+                = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return spanSizes[position];
+            }
+        };
+        final GridLayoutManager.SpanSizeLookup cached
+                = new GridLayoutManager.SpanSizeLookup() {
+            @Override
+            public int getSpanSize(int position) {
+                return spanSizes[position];
+            }
+        };
+        cached.setSpanGroupIndexCacheEnabled(true);
+        cached.setSpanIndexCacheEnabled(true);
+        for (int i = spanSizes.length - 1; i >= 0; i -= 3) {
+            assertEquals("span group of " + i, ssl.getSpanGroupIndex(i, 4),
+                    cached.getSpanGroupIndex(i, 4));
+            assertEquals("span index of " + i, ssl.getSpanIndex(i, 4),
+                    cached.getCachedSpanIndex(i, 4));
+        }
+        // change the items after 100, cached values before it should stay valid
+        for (int i = 100; i < spanSizes.length; i++) {
+            spanSizes[i] = 1 + (i * 5) % 3;
+        }
+        cached.invalidateCachesFrom(100);
+        for (int i = 0; i < spanSizes.length; i++) {
+            assertEquals("span group of " + i, ssl.getSpanGroupIndex(i, 4),
+                    cached.getSpanGroupIndex(i, 4));
+            assertEquals("span index of " + i, ssl.getSpanIndex(i, 4),
+                    cached.getCachedSpanIndex(i, 4));
+        }
+        // a different span count should not use the old checkpoints
+        for (int i = 0; i < spanSizes.length; i += 7) {
+            assertEquals("span group of " + i, ssl.getSpanGroupIndex(i, 3),
+                    cached.getSpanGroupIndex(i, 3));
+        }
+    }
+
     public void testNotifyDataSetChange() throws Throwable {
         final RecyclerView recyclerView = setupBasic(new Config(3, 100));
         final GridLayoutManager.SpanSizeLookup ssl = mGlm.getSpanSizeLookup();
@@ -433,7 +489,11 @@ public class GridLayoutManagerTest extends BaseRecyclerViewInstrumentationTest {
             @Override
             public void onBeforeLayout(RecyclerView.Recycler recycler, RecyclerView.State state) {
                 if (!state.isPreLayout()) {
-                    assertEquals("cache should be empty", 0, ssl.mSpanIndexCache.size());
+                    // positions before the removed items are not affected and stay cached
+                    for (int i = 0; i < ssl.mSpanIndexCache.size(); i++) {
+                        assertTrue("cache should be invalidated from the removed items",
+                                ssl.mSpanIndexCache.keyAt(i) < 2);
+                    }
                 }
             }
 
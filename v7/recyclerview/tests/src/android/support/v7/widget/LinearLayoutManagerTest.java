@@ -278,6 +278,60 @@ public class LinearLayoutManagerTest extends BaseRecyclerViewInstrumentationTest
         }
     }
 
+    public void testUniformItemExtent() throws Throwable {
+        for (boolean reverseLayout : new boolean[]{false, true}) {
+            uniformItemExtentTest(new Config(VERTICAL, reverseLayout, false).itemCount(300));
+            removeRecyclerView();
+        }
+    }
+
+    public void uniformItemExtentTest(Config config) throws Throwable {
+        setupByConfig(config, true);
+        final OrientationHelper helper = mLayoutManager.mOrientationHelper;
+        final int extent = helper.getDecoratedMeasurement(mLayoutManager.getChildAt(0));
+        mLayoutManager.expectLayouts(1);
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mLayoutManager.setUniformItemExtent(extent);
+            }
+        });
+        mLayoutManager.waitForLayout(2);
+        final RecyclerView.State state = mRecyclerView.mState;
+        final int maxOffset = 300 * extent - helper.getTotalSpace();
+        assertEquals(config + " scroll range should be exact", 300 * extent,
+                mLayoutManager.computeVerticalScrollRange(state));
+        // in reverse layout, scrollbar offset is measured from the last item
+        assertEquals(config + " list should start at its first item",
+                config.mReverseLayout ? maxOffset : 0,
+                mLayoutManager.computeVerticalScrollOffset(state));
+
+        mLayoutManager.expectLayouts(1);
+        scrollToPositionWithOffset(150, extent / 2);
+        mLayoutManager.waitForLayout(2);
+        final int expected = 150 * extent - extent / 2;
+        assertEquals(config + " scroll offset should be exact",
+                config.mReverseLayout ? maxOffset - expected : expected,
+                mLayoutManager.computeVerticalScrollOffset(state));
+
+        // over scrolling should be clamped to the end of the list
+        mLayoutManager.expectLayouts(1);
+        scrollToPositionWithOffset(299, 0);
+        mLayoutManager.waitForLayout(2);
+        assertEquals(config + " scroll offset should be clamped",
+                config.mReverseLayout ? 0 : maxOffset,
+                mLayoutManager.computeVerticalScrollOffset(state));
+        final View last = mLayoutManager.findViewByPosition(299);
+        assertNotNull(config + " last item should be visible", last);
+        if (config.mReverseLayout) {
+            assertEquals(config + " last item should be aligned to the start",
+                    helper.getStartAfterPadding(), helper.getDecoratedStart(last));
+        } else {
+            assertEquals(config + " last item should be aligned to the end",
+                    helper.getEndAfterPadding(), helper.getDecoratedEnd(last));
+        }
+    }
+
     public void scrollToPositionWithOffsetTest(Config config) throws Throwable {
         setupByConfig(config, true);
         OrientationHelper orientationHelper = OrientationHelper
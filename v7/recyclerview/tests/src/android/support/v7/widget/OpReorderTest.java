@@ -44,8 +44,9 @@ public class OpReorderTest extends TestCase {
 
     OpReorderer mOpReorderer = new OpReorderer(new OpReorderer.Callback() {
         @Override
-        public UpdateOp obtainUpdateOp(int cmd, int startPosition, int itemCount) {
-            return new UpdateOp(cmd, startPosition, itemCount);
+        public UpdateOp obtainUpdateOp(int cmd, int startPosition, int itemCount,
+                Object payload) {
+            return new UpdateOp(cmd, startPosition, itemCount, payload);
         }
 
         @Override
@@ -208,6 +209,136 @@ public class OpReorderTest extends TestCase {
         }
     }
 
+    public void testCoalesceAppendedAdds() {
+        setup(10);
+        add(3, 1);
+        add(4, 1);
+        add(5, 2);
+        add(2, 1);
+        List<UpdateOp> coalesced = coalesceOps(mUpdateOps);
+        assertEquals(2, coalesced.size());
+        assertEquals(new UpdateOp(ADD, 3, 4, null), coalesced.get(0));
+        assertEquals(new UpdateOp(ADD, 2, 1, null), coalesced.get(1));
+        processCoalesced();
+    }
+
+    public void testCoalesceRemoves() {
+        setup(20);
+        rm(5, 1);
+        rm(5, 1);
+        rm(4, 1);
+        rm(2, 2);
+        rm(10, 1);
+        List<UpdateOp> coalesced = coalesceOps(mUpdateOps);
+        assertEquals(2, coalesced.size());
+        assertEquals(new UpdateOp(REMOVE, 2, 5, null), coalesced.get(0));
+        assertEquals(new UpdateOp(REMOVE, 10, 1, null), coalesced.get(1));
+        processCoalesced();
+    }
+
+    public void testCoalesceUpdates() {
+        setup(20);
+        up(5, 2);
+        up(7, 1);
+        up(3, 3);
+        record(new UpdateOp(UPDATE, 8, 1, "payload"));
+        List<UpdateOp> coalesced = coalesceOps(mUpdateOps);
+        assertEquals(2, coalesced.size());
+        assertEquals(new UpdateOp(UPDATE, 3, 5, null), coalesced.get(0));
+        assertEquals(new UpdateOp(UPDATE, 8, 1, "payload"), coalesced.get(1));
+        processCoalesced();
+    }
+
+    public void testCoalesceDoesNotMergeAcrossOtherOps() {
+        setup(20);
+        add(3, 1);
+        mv(10, 12);
+        add(4, 1);
+        assertEquals(3, coalesceOps(mUpdateOps).size());
+        processCoalesced();
+    }
+
+    public void testRandomCoalesce() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            try {
+                cleanState();
+                setup(50);
+                for (int j = 0; j < 50; j++) {
+                    final int cmd = nextInt(random, 4);
+                    // bursts of similar single item operations
+                    final int burst = 1 + nextInt(random, 5);
+                    for (int k = 0; k < burst && updatedItemCount > 2; k++) {
+                        final int pos = nextInt(random, updatedItemCount - 1);
+                        switch (cmd) {
+                            case ADD:
+                                add(pos, 1);
+                                break;
+                            case REMOVE:
+                                rm(pos, 1);
+                                break;
+                            case UPDATE:
+                                up(pos, 1);
+                                break;
+                            default:
+                                randOp(cmd);
+                        }
+                    }
+                }
+                processCoalesced();
+            } catch (Throwable t) {
+                throw new Exception(t.getMessage() + "\n" + opsToString(mUpdateOps));
+            }
+        }
+    }
+
+    private List<UpdateOp> coalesceOps(List<UpdateOp> updateOps) {
+        List<UpdateOp> copy = new ArrayList<UpdateOp>();
+        for (UpdateOp op : updateOps) {
+            copy.add(new UpdateOp(op.cmd, op.positionStart, op.itemCount, op.payload));
+        }
+        mOpReorderer.coalesceOps(copy);
+        return copy;
+    }
+
+    /**
+     * Checks that the coalesced ops followed by reordering have the same effect as the original
+     * ops. Identities of new items are not compared since coalescing may change their order and
+     * an item updated more than once may be updated only once.
+     */
+    void processCoalesced() {
+        List<Item> items = new ArrayList<Item>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(Item.create());
+        }
+        List<Item> clones = new ArrayList<Item>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            clones.add(Item.clone(items.get(i)));
+        }
+        List<UpdateOp> rewritten = coalesceOps(mUpdateOps);
+        assertTrue(rewritten.size() <= mUpdateOps.size());
+        mOpReorderer.reorderOps(rewritten);
+        assertAllMovesAtTheEnd(rewritten);
+
+        apply(items, mUpdateOps);
+        final int originalRemoved = mRemovedItems.size();
+        mRemovedItems = new ArrayList<Item>();
+        apply(clones, rewritten);
+
+        assertEquals(originalRemoved, mRemovedItems.size());
+        assertEquals(items.size(), clones.size());
+        for (int i = 0; i < items.size(); i++) {
+            final Item item = items.get(i);
+            final Item clone = clones.get(i);
+            final String log = "at " + i + "\n" + toString(items) + "--\n" + toString(clones);
+            final boolean isNew = item.id >= itemCount;
+            assertEquals(log, isNew, clone.id >= itemCount);
+            if (!isNew) {
+                assertEquals(log, item.id, clone.id);
+                assertEquals(log, item.version > 1, clone.version > 1);
+            }
+        }
+    }
+
     private String opsToString(List<UpdateOp> updateOps) {
         StringBuilder sb = new StringBuilder();
         for (UpdateOp op : updateOps) {
@@ -264,20 +395,20 @@ public class OpReorderTest extends TestCase {
 
     UpdateOp rm(int start, int count) {
         updatedItemCount -= count;
-        return record(new UpdateOp(REMOVE, start, count));
+        return record(new UpdateOp(REMOVE, start, count, null));
     }
 
     UpdateOp mv(int from, int to) {
-        return record(new UpdateOp(MOVE, from, to));
+        return record(new UpdateOp(MOVE, from, to, null));
     }
 
     UpdateOp add(int start, int count) {
         updatedItemCount += count;
-        return record(new UpdateOp(ADD, start, count));
+        return record(new UpdateOp(ADD, start, count, null));
     }
 
     UpdateOp up(int start, int count) {
-        return record(new UpdateOp(UPDATE, start, count));
+        return record(new UpdateOp(UPDATE, start, count, null));
     }
 
     UpdateOp record(UpdateOp op) {
@@ -388,7 +519,7 @@ public class OpReorderTest extends TestCase {
     private List<UpdateOp> rewriteOps(List<UpdateOp> updateOps) {
         List<UpdateOp> copy = new ArrayList<UpdateOp>();
         for (UpdateOp op : updateOps) {
-            copy.add(new UpdateOp(op.cmd, op.positionStart, op.itemCount));
+            copy.add(new UpdateOp(op.cmd, op.positionStart, op.itemCount, op.payload));
         }
         mOpReorderer.reorderOps(copy);
         return copy;
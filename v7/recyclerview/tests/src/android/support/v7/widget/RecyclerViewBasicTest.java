@@ -16,6 +16,7 @@
 
 package android.support.v7.widget;
 
+import android.content.ComponentCallbacks2;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.test.AndroidTestCase;
@@ -24,6 +25,7 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
+import java.util.ArrayList;
 import java.util.UUID;
 
 public class RecyclerViewBasicTest extends AndroidTestCase {
@@ -144,6 +146,258 @@ public class RecyclerViewBasicTest extends AndroidTestCase {
                 adapterNew, null);
     }
 
+    public void testRecycledViewPoolStats() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        assertNull(pool.getRecycledView(0));
+        assertEquals(0, pool.getHitCount(0));
+        assertEquals(1, pool.getMissCount(0));
+
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 0));
+        assertEquals(1, pool.getRecycledViewCount(0));
+        assertNotNull(pool.getRecycledView(0));
+        assertEquals(1, pool.getHitCount(0));
+        assertEquals(0, pool.getRecycledViewCount(0));
+
+        pool.factorInCreateTime(0, 100);
+        pool.factorInCreateTime(0, 300);
+        pool.factorInBindTime(0, 50);
+        assertEquals(200, pool.getAverageCreateTimeNanos(0));
+        assertEquals(50, pool.getAverageBindTimeNanos(0));
+        assertEquals(0, pool.getAverageCreateTimeNanos(1));
+
+        pool.resetStats();
+        assertEquals(0, pool.getHitCount(0));
+        assertEquals(0, pool.getMissCount(0));
+        assertEquals(0, pool.getAverageCreateTimeNanos(0));
+    }
+
+    public void testPrewarm() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        pool.setMaxRecycledViews(0, 2);
+        RecyclerView.RecycledViewPool.PrewarmTask task =
+                pool.new PrewarmTask(mRecyclerView, adapter, 0, 3);
+        task.createViewHolders();
+        task.addCreatedToPool();
+        assertEquals("prewarm should stop at the max scrap size", 2,
+                pool.getRecycledViewCount(0));
+        for (int i = 0; i < 2; i++) {
+            assertNotNull(pool.getRecycledView(0));
+        }
+        assertNull(pool.getRecycledView(0));
+    }
+
+    public void testPrewarmDroppedAfterAdapterChange() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        RecyclerView.RecycledViewPool.PrewarmTask task =
+                pool.new PrewarmTask(mRecyclerView, adapter, 0, 3);
+        task.createViewHolders();
+        mRecyclerView.swapAdapter(new MockAdapter(3), false);
+        task.addCreatedToPool();
+        assertEquals(0, pool.getRecycledViewCount(0));
+        assertEquals("discarded ViewHolders should not count as created", 0,
+                pool.getAverageCreateTimeNanos(0));
+    }
+
+    public void testPrewarmDroppedAfterClear() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        RecyclerView.RecycledViewPool.PrewarmTask task =
+                pool.new PrewarmTask(mRecyclerView, adapter, 0, 3);
+        task.createViewHolders();
+        pool.clear();
+        task.addCreatedToPool();
+        assertEquals(0, pool.getRecycledViewCount(0));
+        assertEquals(0, pool.getAverageCreateTimeNanos(0));
+    }
+
+    public void testRecycledViewPoolMemoryBudget() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        pool.setWeigher(new RecyclerView.RecycledViewPool.Weigher() {
+            @Override
+            public int getWeight(RecyclerView.ViewHolder holder) {
+                return holder.getItemViewType() == 0 ? 10 : 25;
+            }
+        });
+        pool.setMemoryBudget(50);
+        RecyclerView.ViewHolder first = adapter.createViewHolder(mRecyclerView, 0);
+        pool.putRecycledView(first);
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 1));
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 0));
+        assertEquals(45, pool.getCurrentWeight());
+
+        // exceeds the budget, the two least recently pooled holders are dropped
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 1));
+        assertEquals(2, pool.size());
+        assertEquals(1, pool.getRecycledViewCount(0));
+        assertEquals(1, pool.getRecycledViewCount(1));
+        assertEquals(35, pool.getCurrentWeight());
+        assertNotSame(first, pool.getRecycledView(0));
+        assertEquals(25, pool.getCurrentWeight());
+
+        pool.setMemoryBudget(20);
+        assertEquals(0, pool.getRecycledViewCount(1));
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 1));
+        assertEquals(0, pool.getRecycledViewCount(1));
+        assertEquals(0, pool.getCurrentWeight());
+
+        pool.setMemoryBudget(RecyclerView.RecycledViewPool.NO_MEMORY_BUDGET);
+        for (int i = 0; i < 4; i++) {
+            pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 0));
+        }
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+        assertEquals(2, pool.size());
+        pool.onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, pool.size());
+    }
+
+    public void testPrefetchGrowsViewCache() {
+        final int defaultCacheSize = RecyclerView.Recycler.DEFAULT_CACHE_SIZE;
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        mRecyclerView.setLayoutManager(layoutManager);
+        assertEquals(defaultCacheSize + 1, mRecyclerView.mRecycler.mViewCacheMax);
+        layoutManager.setItemPrefetchCount(3);
+        assertEquals(defaultCacheSize + 3, mRecyclerView.mRecycler.mViewCacheMax);
+        layoutManager.setItemPrefetchEnabled(false);
+        assertEquals(defaultCacheSize, mRecyclerView.mRecycler.mViewCacheMax);
+        layoutManager.setItemPrefetchEnabled(true);
+        mRecyclerView.mRecycler.setViewCacheSize(5);
+        assertEquals(5 + 3, mRecyclerView.mRecycler.mViewCacheMax);
+
+        GridLayoutManager gridLayoutManager = new GridLayoutManager(getContext(), 3);
+        mRecyclerView.setLayoutManager(gridLayoutManager);
+        assertEquals(5 + 3, mRecyclerView.mRecycler.mViewCacheMax);
+        gridLayoutManager.setSpanCount(4);
+        assertEquals(5 + 4, mRecyclerView.mRecycler.mViewCacheMax);
+        gridLayoutManager.setItemPrefetchCount(2);
+        assertEquals(5 + 8, mRecyclerView.mRecycler.mViewCacheMax);
+    }
+
+    public void testPrefetchIntoViewCache() {
+        LinearLayoutManager layoutManager = new LinearLayoutManager(getContext());
+        mRecyclerView.setLayoutManager(layoutManager);
+        mRecyclerView.setAdapter(new FixedHeightAdapter(100));
+        measure();
+        layout();
+        final int lastVisible = layoutManager.findLastVisibleItemPosition();
+        int[] prefetchIndices = new int[1];
+        assertEquals(1, layoutManager.gatherPrefetchIndices(0, 10, mRecyclerView.mState,
+                prefetchIndices));
+        assertEquals(lastVisible + 1, prefetchIndices[0]);
+
+        mRecyclerView.mRecycler.prefetch(prefetchIndices, 1);
+        assertCachedPositions(lastVisible + 1);
+    }
+
+    public void testGridPrefetchIntoViewCache() {
+        GridLayoutManager layoutManager = new GridLayoutManager(getContext(), 3);
+        mRecyclerView.setLayoutManager(layoutManager);
+        mRecyclerView.setAdapter(new FixedHeightAdapter(100));
+        measure();
+        layout();
+        final int lastVisible = layoutManager.findLastVisibleItemPosition();
+        int[] prefetchIndices = new int[3];
+        assertEquals(3, layoutManager.gatherPrefetchIndices(0, 10, mRecyclerView.mState,
+                prefetchIndices));
+        for (int i = 0; i < 3; i++) {
+            assertEquals(lastVisible + 1 + i, prefetchIndices[i]);
+        }
+
+        mRecyclerView.mRecycler.prefetch(prefetchIndices, 3);
+        assertCachedPositions(lastVisible + 1, lastVisible + 2, lastVisible + 3);
+    }
+
+    private void assertCachedPositions(int... positions) {
+        final ArrayList<RecyclerView.ViewHolder> cachedViews =
+                mRecyclerView.mRecycler.mCachedViews;
+        assertEquals(positions.length, cachedViews.size());
+        for (int position : positions) {
+            boolean found = false;
+            for (RecyclerView.ViewHolder holder : cachedViews) {
+                if (holder.getLayoutPosition() == position) {
+                    found = true;
+                }
+            }
+            assertTrue("position " + position + " should be in the view cache", found);
+        }
+    }
+
+    public void testRecycledViewPoolMemoryBudgetReweighs() {
+        MockAdapter adapter = new MockAdapter(3);
+        mRecyclerView.setAdapter(adapter);
+        RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        pool.setWeigher(new RecyclerView.RecycledViewPool.Weigher() {
+            @Override
+            public int getWeight(RecyclerView.ViewHolder holder) {
+                return holder.getItemViewType() == 0 ? 10 : 40;
+            }
+        });
+        RecyclerView.ViewHolder first = adapter.createViewHolder(mRecyclerView, 0);
+        pool.putRecycledView(first);
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 0));
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 0));
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 1));
+        assertEquals(0, pool.getCurrentWeight());
+
+        // holders pooled without a budget are weighed, the heavy one does not fit at all
+        pool.setMemoryBudget(25);
+        assertEquals(0, pool.getRecycledViewCount(1));
+        assertEquals(2, pool.getRecycledViewCount(0));
+        assertEquals(20, pool.getCurrentWeight());
+        assertNotSame(first, pool.getRecycledView(0));
+        assertEquals(10, pool.getCurrentWeight());
+
+        pool.setMemoryBudget(RecyclerView.RecycledViewPool.NO_MEMORY_BUDGET);
+        assertEquals(0, pool.getCurrentWeight());
+        pool.putRecycledView(adapter.createViewHolder(mRecyclerView, 1));
+        assertEquals(0, pool.getCurrentWeight());
+
+        pool.setMemoryBudget(100);
+        assertEquals(50, pool.getCurrentWeight());
+        pool.getRecycledView(1);
+        pool.getRecycledView(0);
+        assertEquals(0, pool.getCurrentWeight());
+    }
+
+    public void testFrameStats() {
+        assertNull(mRecyclerView.mFrameStats);
+        mRecyclerView.setFrameStatsListener(new RecyclerView.FrameStatsListener() {
+            @Override
+            public void onFrameStats(RecyclerView recyclerView, RecyclerView.FrameStats stats) {
+            }
+        });
+        RecyclerView.FrameStats stats = mRecyclerView.mFrameStats;
+        assertNotNull(stats);
+        for (int type = 0; type < 6; type++) {
+            stats.addCreateTime(type, 100 * (type + 1));
+            stats.addBindTime(type, 10);
+            stats.addBindTime(type, 30);
+        }
+        assertEquals(6, stats.getViewTypeCount());
+        assertEquals(5, stats.getViewTypeAt(5));
+        assertEquals(1, stats.getCreateCountAt(5));
+        assertEquals(600, stats.getCreateTimeNanosAt(5));
+        assertEquals(2, stats.getBindCountAt(2));
+        assertEquals(40, stats.getBindTimeNanosAt(2));
+        stats.reset();
+        assertEquals(0, stats.getViewTypeCount());
+        stats.addBindTime(3, 5);
+        assertEquals(3, stats.getViewTypeAt(0));
+        assertEquals(0, stats.getCreateCountAt(0));
+        assertEquals(5, stats.getBindTimeNanosAt(0));
+
+        mRecyclerView.setFrameStatsListener(null);
+        assertNull(mRecyclerView.mFrameStats);
+    }
+
     public void testSavedStateWithStatelessLayoutManager() throws InterruptedException {
         mRecyclerView.setLayoutManager(new MockLayoutManager() {
             @Override
@@ -359,6 +613,21 @@ public class RecyclerViewBasicTest extends AndroidTestCase {
         }
     }
 
+    static class FixedHeightAdapter extends MockAdapter {
+
+        FixedHeightAdapter(int count) {
+            super(count);
+        }
+
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+            View view = new View(parent.getContext());
+            view.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, 50));
+            return new MockViewHolder(view);
+        }
+    }
+
     static class MockViewHolder extends RecyclerView.ViewHolder {
         public Object mItem;
         public MockViewHolder(View itemView) {
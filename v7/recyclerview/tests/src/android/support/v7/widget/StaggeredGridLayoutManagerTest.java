@@ -102,6 +102,60 @@ public class StaggeredGridLayoutManagerTest extends BaseRecyclerViewInstrumentat
         });
     }
 
+    public void testLazySpanLookupFullSpanItems() {
+        LazySpanLookup lookup = new LazySpanLookup();
+        lookup.ensureSize(100);
+        for (int position : new int[]{40, 10, 30, 20, 50}) {
+            lookup.addFullSpanItem(createFullSpanItem(position, LAYOUT_END));
+        }
+        assertFullSpanPositions(lookup, 10, 20, 30, 40, 50);
+        assertNull(lookup.getFullSpanItem(15));
+        assertEquals(30, lookup.getFullSpanItem(30).mPosition);
+        assertEquals(20, lookup.getFirstFullSpanItemInRange(11, 30, 0, false).mPosition);
+        assertNull(lookup.getFirstFullSpanItemInRange(21, 30, 0, false));
+        assertNull(lookup.getFirstFullSpanItemInRange(0, 100, LAYOUT_START, false));
+        lookup.getFullSpanItem(40).mHasUnwantedGapAfter = true;
+        assertEquals(40,
+                lookup.getFirstFullSpanItemInRange(0, 100, LAYOUT_START, true).mPosition);
+
+        lookup.offsetForAddition(25, 3);
+        assertFullSpanPositions(lookup, 10, 20, 33, 43, 53);
+        assertEquals(33, lookup.getFullSpanItem(33).mPosition);
+        lookup.offsetForRemoval(15, 20);
+        assertFullSpanPositions(lookup, 10, 23, 33);
+        // removes the item at 10 and the next one, invalidation ends at 23
+        assertEquals(24, lookup.invalidateAfter(10));
+        assertFullSpanPositions(lookup, 33);
+        lookup.addFullSpanItem(createFullSpanItem(60, LAYOUT_START));
+        lookup.forceInvalidateAfter(40);
+        assertFullSpanPositions(lookup, 33);
+
+        Parcel parcel = Parcel.obtain();
+        List<LazySpanLookup.FullSpanItem> items = lookup.getFullSpanItems();
+        items.get(0).mGapPerSpan = new int[]{1, 2, 3};
+        LazySpanLookup.writeFullSpanItems(parcel, items);
+        parcel.setDataPosition(0);
+        List<LazySpanLookup.FullSpanItem> restored = LazySpanLookup.readFullSpanItems(parcel);
+        parcel.recycle();
+        assertEquals(1, restored.size());
+        assertEquals(items.get(0).toString(), restored.get(0).toString());
+    }
+
+    private LazySpanLookup.FullSpanItem createFullSpanItem(int position, int gapDir) {
+        LazySpanLookup.FullSpanItem fsi = new LazySpanLookup.FullSpanItem();
+        fsi.mPosition = position;
+        fsi.mGapDir = gapDir;
+        return fsi;
+    }
+
+    private void assertFullSpanPositions(LazySpanLookup lookup, int... positions) {
+        assertEquals(positions.length, lookup.mFullSpanCount);
+        for (int i = 0; i < positions.length; i++) {
+            assertEquals(positions[i], lookup.mFullSpanPositions[i]);
+            assertEquals(positions[i], lookup.mFullSpanItems[i].mPosition);
+        }
+    }
+
     public void testAreAllStartsTheSame() throws Throwable {
         setupByConfig(new Config(VERTICAL, false, 3, GAP_HANDLING_NONE).itemCount(300));
         waitFirstLayout();